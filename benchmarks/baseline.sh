@@ -0,0 +1,13 @@
+#!/usr/bin/env sh
+# Records a baseline of the micro benchmarks with fixed JMH settings so runs before and after a change
+# can be compared: ./benchmarks/baseline.sh [label]
+set -e
+
+cd "$(dirname "$0")/.."
+label="${1:-$(git rev-parse --short HEAD)}"
+mkdir -p benchmarks/results
+
+mvn -B -q package -pl benchmarks -am -DskipTests
+java -jar benchmarks/target/benchmarks.jar \
+  "SerializationBenchmark|OrderSagaDispatchBenchmark|ProductReserveBenchmark|ControllerMappingBenchmark" \
+  -jvmArgs "-Xms1g -Xmx1g" -prof gc -rf json -rff "benchmarks/results/baseline-${label}.json"
@@ -0,0 +1,10 @@
+#!/usr/bin/env sh
+# Runs the end-to-end saga load test against an embedded broker, for example:
+# ./benchmarks/loadtest.sh -Dloadtest.rate=200 -Dloadtest.duration-seconds=120
+set -e
+
+cd "$(dirname "$0")/.."
+
+mvn -B -q package -DskipTests
+java "$@" -Dloadtest.project-dir=. -cp benchmarks/target/benchmarks.jar \
+  com.appsdeveloperblog.benchmarks.loadtest.SagaLoadGenerator
@@ -0,0 +1,83 @@
+package com.appsdeveloperblog.benchmarks;
+
+import com.appsdeveloperblog.core.dto.Order;
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.Product;
+import com.appsdeveloperblog.core.types.OrderStatus;
+import com.appsdeveloperblog.orders.dto.CreateOrderRequest;
+import com.appsdeveloperblog.orders.dto.CreateOrderResponse;
+import com.appsdeveloperblog.products.dto.ProductCreationRequest;
+import com.appsdeveloperblog.products.dto.ProductCreationResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.BeanUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request to domain to response mapping done by OrdersController and ProductsController, with the
+ * reflective {@link BeanUtils#copyProperties} the controllers use against plain accessor calls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ControllerMappingBenchmark {
+    private CreateOrderRequest createOrderRequest;
+    private ProductCreationRequest productCreationRequest;
+    private UUID generatedId;
+
+    @Setup
+    public void setUp() {
+        createOrderRequest = new CreateOrderRequest(UUID.randomUUID(),
+                List.of(new OrderLineItem(UUID.randomUUID(), 2)));
+        productCreationRequest = new ProductCreationRequest("benchmark product", new BigDecimal("9.99"), 10);
+        generatedId = UUID.randomUUID();
+    }
+
+    @Benchmark
+    public CreateOrderResponse orderCopyProperties() {
+        var order = new Order();
+        BeanUtils.copyProperties(createOrderRequest, order);
+        order.setOrderId(generatedId);
+        order.setStatus(OrderStatus.CREATED);
+
+        var response = new CreateOrderResponse();
+        BeanUtils.copyProperties(order, response);
+        return response;
+    }
+
+    @Benchmark
+    public CreateOrderResponse orderAccessors() {
+        var order = new Order(createOrderRequest.getCustomerId(), createOrderRequest.getLineItems(), null);
+        order.setOrderId(generatedId);
+        order.setStatus(OrderStatus.CREATED);
+
+        return new CreateOrderResponse(order.getOrderId(), order.getCustomerId(), order.getLineItems(),
+                order.getStatus());
+    }
+
+    @Benchmark
+    public ProductCreationResponse productCopyProperties() {
+        var product = new Product();
+        BeanUtils.copyProperties(productCreationRequest, product);
+        product.setId(generatedId);
+
+        var response = new ProductCreationResponse();
+        BeanUtils.copyProperties(product, response);
+        return response;
+    }
+
+    @Benchmark
+    public ProductCreationResponse productAccessors() {
+        var product = new Product(generatedId, productCreationRequest.getName(), productCreationRequest.getPrice(),
+                productCreationRequest.getQuantity());
+
+        return new ProductCreationResponse(product.getId(), product.getName(), product.getPrice(),
+                product.getQuantity());
+    }
+}
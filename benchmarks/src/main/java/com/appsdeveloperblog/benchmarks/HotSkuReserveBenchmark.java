@@ -0,0 +1,135 @@
+package com.appsdeveloperblog.benchmarks;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.exceptions.ProductInsufficientQuantityException;
+import com.appsdeveloperblog.products.dao.jpa.entity.ProductEntity;
+import com.appsdeveloperblog.products.dao.jpa.repository.ProductRepository;
+import com.appsdeveloperblog.products.inventory.InventoryLedgers;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Several threads reserving one item at a time of the same product.
+ * <ul>
+ *     <li>{@code read-modify-write}: how products-service first reserved, load the row, check and set the
+ *     quantity in Java, save</li>
+ *     <li>{@code guarded-update}: one conditional UPDATE of the row</li>
+ *     <li>{@code ledger}: the in-memory ledger of the single partition the product is keyed to</li>
+ *     <li>{@code striped-ledger}: the product is striped, every thread reserves through the ledger of its own
+ *     partition and borrows from the product row when its stripe runs dry</li>
+ * </ul>
+ * After every iteration the remaining stock is compared with the number of successful reservations and the
+ * difference is printed as lost updates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+@Fork(1)
+public class HotSkuReserveBenchmark {
+    private static final UUID PRODUCT_ID = UUID.fromString("00000000-0000-0000-0000-00000000beef");
+    private static final int INITIAL_STOCK = Integer.MAX_VALUE;
+    private static final int PARTITIONS = 3;
+    private static final List<OrderLineItem> LINE_ITEMS = List.of(new OrderLineItem(PRODUCT_ID, 1));
+
+    @Param({"read-modify-write", "guarded-update", "ledger", "striped-ledger"})
+    public String strategy;
+
+    private ConfigurableApplicationContext context;
+    private ProductRepository productRepository;
+    private InventoryLedgers inventoryLedgers;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private final AtomicLong reservations = new AtomicLong();
+
+    @State(Scope.Thread)
+    public static class Partition {
+        private static final AtomicInteger NEXT = new AtomicInteger();
+        int number;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            number = NEXT.getAndIncrement() % PARTITIONS;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = "striped-ledger".equals(strategy)
+                ? ProductsServiceContext.start(PRODUCT_ID)
+                : ProductsServiceContext.start();
+        productRepository = context.getBean(ProductRepository.class);
+        inventoryLedgers = context.getBean(InventoryLedgers.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        jdbcTemplate.update("insert into products (id, name, price, quantity) values (?, ?, ?, ?)",
+                PRODUCT_ID, "hot sku", new BigDecimal("9.99"), INITIAL_STOCK);
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            inventoryLedgers.assign(partition);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkStock() {
+        long lostUpdates = reservations.get() - (INITIAL_STOCK - remainingStock());
+        System.out.printf("%n%s: %d reservations, %d lost updates%n", strategy, reservations.get(), lostUpdates);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void reserve(Partition partition) {
+        switch (strategy) {
+            case "guarded-update" -> transactionTemplate.executeWithoutResult(status -> {
+                if (jdbcTemplate.update("update products set quantity = quantity - 1 where id = ? and quantity >= 1",
+                        PRODUCT_ID) == 0) {
+                    throw new ProductInsufficientQuantityException(PRODUCT_ID, UUID.randomUUID());
+                }
+            });
+            case "ledger" -> inventoryLedgers.reserve(LINE_ITEMS, UUID.randomUUID(),
+                    inventoryLedgers.partitionOf(PRODUCT_ID), 0);
+            case "striped-ledger" -> inventoryLedgers.reserve(LINE_ITEMS, UUID.randomUUID(), partition.number, 0);
+            default -> transactionTemplate.executeWithoutResult(status -> {
+                ProductEntity productEntity = productRepository.findById(PRODUCT_ID).orElseThrow();
+                if (productEntity.getQuantity() < 1) {
+                    throw new ProductInsufficientQuantityException(PRODUCT_ID, UUID.randomUUID());
+                }
+                productEntity.setQuantity(productEntity.getQuantity() - 1);
+                productRepository.save(productEntity);
+            });
+        }
+        reservations.incrementAndGet();
+    }
+
+    private long remainingStock() {
+        long remaining = jdbcTemplate.queryForObject("select quantity from products where id = ?",
+                Integer.class, PRODUCT_ID);
+        if ("ledger".equals(strategy)) {
+            // the row is only written on checkpoints
+            return inventoryLedgers.forPartition(inventoryLedgers.partitionOf(PRODUCT_ID)).stock(PRODUCT_ID);
+        }
+        if ("striped-ledger".equals(strategy)) {
+            // what the stripes have not borrowed yet is still in the row
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                remaining += inventoryLedgers.forPartition(partition).stock(PRODUCT_ID);
+            }
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,151 @@
+package com.appsdeveloperblog.benchmarks;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.commands.ReserveProductCommand;
+import com.appsdeveloperblog.core.dto.events.ProductReservedEvent;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of exactly-once consume-transform-produce compared with the at-least-once path the
+ * services use today. Every invocation consumes one poll worth of {@link ReserveProductCommand}s,
+ * answers each with a {@link ProductReservedEvent} and commits the offsets, either with
+ * commitSync after the sends (at-least-once) or inside a producer transaction (exactly-once).
+ * The score is the average time per record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class KafkaTransactionsBenchmark {
+    private static final String COMMANDS_TOPIC = "products-commands";
+    private static final String EVENTS_TOPIC = "products-events";
+    private static final int RECORDS_PER_POLL = 500;
+
+    @Param({"at-least-once", "exactly-once"})
+    public String delivery;
+
+    private EmbeddedKafkaKraftBroker broker;
+    private KafkaProducer<String, Object> commandProducer;
+    private KafkaConsumer<String, Object> consumer;
+    private KafkaProducer<String, Object> producer;
+    private boolean transactional;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        broker = new EmbeddedKafkaKraftBroker(1, 3, COMMANDS_TOPIC, EVENTS_TOPIC);
+        broker.brokerProperties(Map.of(
+                "transaction.state.log.replication.factor", "1",
+                "transaction.state.log.min.isr", "1"));
+        broker.afterPropertiesSet();
+        transactional = "exactly-once".equals(delivery);
+
+        commandProducer = new KafkaProducer<>(producerProperties(null));
+        producer = new KafkaProducer<>(producerProperties(transactional ? "benchmark-tx-" + UUID.randomUUID() : null));
+        if (transactional) {
+            producer.initTransactions();
+        }
+
+        Map<String, Object> consumerProperties = new HashMap<>();
+        consumerProperties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        consumerProperties.put(ConsumerConfig.GROUP_ID_CONFIG, "benchmark-" + delivery);
+        consumerProperties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        consumerProperties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        consumerProperties.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        consumerProperties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, RECORDS_PER_POLL);
+        consumerProperties.put(JsonDeserializer.TRUSTED_PACKAGES, "com.appsdeveloperblog.core.*");
+        consumerProperties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        consumerProperties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
+        consumer = new KafkaConsumer<>(consumerProperties);
+        consumer.subscribe(List.of(COMMANDS_TOPIC));
+    }
+
+    @Setup(Level.Invocation)
+    public void sendCommands() {
+        UUID productId = UUID.randomUUID();
+        for (int i = 0; i < RECORDS_PER_POLL; i++) {
+            var command = new ReserveProductCommand(List.of(new OrderLineItem(productId, 1)), UUID.randomUUID());
+            commandProducer.send(new ProducerRecord<>(COMMANDS_TOPIC, command.key(), command));
+        }
+        commandProducer.flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS_PER_POLL)
+    public int consumeTransformProduce() {
+        int processed = 0;
+        while (processed < RECORDS_PER_POLL) {
+            ConsumerRecords<String, Object> records = consumer.poll(Duration.ofMillis(100));
+            if (records.isEmpty()) {
+                continue;
+            }
+            if (transactional) {
+                producer.beginTransaction();
+            }
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+            for (ConsumerRecord<String, Object> record : records) {
+                var command = (ReserveProductCommand) record.value();
+                var event = new ProductReservedEvent(command.getOrderId(), command.getLineItems().stream()
+                        .map(lineItem -> new OrderLineItem(lineItem.getProductId(), lineItem.getProductQuantity(),
+                                BigDecimal.TEN))
+                        .toList());
+                producer.send(new ProducerRecord<>(EVENTS_TOPIC, event.key(), event));
+                offsets.put(new TopicPartition(record.topic(), record.partition()),
+                        new OffsetAndMetadata(record.offset() + 1));
+                processed++;
+            }
+            if (transactional) {
+                producer.sendOffsetsToTransaction(offsets, consumer.groupMetadata());
+                producer.commitTransaction();
+            } else {
+                consumer.commitSync(offsets);
+            }
+        }
+        return processed;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        consumer.close();
+        producer.close();
+        commandProducer.close();
+        broker.destroy();
+    }
+
+    private Map<String, Object> producerProperties(String transactionalId) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        properties.put(ProducerConfig.ACKS_CONFIG, "all");
+        properties.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        properties.put(ProducerConfig.LINGER_MS_CONFIG, 0);
+        if (transactionalId != null) {
+            properties.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, transactionalId);
+        }
+        return properties;
+    }
+}
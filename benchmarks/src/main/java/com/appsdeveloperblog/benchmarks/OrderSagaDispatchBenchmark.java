@@ -0,0 +1,141 @@
+package com.appsdeveloperblog.benchmarks;
+
+import com.appsdeveloperblog.core.dto.events.*;
+import com.appsdeveloperblog.core.types.OrderStatus;
+import com.appsdeveloperblog.orders.dto.OrderHistory;
+import com.appsdeveloperblog.orders.saga.OrderSaga;
+import com.appsdeveloperblog.orders.saga.SagaStep;
+import com.appsdeveloperblog.orders.service.OrderHistoryService;
+import com.appsdeveloperblog.orders.service.SagaInstanceService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.annotation.KafkaHandler;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.adapter.DelegatingInvocableHandler;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+import org.springframework.messaging.handler.invocation.InvocableHandlerMethod;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of routing a record to the right {@code @KafkaHandler} of {@link OrderSaga} compared with
+ * calling the handler method directly. The saga state service rejects every step, so each handler
+ * returns right after the check and the score is dominated by dispatch and argument resolution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class OrderSagaDispatchBenchmark {
+
+    @Param({"OrderCreatedEvent", "ProductReservedEvent", "ProductReservationFailedEvent", "PaymentProcessedEvent",
+            "OrderApprovedEvent", "PaymentsFailedEvent", "ProductReservationCancelledEvent"})
+    public String eventType;
+
+    private OrderSaga orderSaga;
+    private DelegatingInvocableHandler handler;
+    private Message<?> message;
+    private Object event;
+
+    @Setup
+    public void setUp() {
+        KafkaTemplate<String, Object> kafkaTemplate = new KafkaTemplate<>(() -> {
+            throw new IllegalStateException("The benchmark must not send records");
+        });
+        // every step is rejected before an order would be looked up
+        orderSaga = new OrderSaga(kafkaTemplate, "products-commands", new NoOpOrderHistoryService(),
+                "payments-commands", "orders-commands", new RejectingSagaInstanceService(), null);
+
+        var methodFactory = new DefaultMessageHandlerMethodFactory();
+        methodFactory.afterPropertiesSet();
+        List<InvocableHandlerMethod> methods = new ArrayList<>();
+        for (Method method : OrderSaga.class.getMethods()) {
+            if (method.isAnnotationPresent(KafkaHandler.class)) {
+                methods.add(methodFactory.createInvocableHandlerMethod(orderSaga, method));
+            }
+        }
+        handler = new DelegatingInvocableHandler(methods, null, orderSaga, null, null, null, null);
+
+        event = SerializationBenchmark.sample(eventType);
+        message = MessageBuilder.withPayload(event).build();
+    }
+
+    @Benchmark
+    public Object kafkaHandlerDispatch() throws Exception {
+        return handler.invoke(message);
+    }
+
+    @Benchmark
+    public void directCall() {
+        if (event instanceof OrderCreatedEvent e) {
+            orderSaga.handleEvent(e);
+        } else if (event instanceof ProductReservedEvent e) {
+            orderSaga.handleEvent(e);
+        } else if (event instanceof ProductReservationFailedEvent e) {
+            orderSaga.handleEvent(e);
+        } else if (event instanceof PaymentProcessedEvent e) {
+            orderSaga.handleEvent(e);
+        } else if (event instanceof OrderApprovedEvent e) {
+            orderSaga.handleEvent(e);
+        } else if (event instanceof PaymentsFailedEvent e) {
+            orderSaga.handleEvent(e);
+        } else if (event instanceof ProductReservationCancelledEvent e) {
+            orderSaga.handleEvent(e);
+        }
+    }
+
+    private static class RejectingSagaInstanceService implements SagaInstanceService {
+        @Override
+        public boolean start(UUID orderId) {
+            return false;
+        }
+
+        @Override
+        public boolean advance(UUID orderId, SagaStep next) {
+            return false;
+        }
+
+        @Override
+        public boolean canAdvance(UUID orderId, SagaStep next) {
+            return false;
+        }
+
+        @Override
+        public boolean advanceExclusively(UUID orderId, SagaStep from, SagaStep next, Runnable commands) {
+            return false;
+        }
+
+        // every saga is already finished, so no handler starts one either
+        @Override
+        public SagaStep currentStep(UUID orderId) {
+            return SagaStep.APPROVED;
+        }
+
+        @Override
+        public int restoreDeadlines() {
+            return 0;
+        }
+    }
+
+    private static class NoOpOrderHistoryService implements OrderHistoryService {
+        @Override
+        public void add(UUID orderId, OrderStatus orderStatus) {
+        }
+
+        @Override
+        public void addAll(List<OrderHistory> orderHistory) {
+        }
+
+        @Override
+        public List<OrderHistory> findByOrderId(UUID orderId) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.appsdeveloperblog.benchmarks;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.Product;
+import com.appsdeveloperblog.products.inventory.InventoryLedgers;
+import com.appsdeveloperblog.products.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reserving through the two paths products-service offers, against its in-memory H2 database: the
+ * {@link InventoryLedgers#reserveNow} behind the HTTP reservation, which writes a checkpoint before it answers,
+ * and the {@link InventoryLedgers#reserve} of the products-commands listener, which leaves the database to the
+ * periodic checkpoints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProductReserveBenchmark {
+    private ConfigurableApplicationContext context;
+    private List<OrderLineItem> lineItems;
+    private InventoryLedgers inventoryLedgers;
+    private int partition;
+    private long offset;
+
+    @Setup
+    public void setUp() {
+        context = ProductsServiceContext.start();
+        ProductService productService = context.getBean(ProductService.class);
+
+        Product product = productService.save(
+                new Product(null, "benchmark product", new BigDecimal("9.99"), Integer.MAX_VALUE));
+        lineItems = List.of(new OrderLineItem(product.getId(), 1));
+
+        inventoryLedgers = context.getBean(InventoryLedgers.class);
+        partition = inventoryLedgers.partitionOf(product.getId());
+        inventoryLedgers.assign(partition);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<OrderLineItem> reserveNow() {
+        return inventoryLedgers.reserveNow(lineItems, UUID.randomUUID());
+    }
+
+    @Benchmark
+    public List<OrderLineItem> ledgerReserve() {
+        return inventoryLedgers.reserve(lineItems, UUID.randomUUID(), partition, offset++).handled();
+    }
+}
@@ -0,0 +1,54 @@
+package com.appsdeveloperblog.benchmarks;
+
+import com.appsdeveloperblog.products.ProductsServiceApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Starts products-service in process without the web server and with listener containers stopped, so no
+ * broker is needed. The shaded benchmarks jar only keeps one application.properties, so the properties
+ * products-service's beans need are repeated here.
+ */
+final class ProductsServiceContext {
+
+    private ProductsServiceContext() {
+    }
+
+    static ConfigurableApplicationContext start(UUID... stripedProducts) {
+        return new SpringApplicationBuilder(ProductsServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.kafka.listener.auto-startup=false",
+                        "spring.kafka.admin.auto-create=false",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=WARN",
+                        "products.command.topic.name=products-commands",
+                        "products.command.topic.partitions=3",
+                        "products.events.topic.name=products-events",
+                        // there is no broker to publish to
+                        "products.stock.topic.name=product-stock",
+                        "products.stock.publish.enabled=false",
+                        "products.inventory.checkpoint-interval-ms=200",
+                        "products.inventory.expected-products-per-partition=1024",
+                        "products.inventory.stripe-refill=1000",
+                        "products.inventory.reservation-cache-size=10000",
+                        "products.inventory.expected-reservations-per-partition=1000000",
+                        "products.inventory.hold-ttl-ms=120000",
+                        "products.inventory.hold-sweep-interval-ms=1000",
+                        "products.inventory.hold-sweep-batch-size=500",
+                        "products.inventory.reservation-prune-interval-ms=60000",
+                        "products.catalog.page-size=100",
+                        "products.catalog.max-page-size=1000",
+                        "products.catalog.cache.max-pages=256",
+                        "products.import.chunk-size=1000",
+                        "products.import.max-reported-errors=1000",
+                        "products.inventory.striped-products=" + Arrays.stream(stripedProducts)
+                                .map(UUID::toString)
+                                .collect(Collectors.joining(",")))
+                .run();
+    }
+}
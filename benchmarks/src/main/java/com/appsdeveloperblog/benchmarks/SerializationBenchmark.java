@@ -0,0 +1,102 @@
+package com.appsdeveloperblog.benchmarks;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.commands.*;
+import com.appsdeveloperblog.core.dto.events.*;
+import com.appsdeveloperblog.core.serde.SagaMessageDeserializer;
+import com.appsdeveloperblog.core.serde.SagaMessageSerializer;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializer and deserializer cost of every saga command and event, for the JsonSerializer the services
+ * use by default and for the binary {@link SagaMessageSerializer}. Run with {@code -prof gc} to also see
+ * allocation per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SerializationBenchmark {
+    private static final String TOPIC = "saga";
+
+    @Param({"OrderCreatedEvent", "ReserveProductCommand", "ProductReservedEvent", "ProductReservationFailedEvent",
+            "ProcessPaymentCommand", "PaymentProcessedEvent", "PaymentsFailedEvent", "ApprovedOrderCommand",
+            "OrderApprovedEvent", "CancelProductReservationCommand", "ProductReservationCancelledEvent",
+            "RejectOrderCommand", "ConfirmProductReservationCommand", "ProductStockChangedEvent", "OrderReservedEvent"})
+    public String messageType;
+
+    @Param({"json", "binary"})
+    public String format;
+
+    private Serializer<Object> serializer;
+    private Deserializer<Object> deserializer;
+    private Object message;
+    private byte[] payload;
+    private RecordHeaders headers;
+
+    @Setup
+    public void setUp() {
+        if ("json".equals(format)) {
+            serializer = new JsonSerializer<>();
+            deserializer = new JsonDeserializer<>();
+        } else {
+            serializer = new SagaMessageSerializer();
+            deserializer = new SagaMessageDeserializer();
+        }
+        serializer.configure(Map.of(), false);
+        deserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "com.appsdeveloperblog.core.*"), false);
+
+        message = sample(messageType);
+        headers = new RecordHeaders();
+        payload = serializer.serialize(TOPIC, headers, message);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(TOPIC, new RecordHeaders(), message);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return deserializer.deserialize(TOPIC, headers, payload);
+    }
+
+    static Object sample(String messageType) {
+        UUID orderId = UUID.randomUUID();
+        UUID productId = UUID.randomUUID();
+        BigDecimal price = new BigDecimal("1299.99");
+        List<OrderLineItem> lineItems = List.of(new OrderLineItem(productId, 2));
+        List<OrderLineItem> pricedLineItems = List.of(new OrderLineItem(productId, 2, price));
+        return switch (messageType) {
+            case "OrderCreatedEvent" -> new OrderCreatedEvent(orderId, UUID.randomUUID(), lineItems);
+            case "ReserveProductCommand" -> new ReserveProductCommand(lineItems, orderId);
+            case "ProductReservedEvent" -> new ProductReservedEvent(orderId, pricedLineItems);
+            case "ProductReservationFailedEvent" -> new ProductReservationFailedEvent(productId, orderId, 2);
+            case "ProcessPaymentCommand" -> new ProcessPaymentCommand(orderId, pricedLineItems);
+            case "PaymentProcessedEvent" -> new PaymentProcessedEvent(orderId, UUID.randomUUID());
+            case "PaymentsFailedEvent" -> new PaymentsFailedEvent(orderId, pricedLineItems);
+            case "ApprovedOrderCommand" -> new ApprovedOrderCommand(orderId);
+            case "OrderApprovedEvent" -> new OrderApprovedEvent(orderId);
+            case "CancelProductReservationCommand" -> new CancelProductReservationCommand(lineItems, orderId);
+            case "ProductReservationCancelledEvent" -> new ProductReservationCancelledEvent(lineItems, orderId);
+            case "RejectOrderCommand" -> new RejectOrderCommand(orderId);
+            case "ConfirmProductReservationCommand" -> new ConfirmProductReservationCommand(lineItems, orderId);
+            case "ProductStockChangedEvent" -> new ProductStockChangedEvent(productId, 42);
+            case "OrderReservedEvent" -> new OrderReservedEvent(orderId, UUID.randomUUID(), pricedLineItems);
+            default -> throw new IllegalArgumentException("Unknown message type " + messageType);
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package com.appsdeveloperblog.benchmarks.loadtest;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Percentiles and a power-of-two millisecond histogram of a set of latency samples.
+ */
+class LatencyReport {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final int BAR_WIDTH = 50;
+
+    private final String title;
+    private final long[] sortedMillis;
+
+    LatencyReport(String title, long[] millis) {
+        this.title = title;
+        this.sortedMillis = millis.clone();
+        Arrays.sort(this.sortedMillis);
+    }
+
+    long percentile(double percentile) {
+        if (sortedMillis.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sortedMillis.length) - 1;
+        return sortedMillis[Math.max(0, Math.min(index, sortedMillis.length - 1))];
+    }
+
+    void print(PrintStream out) {
+        out.printf("%n%s (%d samples)%n", title, sortedMillis.length);
+        if (sortedMillis.length == 0) {
+            return;
+        }
+        for (double percentile : PERCENTILES) {
+            out.printf("  p%-5s %8d ms%n", formatPercentile(percentile), percentile(percentile));
+        }
+        out.printf("  max    %8d ms%n", sortedMillis[sortedMillis.length - 1]);
+
+        int[] buckets = new int[64];
+        int firstBucket = bucketOf(sortedMillis[0]);
+        int lastBucket = 0;
+        for (long millis : sortedMillis) {
+            int bucket = bucketOf(millis);
+            buckets[bucket]++;
+            lastBucket = Math.max(lastBucket, bucket);
+        }
+        int largest = Arrays.stream(buckets).max().orElse(1);
+        for (int bucket = firstBucket; bucket <= lastBucket; bucket++) {
+            int width = (int) ((long) buckets[bucket] * BAR_WIDTH / largest);
+            out.printf("  <= %6d ms %8d %s%n", 1L << bucket, buckets[bucket], "#".repeat(width));
+        }
+    }
+
+    private static int bucketOf(long millis) {
+        return millis <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(millis - 1);
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
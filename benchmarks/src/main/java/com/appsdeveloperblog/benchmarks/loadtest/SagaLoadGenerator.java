@@ -0,0 +1,357 @@
+package com.appsdeveloperblog.benchmarks.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives the whole order saga at a fixed rate and reports how many orders per second reach APPROVED and how
+ * long they take. A single KRaft broker runs inside this JVM, and orders, products, payments and the credit
+ * card processor stub run as child JVMs from their executable jars, so nothing outside the box is needed.
+ * <p>
+ * Orders are placed open loop through {@code POST /orders}; once the run is over, every order's
+ * {@code /orders/{id}/history} is read back and the latencies are taken from the orders_history timestamps.
+ * Settings are system properties:
+ * <ul>
+ *     <li>{@code loadtest.rate} orders per second, default 100</li>
+ *     <li>{@code loadtest.duration-seconds} measured run length, default 60</li>
+ *     <li>{@code loadtest.warmup-seconds} run length before measuring, default 15</li>
+ *     <li>{@code loadtest.products} products the orders are spread over, default 10</li>
+ *     <li>{@code loadtest.line-items} products listed by every order, default 1</li>
+ *     <li>{@code loadtest.drain-timeout-seconds} wait for the last sagas to finish, default 60</li>
+ *     <li>{@code loadtest.service-jvm-args} JVM options of each service, default {@code -Xmx512m}</li>
+ *     <li>{@code loadtest.service-args} extra application arguments of each service, for example
+ *     {@code --orders.saga.batch.enabled=true}</li>
+ *     <li>{@code loadtest.project-dir} the repository root, default the working directory</li>
+ * </ul>
+ */
+public class SagaLoadGenerator {
+    private static final List<String> TOPICS = List.of("orders-events", "orders-commands", "products-commands",
+            "products-events", "payments-commands", "payments-events");
+    private static final int TOPIC_PARTITIONS = 3;
+
+    private final int rate = Integer.getInteger("loadtest.rate", 100);
+    private final int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 60);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 15);
+    private final int productCount = Integer.getInteger("loadtest.products", 10);
+    private final int lineItemCount = Integer.getInteger("loadtest.line-items", 1);
+    private final int drainTimeoutSeconds = Integer.getInteger("loadtest.drain-timeout-seconds", 60);
+    private final List<String> serviceJvmArgs = split(System.getProperty("loadtest.service-jvm-args", "-Xmx512m"));
+    private final List<String> serviceArgs = split(System.getProperty("loadtest.service-args", ""));
+    private final Path projectDir = Path.of(System.getProperty("loadtest.project-dir", ".")).toAbsolutePath();
+    private final Path logDir = projectDir.resolve("benchmarks/target/loadtest");
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newFixedThreadPool(8))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<ServiceProcess> services = new ArrayList<>();
+    private final Queue<PlacedOrder> placedOrders = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger failedRequests = new AtomicInteger();
+
+    private EmbeddedKafkaKraftBroker broker;
+    private ServiceProcess orders;
+    private ServiceProcess products;
+
+    public static void main(String[] args) throws Exception {
+        var loadGenerator = new SagaLoadGenerator();
+        Thread stopOnInterrupt = new Thread(loadGenerator::stop);
+        Runtime.getRuntime().addShutdownHook(stopOnInterrupt);
+        try {
+            loadGenerator.run();
+        } finally {
+            loadGenerator.stop();
+            Runtime.getRuntime().removeShutdownHook(stopOnInterrupt);
+        }
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        startEnvironment();
+        List<UUID> productIds = createProducts();
+        awaitSagaReady(productIds);
+
+        System.out.printf("Warming up for %d s at %d orders/s%n", warmupSeconds, rate);
+        drive(productIds, warmupSeconds, true);
+        System.out.printf("Measuring for %d s at %d orders/s%n", durationSeconds, rate);
+        drive(productIds, durationSeconds, false);
+
+        report(drain());
+    }
+
+    private void startEnvironment() throws Exception {
+        broker = new EmbeddedKafkaKraftBroker(1, TOPIC_PARTITIONS, TOPICS.toArray(String[]::new));
+        broker.brokerProperties(Map.of(
+                "transaction.state.log.replication.factor", "1",
+                "transaction.state.log.min.isr", "1"));
+        broker.afterPropertiesSet();
+
+        List<String> kafkaArgs = List.of(
+                "--spring.kafka.bootstrap-servers=" + broker.getBrokersAsString(),
+                "--spring.kafka.consumer.auto-offset-reset=earliest",
+                "--logging.level.root=WARN");
+
+        ServiceProcess ccp = startService("credit-card-processor-service", List.of("--logging.level.root=WARN"));
+        ccp.awaitStarted(Duration.ofMinutes(2));
+
+        List<String> paymentsArgs = new ArrayList<>(kafkaArgs);
+        paymentsArgs.add("--remote.ccp.url=" + ccp.url());
+        ServiceProcess payments = startService("payments-service", paymentsArgs);
+        products = startService("products-service", kafkaArgs);
+        List<String> ordersArgs = new ArrayList<>(kafkaArgs);
+        ordersArgs.add("--remote.products.url=" + products.url());
+        orders = startService("orders-service", ordersArgs);
+        for (ServiceProcess service : List.of(payments, products, orders)) {
+            service.awaitStarted(Duration.ofMinutes(2));
+        }
+        System.out.printf("Services started, logs are in %s%n", logDir);
+    }
+
+    private ServiceProcess startService(String module, List<String> args) throws IOException {
+        List<String> appArgs = new ArrayList<>(args);
+        appArgs.addAll(serviceArgs);
+        ServiceProcess service = ServiceProcess.start(module, projectDir.resolve(module), serviceJvmArgs, appArgs,
+                logDir);
+        services.add(service);
+        return service;
+    }
+
+    private List<UUID> createProducts() throws Exception {
+        List<UUID> productIds = new ArrayList<>();
+        for (int i = 0; i < productCount; i++) {
+            Map<String, Object> request = Map.of(
+                    "name", "load test product " + i,
+                    "price", new BigDecimal("9.99"),
+                    "quantity", 1_000_000_000);
+            HttpResponse<String> response = httpClient.send(post(products.url() + "/products", request),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 201) {
+                throw new IllegalStateException("Creating a product failed: " + response.body());
+            }
+            productIds.add(UUID.fromString(objectMapper.readTree(response.body()).get("id").asText()));
+        }
+        return productIds;
+    }
+
+    /**
+     * Consumer groups join the embedded broker a few seconds after the services open their ports, so single
+     * orders are placed until one goes all the way through.
+     */
+    private void awaitSagaReady(List<UUID> productIds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+        while (System.nanoTime() < deadline) {
+            UUID orderId = placeOrder(productIds);
+            for (int i = 0; i < 50; i++) {
+                if (history(orderId).terminalStatus() != null) {
+                    return;
+                }
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("No order reached a final state, check the service logs in " + logDir);
+    }
+
+    private void drive(List<UUID> productIds, int seconds, boolean warmup) throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger sequence = new AtomicInteger();
+        scheduler.scheduleAtFixedRate(() -> {
+            int first = sequence.getAndIncrement() % productIds.size();
+            long sentAt = System.currentTimeMillis();
+            httpClient.sendAsync(post(orders.url() + "/orders", orderRequest(productIds, first)),
+                            HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, failure) -> {
+                        if (failure != null || response.statusCode() != 202) {
+                            failedRequests.incrementAndGet();
+                            return;
+                        }
+                        placedOrders.add(new PlacedOrder(orderIdOf(response.body()), sentAt, warmup));
+                    });
+        }, 0, TimeUnit.SECONDS.toNanos(1) / rate, TimeUnit.NANOSECONDS);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        scheduler.shutdownNow();
+    }
+
+    private List<CompletedOrder> drain() throws Exception {
+        List<PlacedOrder> pending = placedOrders.stream().filter(order -> !order.warmup()).toList();
+        List<CompletedOrder> completed = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainTimeoutSeconds);
+        System.out.printf("Waiting for %d sagas to finish%n", pending.size());
+
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            List<PlacedOrder> stillPending = new ArrayList<>();
+            for (List<PlacedOrder> chunk : chunks(pending, 50)) {
+                List<CompletableFuture<OrderHistory>> histories = chunk.stream()
+                        .map(order -> historyAsync(order.orderId()))
+                        .toList();
+                for (int i = 0; i < chunk.size(); i++) {
+                    OrderHistory history = histories.get(i).join();
+                    if (history.terminalStatus() == null) {
+                        stillPending.add(chunk.get(i));
+                    } else {
+                        completed.add(new CompletedOrder(chunk.get(i), history));
+                    }
+                }
+            }
+            pending = stillPending;
+            if (!pending.isEmpty()) {
+                Thread.sleep(500);
+            }
+        }
+        if (!pending.isEmpty()) {
+            System.out.printf("%d sagas did not finish within %d s%n", pending.size(), drainTimeoutSeconds);
+        }
+        return completed;
+    }
+
+    private void report(List<CompletedOrder> completed) {
+        List<CompletedOrder> approved = completed.stream()
+                .filter(order -> "APPROVED".equals(order.history().terminalStatus()))
+                .toList();
+        long rejected = completed.size() - approved.size();
+
+        long firstCreated = approved.stream().mapToLong(order -> order.history().createdAt()).min().orElse(0);
+        long lastApproved = approved.stream().mapToLong(order -> order.history().finishedAt()).max().orElse(0);
+        double seconds = Math.max(1, lastApproved - firstCreated) / 1000.0;
+
+        System.out.printf("%nOffered rate      %8d orders/s%n", rate);
+        System.out.printf("Approved          %8d (%.1f orders/s)%n", approved.size(), approved.size() / seconds);
+        System.out.printf("Rejected          %8d%n", rejected);
+        System.out.printf("Failed requests   %8d%n", failedRequests.get());
+
+        new LatencyReport("POST /orders to APPROVED", approved.stream()
+                .mapToLong(order -> order.history().finishedAt() - order.placed().sentAt())
+                .toArray()).print(System.out);
+        new LatencyReport("CREATED to APPROVED in orders_history", approved.stream()
+                .mapToLong(order -> order.history().finishedAt() - order.history().createdAt())
+                .toArray()).print(System.out);
+    }
+
+    private UUID placeOrder(List<UUID> productIds) throws Exception {
+        HttpResponse<String> response = httpClient.send(post(orders.url() + "/orders", orderRequest(productIds, 0)),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 202) {
+            throw new IllegalStateException("Placing an order failed: " + response.body());
+        }
+        return orderIdOf(response.body());
+    }
+
+    private OrderHistory history(UUID orderId) {
+        return historyAsync(orderId).join();
+    }
+
+    private CompletableFuture<OrderHistory> historyAsync(UUID orderId) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(orders.url() + "/orders/" + orderId + "/history"))
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> OrderHistory.parse(objectMapper, response.body()))
+                .exceptionally(failure -> OrderHistory.UNKNOWN);
+    }
+
+    // one item each of the products following the first one
+    private Map<String, Object> orderRequest(List<UUID> productIds, int first) {
+        List<Map<String, Object>> lineItems = new ArrayList<>(lineItemCount);
+        for (int i = 0; i < lineItemCount; i++) {
+            lineItems.add(Map.of(
+                    "productId", productIds.get((first + i) % productIds.size()),
+                    "productQuantity", 1));
+        }
+        return Map.of(
+                "customerId", UUID.randomUUID(),
+                "lineItems", lineItems);
+    }
+
+    private HttpRequest post(String url, Object body) {
+        try {
+            return HttpRequest.newBuilder(URI.create(url))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private UUID orderIdOf(String body) {
+        try {
+            return UUID.fromString(objectMapper.readTree(body).get("orderId").asText());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private void stop() {
+        for (ServiceProcess service : services) {
+            try {
+                service.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        services.clear();
+        if (broker != null) {
+            broker.destroy();
+            broker = null;
+        }
+    }
+
+    private static <T> List<List<T>> chunks(List<T> list, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size) {
+            chunks.add(list.subList(i, Math.min(list.size(), i + size)));
+        }
+        return chunks;
+    }
+
+    private static List<String> split(String value) {
+        return value.isBlank() ? List.of() : List.of(value.trim().split("\\s+"));
+    }
+
+    private record PlacedOrder(UUID orderId, long sentAt, boolean warmup) {
+    }
+
+    private record CompletedOrder(PlacedOrder placed, OrderHistory history) {
+    }
+
+    /**
+     * Epoch millis of the CREATED entry and of the APPROVED or REJECTED entry of one order, if there is one yet.
+     */
+    private record OrderHistory(long createdAt, long finishedAt, String terminalStatus) {
+        static final OrderHistory UNKNOWN = new OrderHistory(0, 0, null);
+
+        static OrderHistory parse(ObjectMapper objectMapper, String body) {
+            try {
+                long createdAt = 0;
+                long finishedAt = 0;
+                String terminalStatus = null;
+                for (JsonNode entry : objectMapper.readTree(body)) {
+                    String status = entry.get("status").asText();
+                    long timestamp = objectMapper.convertValue(entry.get("createdAt"), Date.class).getTime();
+                    if ("CREATED".equals(status)) {
+                        createdAt = timestamp;
+                    } else if ("APPROVED".equals(status) || "REJECTED".equals(status)) {
+                        finishedAt = timestamp;
+                        terminalStatus = status;
+                    }
+                }
+                return new OrderHistory(createdAt, finishedAt, terminalStatus);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.appsdeveloperblog.benchmarks.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * One of the services started from its Spring Boot executable jar in a child JVM, listening on a free port.
+ */
+class ServiceProcess {
+    private final String name;
+    private final int port;
+    private final Process process;
+
+    private ServiceProcess(String name, int port, Process process) {
+        this.name = name;
+        this.port = port;
+        this.process = process;
+    }
+
+    static ServiceProcess start(String name, Path moduleDir, List<String> jvmArgs, List<String> appArgs,
+                                Path logDir) throws IOException {
+        int port = freePort();
+        String java = ProcessHandle.current().info().command().orElse("java");
+
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(executableJar(moduleDir).toString());
+        command.add("--server.port=" + port);
+        command.addAll(appArgs);
+
+        Files.createDirectories(logDir);
+        File log = logDir.resolve(name + ".log").toFile();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+        return new ServiceProcess(name, port, process);
+    }
+
+    void awaitStarted(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException(name + " exited with code " + process.exitValue());
+            }
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("localhost", port), 200);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(200);
+            }
+        }
+        throw new IllegalStateException(name + " did not open port " + port + " within " + timeout);
+    }
+
+    String url() {
+        return "http://localhost:" + port;
+    }
+
+    void stop() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * The repackaged Boot jar is the one whose manifest names a Start-Class, whatever classifier it was built with.
+     */
+    private static Path executableJar(Path moduleDir) throws IOException {
+        try (Stream<Path> jars = Files.list(moduleDir.resolve("target"))) {
+            return jars.filter(path -> path.toString().endsWith(".jar"))
+                    .filter(ServiceProcess::hasStartClass)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No executable jar in " + moduleDir
+                            + "/target, build it with mvn package first"));
+        }
+    }
+
+    private static boolean hasStartClass(Path jar) {
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            return jarFile.getManifest() != null
+                    && jarFile.getManifest().getMainAttributes().getValue("Start-Class") != null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
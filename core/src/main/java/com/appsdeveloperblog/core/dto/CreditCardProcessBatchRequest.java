@@ -0,0 +1,33 @@
+package com.appsdeveloperblog.core.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * Payments authorized with a single call. Each request is validated on its own, an invalid one only fails its
+ * own {@link CreditCardProcessResult}.
+ */
+public class CreditCardProcessBatchRequest {
+    public static final int MAX_SIZE = 1000;
+
+    @NotEmpty
+    @Size(max = MAX_SIZE)
+    private List<CreditCardProcessRequest> requests;
+
+    public CreditCardProcessBatchRequest() {
+    }
+
+    public CreditCardProcessBatchRequest(List<CreditCardProcessRequest> requests) {
+        this.requests = requests;
+    }
+
+    public List<CreditCardProcessRequest> getRequests() {
+        return requests;
+    }
+
+    public void setRequests(List<CreditCardProcessRequest> requests) {
+        this.requests = requests;
+    }
+}
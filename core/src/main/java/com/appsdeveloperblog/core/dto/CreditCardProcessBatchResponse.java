@@ -0,0 +1,25 @@
+package com.appsdeveloperblog.core.dto;
+
+import java.util.List;
+
+/**
+ * One result per request of a {@link CreditCardProcessBatchRequest}, in the same order.
+ */
+public class CreditCardProcessBatchResponse {
+    private List<CreditCardProcessResult> results;
+
+    public CreditCardProcessBatchResponse() {
+    }
+
+    public CreditCardProcessBatchResponse(List<CreditCardProcessResult> results) {
+        this.results = results;
+    }
+
+    public List<CreditCardProcessResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<CreditCardProcessResult> results) {
+        this.results = results;
+    }
+}
@@ -5,8 +5,15 @@ import jakarta.validation.constraints.Positive;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.UUID;
 
+/**
+ * {@code orderId} is the idempotency key: the processor charges each order once and answers a repeated request
+ * for it as it answered the first.
+ */
 public class CreditCardProcessRequest {
+    @NotNull
+    private UUID orderId;
     @NotNull
     @Positive
     private BigInteger creditCardNumber;
@@ -17,11 +24,20 @@ public class CreditCardProcessRequest {
     public CreditCardProcessRequest() {
     }
 
-    public CreditCardProcessRequest(BigInteger creditCardNumber, BigDecimal paymentAmount) {
+    public CreditCardProcessRequest(UUID orderId, BigInteger creditCardNumber, BigDecimal paymentAmount) {
+        this.orderId = orderId;
         this.creditCardNumber = creditCardNumber;
         this.paymentAmount = paymentAmount;
     }
 
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(UUID orderId) {
+        this.orderId = orderId;
+    }
+
     public BigInteger getCreditCardNumber() {
         return creditCardNumber;
     }
@@ -0,0 +1,34 @@
+package com.appsdeveloperblog.core.dto;
+
+/**
+ * Outcome of one request of a batch: {@code status} is what the single {@code /ccp/process} call would have
+ * answered, {@code error} says why a request was not accepted.
+ */
+public class CreditCardProcessResult {
+    private int status;
+    private String error;
+
+    public CreditCardProcessResult() {
+    }
+
+    public CreditCardProcessResult(int status, String error) {
+        this.status = status;
+        this.error = error;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -3,35 +3,33 @@ package com.appsdeveloperblog.core.dto;
 
 import com.appsdeveloperblog.core.types.OrderStatus;
 
+import java.util.List;
 import java.util.UUID;
 
 public class Order {
     private UUID orderId;
     private UUID customerId;
-    private UUID productId;
-    private Integer productQuantity;
+    private List<OrderLineItem> lineItems;
     private OrderStatus status;
 
     public Order() {
     }
 
-    public Order(UUID orderId, UUID customerId, UUID productId, Integer productQuantity, OrderStatus status) {
+    public Order(UUID orderId, UUID customerId, List<OrderLineItem> lineItems, OrderStatus status) {
         this.orderId = orderId;
         this.customerId = customerId;
-        this.productId = productId;
-        this.productQuantity = productQuantity;
+        this.lineItems = lineItems;
         this.status = status;
     }
 
-    public Order(UUID customerId, UUID productId, Integer productQuantity, OrderStatus status) {
+    public Order(UUID customerId, List<OrderLineItem> lineItems, OrderStatus status) {
         this.customerId = customerId;
-        this.productId = productId;
-        this.productQuantity = productQuantity;
+        this.lineItems = lineItems;
         this.status = status;
     }
 
-    public UUID getProductId() {
-        return productId;
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
     }
 
     public UUID getCustomerId() {
@@ -42,16 +40,8 @@ public class Order {
         this.customerId = customerId;
     }
 
-    public void setProductId(UUID productId) {
-        this.productId = productId;
-    }
-
-    public Integer getProductQuantity() {
-        return productQuantity;
-    }
-
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
     }
 
     public OrderStatus getStatus() {
@@ -0,0 +1,86 @@
+package com.appsdeveloperblog.core.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One product of an order. The unit price is unknown until products-service has reserved the line.
+ * The line items of one order name distinct products.
+ */
+public class OrderLineItem {
+    @NotNull
+    private UUID productId;
+    @NotNull
+    @Positive
+    private Integer productQuantity;
+    private BigDecimal productPrice;
+
+    public OrderLineItem() {
+    }
+
+    public OrderLineItem(UUID productId, Integer productQuantity) {
+        this.productId = productId;
+        this.productQuantity = productQuantity;
+    }
+
+    public OrderLineItem(UUID productId, Integer productQuantity, BigDecimal productPrice) {
+        this.productId = productId;
+        this.productQuantity = productQuantity;
+        this.productPrice = productPrice;
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public Integer getProductQuantity() {
+        return productQuantity;
+    }
+
+    public void setProductQuantity(Integer productQuantity) {
+        this.productQuantity = productQuantity;
+    }
+
+    public BigDecimal getProductPrice() {
+        return productPrice;
+    }
+
+    public void setProductPrice(BigDecimal productPrice) {
+        this.productPrice = productPrice;
+    }
+
+    /**
+     * Line items of a message that may have been written before orders had line items, when a message named
+     * its only product in fields of its own.
+     *
+     * @return {@code lineItems}, or that product as the only line item
+     */
+    public static List<OrderLineItem> orSingle(List<OrderLineItem> lineItems, UUID productId,
+                                               Integer productQuantity, BigDecimal productPrice) {
+        if (lineItems != null || productId == null) {
+            return lineItems;
+        }
+        return List.of(new OrderLineItem(productId, productQuantity, productPrice));
+    }
+
+    /**
+     * Like {@link #orSingle} for messages sent once the product is priced, which cannot go on without it.
+     *
+     * @throws IllegalArgumentException if the single product of an old message has no price
+     */
+    public static List<OrderLineItem> orSinglePriced(List<OrderLineItem> lineItems, UUID productId,
+                                                     Integer productQuantity, BigDecimal productPrice) {
+        if (lineItems == null && productId != null && productPrice == null) {
+            throw new IllegalArgumentException("Record of product " + productId + " has no price");
+        }
+        return orSingle(lineItems, productId, productQuantity, productPrice);
+    }
+}
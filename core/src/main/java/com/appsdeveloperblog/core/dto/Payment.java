@@ -6,27 +6,21 @@ import java.util.UUID;
 public class Payment {
     private UUID id;
     private UUID orderId;
-    private UUID productId;
-    private BigDecimal productPrice;
-    private Integer productQuantity;
+    private BigDecimal amount;
 
     public Payment() {
     }
 
-    public Payment(UUID id, UUID orderId, UUID productId, BigDecimal productPrice, Integer productQuantity) {
+    public Payment(UUID id, UUID orderId, BigDecimal amount) {
         this.id = id;
         this.orderId = orderId;
-        this.productId = productId;
-        this.productPrice = productPrice;
-        this.productQuantity = productQuantity;
+        this.amount = amount;
     }
 
 
-    public Payment(UUID orderId, UUID productId, BigDecimal productPrice, Integer productQuantity) {
+    public Payment(UUID orderId, BigDecimal amount) {
         this.orderId = orderId;
-        this.productId = productId;
-        this.productPrice = productPrice;
-        this.productQuantity = productQuantity;
+        this.amount = amount;
     }
 
     public UUID getId() {
@@ -45,28 +39,11 @@ public class Payment {
         this.orderId = orderId;
     }
 
-    public UUID getProductId() {
-        return productId;
+    public BigDecimal getAmount() {
+        return amount;
     }
 
-    public void setProductId(UUID productId) {
-        this.productId = productId;
-    }
-
-    public BigDecimal getProductPrice() {
-        return productPrice;
-    }
-
-    public void setProductPrice(BigDecimal productPrice) {
-        this.productPrice = productPrice;
-    }
-
-    public Integer getProductQuantity() {
-        return productQuantity;
-    }
-
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
     }
 }
-
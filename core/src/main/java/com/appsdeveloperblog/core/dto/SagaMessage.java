@@ -0,0 +1,19 @@
+package com.appsdeveloperblog.core.dto;
+
+import java.util.UUID;
+
+/**
+ * Every command and event exchanged by the saga belongs to exactly one order.
+ * The order id is used as the Kafka record key so that all steps of one order
+ * land on the same partition and are consumed in the order they were produced.
+ * Commands for products-service override {@link #key()} with the product id of their first
+ * line item, the commands of one order still share a partition because they list the same line items.
+ */
+public interface SagaMessage {
+
+    UUID getOrderId();
+
+    default String key() {
+        return getOrderId().toString();
+    }
+}
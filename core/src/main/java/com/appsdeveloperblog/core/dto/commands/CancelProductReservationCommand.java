@@ -1,28 +1,32 @@
 package com.appsdeveloperblog.core.dto.commands;
 
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.SagaMessage;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
 import java.util.UUID;
 
-public class CancelProductReservationCommand {
+public class CancelProductReservationCommand implements SagaMessage {
 
-    private UUID productId;
+    private List<OrderLineItem> lineItems;
     private UUID orderId;
-    private Integer productQuantity;
 
     public CancelProductReservationCommand() {
     }
 
-    public CancelProductReservationCommand(UUID productId, UUID orderId, Integer productQuantity) {
-        this.productId = productId;
+    public CancelProductReservationCommand(List<OrderLineItem> lineItems, UUID orderId) {
+        this.lineItems = lineItems;
         this.orderId = orderId;
-        this.productQuantity = productQuantity;
     }
 
-    public UUID getProductId() {
-        return productId;
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
     }
 
-    public void setProductId(UUID productId) {
-        this.productId = productId;
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
     }
 
     public UUID getOrderId() {
@@ -33,11 +37,21 @@ public class CancelProductReservationCommand {
         this.orderId = orderId;
     }
 
-    public Integer getProductQuantity() {
-        return productQuantity;
+    /**
+     * Same key as {@link ReserveProductCommand#key()}, so the cancellation follows the reservation.
+     */
+    @Override
+    public String key() {
+        return lineItems.get(0).getProductId().toString();
     }
 
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
+    // records written before orders had line items name their only product in fields of their own
+    @JsonCreator
+    private static CancelProductReservationCommand fromJson(@JsonProperty("lineItems") List<OrderLineItem> lineItems,
+                                                            @JsonProperty("productId") UUID productId,
+                                                            @JsonProperty("productQuantity") Integer productQuantity) {
+        CancelProductReservationCommand command = new CancelProductReservationCommand();
+        command.setLineItems(OrderLineItem.orSingle(lineItems, productId, productQuantity, null));
+        return command;
     }
 }
@@ -0,0 +1,48 @@
+package com.appsdeveloperblog.core.dto.commands;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.SagaMessage;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Sent when the order is approved, so the stock held for it is no longer released when the hold expires.
+ */
+public class ConfirmProductReservationCommand implements SagaMessage {
+
+    private List<OrderLineItem> lineItems;
+    private UUID orderId;
+
+    public ConfirmProductReservationCommand() {
+    }
+
+    public ConfirmProductReservationCommand(List<OrderLineItem> lineItems, UUID orderId) {
+        this.lineItems = lineItems;
+        this.orderId = orderId;
+    }
+
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
+    }
+
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
+    }
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(UUID orderId) {
+        this.orderId = orderId;
+    }
+
+    /**
+     * Same key as {@link ReserveProductCommand#key()}, so the confirmation follows the reservation.
+     */
+    @Override
+    public String key() {
+        return lineItems.get(0).getProductId().toString();
+    }
+}
@@ -1,22 +1,24 @@
 package com.appsdeveloperblog.core.dto.commands;
 
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.SagaMessage;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.UUID;
 
-public class ProcessPaymentCommand {
+public class ProcessPaymentCommand implements SagaMessage {
     private UUID orderId;
-    private UUID productId;
-    private BigDecimal productPrice;
-    private Integer productQuantity;
+    private List<OrderLineItem> lineItems;
 
     public ProcessPaymentCommand() {
     }
 
-    public ProcessPaymentCommand(UUID orderId, UUID productId, BigDecimal productPrice, Integer productQuantity) {
+    public ProcessPaymentCommand(UUID orderId, List<OrderLineItem> lineItems) {
         this.orderId = orderId;
-        this.productId = productId;
-        this.productPrice = productPrice;
-        this.productQuantity = productQuantity;
+        this.lineItems = lineItems;
     }
 
     public UUID getOrderId() {
@@ -27,27 +29,22 @@ public class ProcessPaymentCommand {
         this.orderId = orderId;
     }
 
-    public UUID getProductId() {
-        return productId;
-    }
-
-    public void setProductId(UUID productId) {
-        this.productId = productId;
-    }
-
-    public BigDecimal getProductPrice() {
-        return productPrice;
-    }
-
-    public void setProductPrice(BigDecimal productPrice) {
-        this.productPrice = productPrice;
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
     }
 
-    public Integer getProductQuantity() {
-        return productQuantity;
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
     }
 
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
+    // records written before orders had line items name their only product in fields of their own
+    @JsonCreator
+    private static ProcessPaymentCommand fromJson(@JsonProperty("lineItems") List<OrderLineItem> lineItems,
+                                                  @JsonProperty("productId") UUID productId,
+                                                  @JsonProperty("productQuantity") Integer productQuantity,
+                                                  @JsonProperty("productPrice") BigDecimal productPrice) {
+        ProcessPaymentCommand command = new ProcessPaymentCommand();
+        command.setLineItems(OrderLineItem.orSinglePriced(lineItems, productId, productQuantity, productPrice));
+        return command;
     }
 }
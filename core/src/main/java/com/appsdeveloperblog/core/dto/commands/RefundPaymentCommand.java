@@ -0,0 +1,27 @@
+package com.appsdeveloperblog.core.dto.commands;
+
+import com.appsdeveloperblog.core.dto.SagaMessage;
+
+import java.util.UUID;
+
+/**
+ * Gives back the payment of an order that was rejected while its payment was still being charged.
+ */
+public class RefundPaymentCommand implements SagaMessage {
+    private UUID orderId;
+
+    public RefundPaymentCommand() {
+    }
+
+    public RefundPaymentCommand(UUID orderId) {
+        this.orderId = orderId;
+    }
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(UUID orderId) {
+        this.orderId = orderId;
+    }
+}
@@ -1,8 +1,10 @@
 package com.appsdeveloperblog.core.dto.commands;
 
+import com.appsdeveloperblog.core.dto.SagaMessage;
+
 import java.util.UUID;
 
-public class RejectOrderCommand {
+public class RejectOrderCommand implements SagaMessage {
 
     private UUID orderId;
 
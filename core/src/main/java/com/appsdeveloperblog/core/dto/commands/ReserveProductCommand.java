@@ -1,32 +1,36 @@
 package com.appsdeveloperblog.core.dto.commands;
 
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.SagaMessage;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
 import java.util.UUID;
 
-public class ReserveProductCommand {
-    private UUID productId;
-    private Integer productQuantity;
+public class ReserveProductCommand implements SagaMessage {
+    private List<OrderLineItem> lineItems;
     private UUID orderId;
+    private List<OrderLineItem> reservedLineItems = List.of();
 
     public ReserveProductCommand() {
     }
 
-    public ReserveProductCommand(UUID productId, Integer productQuantity, UUID orderId) {
-        this.productId = productId;
-        this.productQuantity = productQuantity;
-        this.orderId = orderId;
+    public ReserveProductCommand(List<OrderLineItem> lineItems, UUID orderId) {
+        this(lineItems, orderId, List.of());
     }
 
-    public UUID getProductId() {
-        return productId;
-    }
-    public void setProductId(UUID productId) {
-        this.productId = productId;
+    public ReserveProductCommand(List<OrderLineItem> lineItems, UUID orderId, List<OrderLineItem> reservedLineItems) {
+        this.lineItems = lineItems;
+        this.orderId = orderId;
+        this.reservedLineItems = reservedLineItems;
     }
-    public Integer getProductQuantity() {
-        return productQuantity;
+
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
     }
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
     }
     public UUID getOrderId() {
         return orderId;
@@ -34,4 +38,34 @@ public class ReserveProductCommand {
     public void setOrderId(UUID orderId) {
         this.orderId = orderId;
     }
+
+    /**
+     * Line items of the order already reserved, with their price, on the partitions the command was passed on
+     * from. Empty when the order comes from orders-service.
+     */
+    public List<OrderLineItem> getReservedLineItems() {
+        return reservedLineItems;
+    }
+    public void setReservedLineItems(List<OrderLineItem> reservedLineItems) {
+        this.reservedLineItems = reservedLineItems;
+    }
+
+    /**
+     * Product commands are keyed by the product of their first line item, so each products-commands partition
+     * owns the stock of its products and a single product order is decided by that product's partition alone.
+     */
+    @Override
+    public String key() {
+        return lineItems.get(0).getProductId().toString();
+    }
+
+    // records written before orders had line items name their only product in fields of their own
+    @JsonCreator
+    private static ReserveProductCommand fromJson(@JsonProperty("lineItems") List<OrderLineItem> lineItems,
+                                                  @JsonProperty("productId") UUID productId,
+                                                  @JsonProperty("productQuantity") Integer productQuantity) {
+        ReserveProductCommand command = new ReserveProductCommand();
+        command.setLineItems(OrderLineItem.orSingle(lineItems, productId, productQuantity, null));
+        return command;
+    }
 }
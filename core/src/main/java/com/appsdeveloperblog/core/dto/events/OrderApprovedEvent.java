@@ -1,8 +1,10 @@
 package com.appsdeveloperblog.core.dto.events;
 
+import com.appsdeveloperblog.core.dto.SagaMessage;
+
 import java.util.UUID;
 
-public class OrderApprovedEvent {
+public class OrderApprovedEvent implements SagaMessage {
 
     private UUID orderId;
     public OrderApprovedEvent() {
@@ -1,24 +1,26 @@
 package com.appsdeveloperblog.core.dto.events;
 
-import com.appsdeveloperblog.core.dto.Order;
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.SagaMessage;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.List;
 import java.util.UUID;
 
-public class OrderCreatedEvent {
+public class OrderCreatedEvent implements SagaMessage {
 
     private UUID orderId;
     private UUID customerId;
-    private UUID productId;
-    private Integer productQuantity;
+    private List<OrderLineItem> lineItems;
 
     public OrderCreatedEvent() {
     }
 
-    public OrderCreatedEvent(UUID orderId, UUID customerId, UUID productId, Integer productQuantity) {
+    public OrderCreatedEvent(UUID orderId, UUID customerId, List<OrderLineItem> lineItems) {
         this.orderId = orderId;
         this.customerId = customerId;
-        this.productId = productId;
-        this.productQuantity = productQuantity;
+        this.lineItems = lineItems;
     }
 
     public UUID getOrderId() {
@@ -37,19 +39,21 @@ public class OrderCreatedEvent {
         this.customerId = customerId;
     }
 
-    public UUID getProductId() {
-        return productId;
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
     }
 
-    public void setProductId(UUID productId) {
-        this.productId = productId;
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
     }
 
-    public Integer getProductQuantity() {
-        return productQuantity;
-    }
-
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
+    // records written before orders had line items name their only product in fields of their own
+    @JsonCreator
+    private static OrderCreatedEvent fromJson(@JsonProperty("lineItems") List<OrderLineItem> lineItems,
+                                              @JsonProperty("productId") UUID productId,
+                                              @JsonProperty("productQuantity") Integer productQuantity) {
+        OrderCreatedEvent event = new OrderCreatedEvent();
+        event.setLineItems(OrderLineItem.orSingle(lineItems, productId, productQuantity, null));
+        return event;
     }
 }
@@ -0,0 +1,51 @@
+package com.appsdeveloperblog.core.dto.events;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.SagaMessage;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * An order whose stock products-service already reserved while it was placed, so its saga starts at the payment
+ * step. The line items carry the unit price they were reserved at.
+ */
+public class OrderReservedEvent implements SagaMessage {
+
+    private UUID orderId;
+    private UUID customerId;
+    private List<OrderLineItem> lineItems;
+
+    public OrderReservedEvent() {
+    }
+
+    public OrderReservedEvent(UUID orderId, UUID customerId, List<OrderLineItem> lineItems) {
+        this.orderId = orderId;
+        this.customerId = customerId;
+        this.lineItems = lineItems;
+    }
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(UUID orderId) {
+        this.orderId = orderId;
+    }
+
+    public UUID getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(UUID customerId) {
+        this.customerId = customerId;
+    }
+
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
+    }
+
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
+    }
+}
@@ -1,8 +1,10 @@
 package com.appsdeveloperblog.core.dto.events;
 
+import com.appsdeveloperblog.core.dto.SagaMessage;
+
 import java.util.UUID;
 
-public class PaymentProcessedEvent {
+public class PaymentProcessedEvent implements SagaMessage {
     private UUID orderId;
     private UUID paymentId;
 
@@ -1,19 +1,23 @@
 package com.appsdeveloperblog.core.dto.events;
 
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.SagaMessage;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
 import java.util.UUID;
 
-public class PaymentsFailedEvent {
+public class PaymentsFailedEvent implements SagaMessage {
     private UUID orderId;
-    private UUID productId;
-    private Integer productQuantity;
+    private List<OrderLineItem> lineItems;
 
     public PaymentsFailedEvent() {
     }
 
-    public PaymentsFailedEvent(UUID orderId, UUID productId, Integer productQuantity) {
+    public PaymentsFailedEvent(UUID orderId, List<OrderLineItem> lineItems) {
         this.orderId = orderId;
-        this.productId = productId;
-        this.productQuantity = productQuantity;
+        this.lineItems = lineItems;
     }
 
     public UUID getOrderId() {
@@ -24,19 +28,21 @@ public class PaymentsFailedEvent {
         this.orderId = orderId;
     }
 
-    public UUID getProductId() {
-        return productId;
-    }
-
-    public void setProductId(UUID productId) {
-        this.productId = productId;
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
     }
 
-    public Integer getProductQuantity() {
-        return productQuantity;
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
     }
 
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
+    // records written before orders had line items name their only product in fields of their own
+    @JsonCreator
+    private static PaymentsFailedEvent fromJson(@JsonProperty("lineItems") List<OrderLineItem> lineItems,
+                                                @JsonProperty("productId") UUID productId,
+                                                @JsonProperty("productQuantity") Integer productQuantity) {
+        PaymentsFailedEvent event = new PaymentsFailedEvent();
+        event.setLineItems(OrderLineItem.orSingle(lineItems, productId, productQuantity, null));
+        return event;
     }
 }
@@ -1,24 +1,30 @@
 package com.appsdeveloperblog.core.dto.events;
 
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.SagaMessage;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
 import java.util.UUID;
 
-public class ProductReservationCancelledEvent {
-    private UUID productId;
+public class ProductReservationCancelledEvent implements SagaMessage {
+    private List<OrderLineItem> lineItems;
     private UUID orderId;
 
     public ProductReservationCancelledEvent() {
     }
 
-    public ProductReservationCancelledEvent(UUID productId, UUID orderId) {
-        this.productId = productId;
+    public ProductReservationCancelledEvent(List<OrderLineItem> lineItems, UUID orderId) {
+        this.lineItems = lineItems;
         this.orderId = orderId;
     }
 
-    public UUID getProductId() {
-        return productId;
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
     }
-    public void setProductId(UUID productId) {
-        this.productId = productId;
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
     }
     public UUID getOrderId() {
         return orderId;
@@ -27,5 +33,12 @@ public class ProductReservationCancelledEvent {
         this.orderId = orderId;
     }
 
-
+    // records written before orders had line items name their only product in fields of their own
+    @JsonCreator
+    private static ProductReservationCancelledEvent fromJson(@JsonProperty("lineItems") List<OrderLineItem> lineItems,
+                                                             @JsonProperty("productId") UUID productId) {
+        ProductReservationCancelledEvent event = new ProductReservationCancelledEvent();
+        event.setLineItems(OrderLineItem.orSingle(lineItems, productId, null, null));
+        return event;
+    }
 }
@@ -1,8 +1,10 @@
 package com.appsdeveloperblog.core.dto.events;
 
+import com.appsdeveloperblog.core.dto.SagaMessage;
+
 import java.util.UUID;
 
-public class ProductReservationFailedEvent {
+public class ProductReservationFailedEvent implements SagaMessage {
 
     private UUID productId;
     private UUID orderId;
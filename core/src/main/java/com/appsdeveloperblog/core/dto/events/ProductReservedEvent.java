@@ -1,24 +1,29 @@
 package com.appsdeveloperblog.core.dto.events;
 
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.SagaMessage;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.UUID;
 
-public class ProductReservedEvent {
+public class ProductReservedEvent implements SagaMessage {
 
     private UUID orderId;
-    private UUID productId;
-    private Integer productQuantity;
-    private BigDecimal productPrice;
+    private List<OrderLineItem> lineItems;
 
 
     public ProductReservedEvent() {
     }
 
-    public ProductReservedEvent(UUID orderId, UUID productId, BigDecimal productPrice, Integer productQuantity) {
+    /**
+     * @param lineItems every line of the order, with the unit price it was reserved at
+     */
+    public ProductReservedEvent(UUID orderId, List<OrderLineItem> lineItems) {
         this.orderId = orderId;
-        this.productId = productId;
-        this.productQuantity = productQuantity;
-        this.productPrice = productPrice;
+        this.lineItems = lineItems;
     }
 
     public UUID getOrderId() {
@@ -29,27 +34,22 @@ public class ProductReservedEvent {
         this.orderId = orderId;
     }
 
-    public UUID getProductId() {
-        return productId;
-    }
-
-    public void setProductId(UUID productId) {
-        this.productId = productId;
-    }
-
-    public Integer getProductQuantity() {
-        return productQuantity;
-    }
-
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
     }
 
-    public BigDecimal getProductPrice() {
-        return productPrice;
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
     }
 
-    public void setProductPrice(BigDecimal productPrice) {
-        this.productPrice = productPrice;
+    // records written before orders had line items name their only product in fields of their own
+    @JsonCreator
+    private static ProductReservedEvent fromJson(@JsonProperty("lineItems") List<OrderLineItem> lineItems,
+                                                 @JsonProperty("productId") UUID productId,
+                                                 @JsonProperty("productQuantity") Integer productQuantity,
+                                                 @JsonProperty("productPrice") BigDecimal productPrice) {
+        ProductReservedEvent event = new ProductReservedEvent();
+        event.setLineItems(OrderLineItem.orSinglePriced(lineItems, productId, productQuantity, productPrice));
+        return event;
     }
 }
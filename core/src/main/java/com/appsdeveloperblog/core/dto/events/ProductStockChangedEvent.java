@@ -0,0 +1,41 @@
+package com.appsdeveloperblog.core.dto.events;
+
+import java.util.UUID;
+
+/**
+ * Stock of a product as products-service last wrote it, published keyed by product id to a compacted topic,
+ * so the topic always holds the latest quantity of every product.
+ */
+public class ProductStockChangedEvent {
+
+    private UUID productId;
+    private Integer quantity;
+
+    public ProductStockChangedEvent() {
+    }
+
+    public ProductStockChangedEvent(UUID productId, Integer quantity) {
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public String key() {
+        return productId.toString();
+    }
+}
@@ -0,0 +1,14 @@
+package com.appsdeveloperblog.core.exceptions;
+
+public class CreditCardDeclinedException extends RuntimeException {
+    private final int status;
+
+    public CreditCardDeclinedException(int status, String reason) {
+        super("Credit card processor declined the payment with " + status + (reason == null || reason.isBlank() ? "" : ": " + reason));
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,8 @@
+package com.appsdeveloperblog.core.exceptions;
+
+public class ProductReservationUnavailableException extends RuntimeException {
+
+    public ProductReservationUnavailableException(Throwable cause) {
+        super(cause);
+    }
+}
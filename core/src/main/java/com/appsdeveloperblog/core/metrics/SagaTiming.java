@@ -0,0 +1,47 @@
+package com.appsdeveloperblog.core.metrics;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Record headers carrying the saga timestamps, in epoch millis. {@link #ORIGIN_HEADER} is set once when the
+ * order enters the saga and copied onto every record sent while handling it, {@link #HOP_HEADER} is set
+ * again on every send. The origin of the record being handled is kept per listener thread so the producer
+ * interceptor can copy it without the handlers passing it along.
+ */
+public final class SagaTiming {
+    public static final String ORIGIN_HEADER = "saga-origin-ts";
+    public static final String HOP_HEADER = "saga-hop-ts";
+
+    private static final ThreadLocal<Long> CURRENT_ORIGIN = new ThreadLocal<>();
+
+    private SagaTiming() {
+    }
+
+    public static Long currentOrigin() {
+        return CURRENT_ORIGIN.get();
+    }
+
+    static void setCurrentOrigin(Long origin) {
+        if (origin == null) {
+            CURRENT_ORIGIN.remove();
+        } else {
+            CURRENT_ORIGIN.set(origin);
+        }
+    }
+
+    public static Long readTimestamp(Headers headers, String name) {
+        Header header = headers.lastHeader(name);
+        if (header == null || header.value() == null || header.value().length != Long.BYTES) {
+            return null;
+        }
+        return ByteBuffer.wrap(header.value()).getLong();
+    }
+
+    public static void writeTimestamp(Headers headers, String name, long epochMillis) {
+        headers.remove(name);
+        headers.add(name, ByteBuffer.allocate(Long.BYTES).putLong(epochMillis).array());
+    }
+}
@@ -0,0 +1,37 @@
+package com.appsdeveloperblog.core.metrics;
+
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.Map;
+
+/**
+ * Stamps the saga timing headers on every record, registered through the producer's interceptor.classes.
+ * A record sent outside of a saga handler starts a new saga timeline unless it already carries an origin.
+ */
+public class SagaTimingProducerInterceptor implements ProducerInterceptor<Object, Object> {
+
+    @Override
+    public ProducerRecord<Object, Object> onSend(ProducerRecord<Object, Object> record) {
+        long now = System.currentTimeMillis();
+        if (SagaTiming.readTimestamp(record.headers(), SagaTiming.ORIGIN_HEADER) == null) {
+            Long origin = SagaTiming.currentOrigin();
+            SagaTiming.writeTimestamp(record.headers(), SagaTiming.ORIGIN_HEADER, origin != null ? origin : now);
+        }
+        SagaTiming.writeTimestamp(record.headers(), SagaTiming.HOP_HEADER, now);
+        return record;
+    }
+
+    @Override
+    public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+}
@@ -0,0 +1,80 @@
+package com.appsdeveloperblog.core.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.RecordInterceptor;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Records, per message type, how long a record waited between being sent and being handled
+ * ({@code saga.step.queue}), how long the listener took ({@code saga.step.processing}) and how far the saga
+ * is from its origin when the record arrives ({@code saga.step.elapsed}). Only applies to record listeners.
+ */
+public class SagaTimingRecordInterceptor implements RecordInterceptor<Object, Object> {
+    private static final String UNKNOWN_MESSAGE = "unknown";
+
+    private final ThreadLocal<Long> processingStart = new ThreadLocal<>();
+    private final Map<String, Timer> queueTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> processingTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> elapsedTimers = new ConcurrentHashMap<>();
+    private final Function<String, Timer> queueTimer;
+    private final Function<String, Timer> processingTimer;
+    private final Function<String, Timer> elapsedTimer;
+
+    public SagaTimingRecordInterceptor(MeterRegistry meterRegistry) {
+        this.queueTimer = message -> timer(meterRegistry, "saga.step.queue",
+                "Time between a saga record being sent and its listener starting", message);
+        this.processingTimer = message -> timer(meterRegistry, "saga.step.processing",
+                "Time spent in the listener handling a saga record", message);
+        this.elapsedTimer = message -> timer(meterRegistry, "saga.step.elapsed",
+                "Time since the saga started when one of its records is received", message);
+    }
+
+    @Override
+    public ConsumerRecord<Object, Object> intercept(ConsumerRecord<Object, Object> record,
+                                                    Consumer<Object, Object> consumer) {
+        long now = System.currentTimeMillis();
+        String message = messageOf(record);
+        Long hop = SagaTiming.readTimestamp(record.headers(), SagaTiming.HOP_HEADER);
+        if (hop != null) {
+            queueTimers.computeIfAbsent(message, queueTimer).record(Duration.ofMillis(Math.max(0, now - hop)));
+        }
+        Long origin = SagaTiming.readTimestamp(record.headers(), SagaTiming.ORIGIN_HEADER);
+        if (origin != null) {
+            elapsedTimers.computeIfAbsent(message, elapsedTimer).record(Duration.ofMillis(Math.max(0, now - origin)));
+        }
+        SagaTiming.setCurrentOrigin(origin);
+        processingStart.set(System.nanoTime());
+        return record;
+    }
+
+    @Override
+    public void afterRecord(ConsumerRecord<Object, Object> record, Consumer<Object, Object> consumer) {
+        Long start = processingStart.get();
+        if (start != null) {
+            processingTimers.computeIfAbsent(messageOf(record), processingTimer)
+                    .record(Duration.ofNanos(System.nanoTime() - start));
+        }
+        processingStart.remove();
+        SagaTiming.setCurrentOrigin(null);
+    }
+
+    private static String messageOf(ConsumerRecord<Object, Object> record) {
+        return record.value() == null ? UNKNOWN_MESSAGE : record.value().getClass().getSimpleName();
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String name, String description, String message) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("message", message)
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
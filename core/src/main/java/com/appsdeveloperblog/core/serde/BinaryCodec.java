@@ -0,0 +1,15 @@
+package com.appsdeveloperblog.core.serde;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the fields of one message type in a fixed order. The field order is the schema,
+ * so a codec must never be changed in place: a new layout gets a new type id.
+ */
+interface BinaryCodec<T> {
+    void write(T message, DataOutput out) throws IOException;
+
+    T read(DataInput in) throws IOException;
+}
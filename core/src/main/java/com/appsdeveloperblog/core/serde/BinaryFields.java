@@ -0,0 +1,100 @@
+package com.appsdeveloperblog.core.serde;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Encoding of the field types used by the saga messages. Every value is preceded by a presence byte
+ * so that nullable wrapper types survive a round trip. Values whose scale, length or size do not fit the
+ * field they are written to are refused rather than truncated.
+ */
+final class BinaryFields {
+    private static final byte ABSENT = 0;
+    private static final byte PRESENT = 1;
+
+    private BinaryFields() {
+    }
+
+    static void writeUuid(DataOutput out, UUID value) throws IOException {
+        if (present(out, value)) {
+            out.writeLong(value.getMostSignificantBits());
+            out.writeLong(value.getLeastSignificantBits());
+        }
+    }
+
+    static UUID readUuid(DataInput in) throws IOException {
+        return in.readByte() == ABSENT ? null : new UUID(in.readLong(), in.readLong());
+    }
+
+    static void writeInteger(DataOutput out, Integer value) throws IOException {
+        if (present(out, value)) {
+            out.writeInt(value);
+        }
+    }
+
+    static Integer readInteger(DataInput in) throws IOException {
+        return in.readByte() == ABSENT ? null : in.readInt();
+    }
+
+    static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+        if (present(out, value)) {
+            byte[] unscaled = value.unscaledValue().toByteArray();
+            if (value.scale() < Byte.MIN_VALUE || value.scale() > Byte.MAX_VALUE || unscaled.length > 0xFF) {
+                throw new SerializationException("Decimal " + value + " does not fit the binary format");
+            }
+            out.writeByte(value.scale());
+            out.writeByte(unscaled.length);
+            out.write(unscaled);
+        }
+    }
+
+    static BigDecimal readDecimal(DataInput in) throws IOException {
+        if (in.readByte() == ABSENT) {
+            return null;
+        }
+        int scale = in.readByte();
+        byte[] unscaled = new byte[in.readUnsignedByte()];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    static void writeLineItems(DataOutput out, List<OrderLineItem> value) throws IOException {
+        if (present(out, value)) {
+            if (value.size() > 0xFFFF) {
+                throw new SerializationException(value.size() + " line items do not fit the binary format");
+            }
+            out.writeShort(value.size());
+            for (OrderLineItem lineItem : value) {
+                writeUuid(out, lineItem.getProductId());
+                writeInteger(out, lineItem.getProductQuantity());
+                writeDecimal(out, lineItem.getProductPrice());
+            }
+        }
+    }
+
+    static List<OrderLineItem> readLineItems(DataInput in) throws IOException {
+        if (in.readByte() == ABSENT) {
+            return null;
+        }
+        int size = in.readUnsignedShort();
+        List<OrderLineItem> lineItems = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            lineItems.add(new OrderLineItem(readUuid(in), readInteger(in), readDecimal(in)));
+        }
+        return lineItems;
+    }
+
+    private static boolean present(DataOutput out, Object value) throws IOException {
+        out.writeByte(value == null ? ABSENT : PRESENT);
+        return value != null;
+    }
+}
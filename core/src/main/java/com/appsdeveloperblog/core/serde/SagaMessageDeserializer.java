@@ -0,0 +1,72 @@
+package com.appsdeveloperblog.core.serde;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.utils.Utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads both wire formats: records starting with the binary magic byte are decoded with the saga schemas,
+ * anything else (JSON starts with '{') is handed to the fallback deserializer. This allows services to be
+ * moved to {@link SagaMessageSerializer} one at a time.
+ */
+public class SagaMessageDeserializer implements Deserializer<Object> {
+    public static final String FALLBACK_DESERIALIZER = "saga.serde.fallback.deserializer";
+    private static final String DEFAULT_FALLBACK = "org.springframework.kafka.support.serializer.JsonDeserializer";
+
+    private Deserializer<Object> fallback;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object fallbackClass = configs.get(FALLBACK_DESERIALIZER);
+        try {
+            fallback = fallbackClass instanceof Class<?> type
+                    ? (Deserializer<Object>) Utils.newInstance(type)
+                    : Utils.newInstance(fallbackClass == null ? DEFAULT_FALLBACK : fallbackClass.toString(), Deserializer.class);
+        } catch (ClassNotFoundException e) {
+            throw new SerializationException("Cannot create fallback deserializer " + fallbackClass, e);
+        }
+        fallback.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        if (data[0] != SagaMessageSerializer.MAGIC) {
+            return headers == null ? fallback.deserialize(topic, data) : fallback.deserialize(topic, headers, data);
+        }
+        if (data.length < 2) {
+            throw new SerializationException("Binary record without type id on topic " + topic);
+        }
+        BinaryCodec<?> codec = SagaMessageSchemas.codecOf(data[1]);
+        if (codec == null) {
+            throw new SerializationException("Unknown binary type id " + data[1] + " on topic " + topic);
+        }
+        try {
+            var in = new DataInputStream(new ByteArrayInputStream(data, 2, data.length - 2));
+            return codec.read(in);
+        } catch (IOException e) {
+            throw new SerializationException("Cannot deserialize binary record from " + topic, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (fallback != null) {
+            fallback.close();
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.appsdeveloperblog.core.serde;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.commands.*;
+import com.appsdeveloperblog.core.dto.events.*;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.appsdeveloperblog.core.serde.BinaryFields.*;
+
+/**
+ * Type ids and field layouts of the binary wire format. Ids are part of the format and must not be
+ * reused; append new ids when a message type is added or its fields change. The ids of replaced layouts
+ * stay readable until no record written with them can be left on a topic.
+ */
+final class SagaMessageSchemas {
+    private static final Map<Class<?>, Byte> IDS = new HashMap<>();
+    private static final BinaryCodec<?>[] CODECS = new BinaryCodec<?>[128];
+
+    static {
+        register(4, ProductReservationFailedEvent.class, new BinaryCodec<>() {
+            public void write(ProductReservationFailedEvent m, DataOutput out) throws IOException {
+                writeUuid(out, m.getProductId());
+                writeUuid(out, m.getOrderId());
+                writeInteger(out, m.getProductQuantity());
+            }
+
+            public ProductReservationFailedEvent read(DataInput in) throws IOException {
+                return new ProductReservationFailedEvent(readUuid(in), readUuid(in), readInteger(in));
+            }
+        });
+        register(6, PaymentProcessedEvent.class, new BinaryCodec<>() {
+            public void write(PaymentProcessedEvent m, DataOutput out) throws IOException {
+                writeUuid(out, m.getOrderId());
+                writeUuid(out, m.getPaymentId());
+            }
+
+            public PaymentProcessedEvent read(DataInput in) throws IOException {
+                return new PaymentProcessedEvent(readUuid(in), readUuid(in));
+            }
+        });
+        register(8, ApprovedOrderCommand.class, new BinaryCodec<>() {
+            public void write(ApprovedOrderCommand m, DataOutput out) throws IOException {
+                writeUuid(out, m.getOrderId());
+            }
+
+            public ApprovedOrderCommand read(DataInput in) throws IOException {
+                return new ApprovedOrderCommand(readUuid(in));
+            }
+        });
+        register(9, OrderApprovedEvent.class, new BinaryCodec<>() {
+            public void write(OrderApprovedEvent m, DataOutput out) throws IOException {
+                writeUuid(out, m.getOrderId());
+            }
+
+            public OrderApprovedEvent read(DataInput in) throws IOException {
+                return new OrderApprovedEvent(readUuid(in));
+            }
+        });
+        register(12, RejectOrderCommand.class, new BinaryCodec<>() {
+            public void write(RejectOrderCommand m, DataOutput out) throws IOException {
+                writeUuid(out, m.getOrderId());
+            }
+
+            public RejectOrderCommand read(DataInput in) throws IOException {
+                return new RejectOrderCommand(readUuid(in));
+            }
+        });
+        register(13, OrderCreatedEvent.class, new BinaryCodec<>() {
+            public void write(OrderCreatedEvent m, DataOutput out) throws IOException {
+                writeUuid(out, m.getOrderId());
+                writeUuid(out, m.getCustomerId());
+                writeLineItems(out, m.getLineItems());
+            }
+
+            public OrderCreatedEvent read(DataInput in) throws IOException {
+                return new OrderCreatedEvent(readUuid(in), readUuid(in), readLineItems(in));
+            }
+        });
+        register(15, ProductReservedEvent.class, new BinaryCodec<>() {
+            public void write(ProductReservedEvent m, DataOutput out) throws IOException {
+                writeUuid(out, m.getOrderId());
+                writeLineItems(out, m.getLineItems());
+            }
+
+            public ProductReservedEvent read(DataInput in) throws IOException {
+                return new ProductReservedEvent(readUuid(in), readLineItems(in));
+            }
+        });
+        register(16, ProcessPaymentCommand.class, new BinaryCodec<>() {
+            public void write(ProcessPaymentCommand m, DataOutput out) throws IOException {
+                writeUuid(out, m.getOrderId());
+                writeLineItems(out, m.getLineItems());
+            }
+
+            public ProcessPaymentCommand read(DataInput in) throws IOException {
+                return new ProcessPaymentCommand(readUuid(in), readLineItems(in));
+            }
+        });
+        register(17, PaymentsFailedEvent.class, new BinaryCodec<>() {
+            public void write(PaymentsFailedEvent m, DataOutput out) throws IOException {
+                writeUuid(out, m.getOrderId());
+                writeLineItems(out, m.getLineItems());
+            }
+
+            public PaymentsFailedEvent read(DataInput in) throws IOException {
+                return new PaymentsFailedEvent(readUuid(in), readLineItems(in));
+            }
+        });
+        register(18, CancelProductReservationCommand.class, new BinaryCodec<>() {
+            public void write(CancelProductReservationCommand m, DataOutput out) throws IOException {
+                writeLineItems(out, m.getLineItems());
+                writeUuid(out, m.getOrderId());
+            }
+
+            public CancelProductReservationCommand read(DataInput in) throws IOException {
+                return new CancelProductReservationCommand(readLineItems(in), readUuid(in));
+            }
+        });
+        register(19, ProductReservationCancelledEvent.class, new BinaryCodec<>() {
+            public void write(ProductReservationCancelledEvent m, DataOutput out) throws IOException {
+                writeLineItems(out, m.getLineItems());
+                writeUuid(out, m.getOrderId());
+            }
+
+            public ProductReservationCancelledEvent read(DataInput in) throws IOException {
+                return new ProductReservationCancelledEvent(readLineItems(in), readUuid(in));
+            }
+        });
+        register(20, ConfirmProductReservationCommand.class, new BinaryCodec<>() {
+            public void write(ConfirmProductReservationCommand m, DataOutput out) throws IOException {
+                writeLineItems(out, m.getLineItems());
+                writeUuid(out, m.getOrderId());
+            }
+
+            public ConfirmProductReservationCommand read(DataInput in) throws IOException {
+                return new ConfirmProductReservationCommand(readLineItems(in), readUuid(in));
+            }
+        });
+        register(21, ProductStockChangedEvent.class, new BinaryCodec<>() {
+            public void write(ProductStockChangedEvent m, DataOutput out) throws IOException {
+                writeUuid(out, m.getProductId());
+                writeInteger(out, m.getQuantity());
+            }
+
+            public ProductStockChangedEvent read(DataInput in) throws IOException {
+                return new ProductStockChangedEvent(readUuid(in), readInteger(in));
+            }
+        });
+        register(22, OrderReservedEvent.class, new BinaryCodec<>() {
+            public void write(OrderReservedEvent m, DataOutput out) throws IOException {
+                writeUuid(out, m.getOrderId());
+                writeUuid(out, m.getCustomerId());
+                writeLineItems(out, m.getLineItems());
+            }
+
+            public OrderReservedEvent read(DataInput in) throws IOException {
+                return new OrderReservedEvent(readUuid(in), readUuid(in), readLineItems(in));
+            }
+        });
+        register(23, RefundPaymentCommand.class, new BinaryCodec<>() {
+            public void write(RefundPaymentCommand m, DataOutput out) throws IOException {
+                writeUuid(out, m.getOrderId());
+            }
+
+            public RefundPaymentCommand read(DataInput in) throws IOException {
+                return new RefundPaymentCommand(readUuid(in));
+            }
+        });
+        register(24, ReserveProductCommand.class, new BinaryCodec<>() {
+            public void write(ReserveProductCommand m, DataOutput out) throws IOException {
+                writeLineItems(out, m.getLineItems());
+                writeUuid(out, m.getOrderId());
+                writeLineItems(out, m.getReservedLineItems());
+            }
+
+            public ReserveProductCommand read(DataInput in) throws IOException {
+                return new ReserveProductCommand(readLineItems(in), readUuid(in), readLineItems(in));
+            }
+        });
+
+        // single product layouts written before orders had line items, still read as orders of one line
+        registerLegacy(1, in -> {
+            UUID orderId = readUuid(in);
+            UUID customerId = readUuid(in);
+            return new OrderCreatedEvent(orderId, customerId, lineItem(readUuid(in), readInteger(in), null));
+        });
+        registerLegacy(2, in -> {
+            List<OrderLineItem> lineItems = lineItem(readUuid(in), readInteger(in), null);
+            return new ReserveProductCommand(lineItems, readUuid(in));
+        });
+        registerLegacy(3, in -> {
+            UUID orderId = readUuid(in);
+            UUID productId = readUuid(in);
+            BigDecimal productPrice = readDecimal(in);
+            return new ProductReservedEvent(orderId, pricedLineItem(productId, readInteger(in), productPrice));
+        });
+        registerLegacy(5, in -> {
+            UUID orderId = readUuid(in);
+            UUID productId = readUuid(in);
+            BigDecimal productPrice = readDecimal(in);
+            return new ProcessPaymentCommand(orderId, pricedLineItem(productId, readInteger(in), productPrice));
+        });
+        registerLegacy(7, in -> {
+            UUID orderId = readUuid(in);
+            return new PaymentsFailedEvent(orderId, lineItem(readUuid(in), readInteger(in), null));
+        });
+        registerLegacy(10, in -> {
+            UUID productId = readUuid(in);
+            UUID orderId = readUuid(in);
+            return new CancelProductReservationCommand(lineItem(productId, readInteger(in), null), orderId);
+        });
+        registerLegacy(11, in -> {
+            UUID productId = readUuid(in);
+            UUID orderId = readUuid(in);
+            return new ProductReservationCancelledEvent(lineItem(productId, null, null), orderId);
+        });
+
+        // reservations written before line items could be passed on to the partitions owning them
+        registerLegacy(14, in -> new ReserveProductCommand(readLineItems(in), readUuid(in)));
+    }
+
+    private SagaMessageSchemas() {
+    }
+
+    private static <T> void register(int id, Class<T> type, BinaryCodec<T> codec) {
+        IDS.put(type, (byte) id);
+        CODECS[id] = codec;
+    }
+
+    private static void registerLegacy(int id, LegacyReader reader) {
+        CODECS[id] = new BinaryCodec<>() {
+            public void write(Object message, DataOutput out) {
+                throw new UnsupportedOperationException("Type id " + id + " is only read");
+            }
+
+            public Object read(DataInput in) throws IOException {
+                return reader.read(in);
+            }
+        };
+    }
+
+    private static List<OrderLineItem> lineItem(UUID productId, Integer productQuantity, BigDecimal productPrice) {
+        return List.of(new OrderLineItem(productId, productQuantity, productPrice));
+    }
+
+    // the payment is charged from the price, a record that lost it cannot be replayed
+    private static List<OrderLineItem> pricedLineItem(UUID productId, Integer productQuantity,
+                                                      BigDecimal productPrice) {
+        if (productPrice == null) {
+            throw new SerializationException("Record of product " + productId + " has no price");
+        }
+        return lineItem(productId, productQuantity, productPrice);
+    }
+
+    static Byte idOf(Class<?> type) {
+        return IDS.get(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> BinaryCodec<T> codecOf(Class<T> type) {
+        Byte id = IDS.get(type);
+        return id == null ? null : (BinaryCodec<T>) CODECS[id];
+    }
+
+    static BinaryCodec<?> codecOf(byte id) {
+        return id > 0 ? CODECS[id] : null;
+    }
+
+    private interface LegacyReader {
+        Object read(DataInput in) throws IOException;
+    }
+}
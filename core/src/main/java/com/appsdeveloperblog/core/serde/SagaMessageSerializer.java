@@ -0,0 +1,43 @@
+package com.appsdeveloperblog.core.serde;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary alternative to JsonSerializer for the saga commands and events. A record is one magic byte,
+ * one type id byte and the fields in schema order; UUIDs take 16 bytes and no field names are written.
+ * Consumers must run {@link SagaMessageDeserializer} before any producer is switched to this serializer.
+ */
+public class SagaMessageSerializer implements Serializer<Object> {
+    static final byte MAGIC = 0x00;
+
+    @Override
+    public byte[] serialize(String topic, Object message) {
+        if (message == null) {
+            return null;
+        }
+        BinaryCodec<Object> codec = SagaMessageSchemas.codecOf(cast(message.getClass()));
+        if (codec == null) {
+            throw new SerializationException("No binary schema for " + message.getClass().getName());
+        }
+        try {
+            var bytes = new ByteArrayOutputStream(64);
+            var out = new DataOutputStream(bytes);
+            out.writeByte(MAGIC);
+            out.writeByte(SagaMessageSchemas.idOf(message.getClass()));
+            codec.write(message, out);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Cannot serialize " + message.getClass().getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<Object> cast(Class<?> type) {
+        return (Class<Object>) type;
+    }
+}
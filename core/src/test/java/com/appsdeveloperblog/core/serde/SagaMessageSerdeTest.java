@@ -0,0 +1,212 @@
+package com.appsdeveloperblog.core.serde;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.commands.ApprovedOrderCommand;
+import com.appsdeveloperblog.core.dto.commands.CancelProductReservationCommand;
+import com.appsdeveloperblog.core.dto.commands.ConfirmProductReservationCommand;
+import com.appsdeveloperblog.core.dto.commands.ProcessPaymentCommand;
+import com.appsdeveloperblog.core.dto.commands.RefundPaymentCommand;
+import com.appsdeveloperblog.core.dto.commands.RejectOrderCommand;
+import com.appsdeveloperblog.core.dto.commands.ReserveProductCommand;
+import com.appsdeveloperblog.core.dto.events.OrderApprovedEvent;
+import com.appsdeveloperblog.core.dto.events.OrderCreatedEvent;
+import com.appsdeveloperblog.core.dto.events.OrderReservedEvent;
+import com.appsdeveloperblog.core.dto.events.PaymentProcessedEvent;
+import com.appsdeveloperblog.core.dto.events.PaymentsFailedEvent;
+import com.appsdeveloperblog.core.dto.events.ProductReservationCancelledEvent;
+import com.appsdeveloperblog.core.dto.events.ProductReservationFailedEvent;
+import com.appsdeveloperblog.core.dto.events.ProductReservedEvent;
+import com.appsdeveloperblog.core.dto.events.ProductStockChangedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SagaMessageSerdeTest {
+    private static final String TOPIC = "orders-events";
+
+    private final UUID orderId = UUID.randomUUID();
+    private final UUID customerId = UUID.randomUUID();
+    private final UUID productId = UUID.randomUUID();
+    private final List<OrderLineItem> lineItems = List.of(
+            new OrderLineItem(UUID.randomUUID(), 2, new BigDecimal("19.99")),
+            new OrderLineItem(UUID.randomUUID(), 1, null));
+
+    private final SagaMessageSerializer serializer = new SagaMessageSerializer();
+    private final SagaMessageDeserializer deserializer = new SagaMessageDeserializer();
+
+    @Test
+    void roundTripsEveryRegisteredType() {
+        List<Object> messages = List.of(
+                new ProductReservationFailedEvent(productId, orderId, 3),
+                new PaymentProcessedEvent(orderId, UUID.randomUUID()),
+                new ApprovedOrderCommand(orderId),
+                new OrderApprovedEvent(orderId),
+                new RejectOrderCommand(orderId),
+                new OrderCreatedEvent(orderId, customerId, lineItems),
+                new ProductReservedEvent(orderId, lineItems),
+                new ProcessPaymentCommand(orderId, lineItems),
+                new PaymentsFailedEvent(orderId, lineItems),
+                new CancelProductReservationCommand(lineItems, orderId),
+                new ProductReservationCancelledEvent(lineItems, orderId),
+                new ConfirmProductReservationCommand(lineItems, orderId),
+                new ProductStockChangedEvent(productId, 7),
+                new OrderReservedEvent(orderId, customerId, lineItems),
+                new RefundPaymentCommand(orderId),
+                new ReserveProductCommand(lineItems, orderId, lineItems.subList(0, 1)));
+
+        for (Object message : messages) {
+            byte[] data = serializer.serialize(TOPIC, message);
+
+            assertThat(data[0]).isEqualTo(SagaMessageSerializer.MAGIC);
+            assertThat(deserializer.deserialize(TOPIC, data))
+                    .isExactlyInstanceOf(message.getClass())
+                    .usingRecursiveComparison()
+                    .isEqualTo(message);
+        }
+    }
+
+    @Test
+    void roundTripsAbsentFields() {
+        var message = new OrderCreatedEvent(orderId, null, null);
+
+        assertThat(deserializer.deserialize(TOPIC, serializer.serialize(TOPIC, message)))
+                .usingRecursiveComparison()
+                .isEqualTo(message);
+    }
+
+    @Test
+    void readsLegacySingleProductRecordsAsOneLineItem() throws IOException {
+        BigDecimal price = new BigDecimal("5.50");
+
+        assertThat(legacy(1, out -> {
+            BinaryFields.writeUuid(out, orderId);
+            BinaryFields.writeUuid(out, customerId);
+            BinaryFields.writeUuid(out, productId);
+            BinaryFields.writeInteger(out, 4);
+        })).usingRecursiveComparison().isEqualTo(new OrderCreatedEvent(orderId, customerId, single(4, null)));
+
+        assertThat(legacy(2, out -> {
+            BinaryFields.writeUuid(out, productId);
+            BinaryFields.writeInteger(out, 4);
+            BinaryFields.writeUuid(out, orderId);
+        })).usingRecursiveComparison().isEqualTo(new ReserveProductCommand(single(4, null), orderId));
+
+        assertThat(legacy(3, out -> {
+            BinaryFields.writeUuid(out, orderId);
+            BinaryFields.writeUuid(out, productId);
+            BinaryFields.writeDecimal(out, price);
+            BinaryFields.writeInteger(out, 4);
+        })).usingRecursiveComparison().isEqualTo(new ProductReservedEvent(orderId, single(4, price)));
+
+        assertThat(legacy(5, out -> {
+            BinaryFields.writeUuid(out, orderId);
+            BinaryFields.writeUuid(out, productId);
+            BinaryFields.writeDecimal(out, price);
+            BinaryFields.writeInteger(out, 4);
+        })).usingRecursiveComparison().isEqualTo(new ProcessPaymentCommand(orderId, single(4, price)));
+
+        assertThat(legacy(7, out -> {
+            BinaryFields.writeUuid(out, orderId);
+            BinaryFields.writeUuid(out, productId);
+            BinaryFields.writeInteger(out, 4);
+        })).usingRecursiveComparison().isEqualTo(new PaymentsFailedEvent(orderId, single(4, null)));
+
+        assertThat(legacy(10, out -> {
+            BinaryFields.writeUuid(out, productId);
+            BinaryFields.writeUuid(out, orderId);
+            BinaryFields.writeInteger(out, 4);
+        })).usingRecursiveComparison().isEqualTo(new CancelProductReservationCommand(single(4, null), orderId));
+
+        assertThat(legacy(11, out -> {
+            BinaryFields.writeUuid(out, productId);
+            BinaryFields.writeUuid(out, orderId);
+        })).usingRecursiveComparison().isEqualTo(new ProductReservationCancelledEvent(single(null, null), orderId));
+    }
+
+    @Test
+    void readsReservationsWrittenBeforeReservedLineItems() throws IOException {
+        Object message = legacy(14, out -> {
+            BinaryFields.writeLineItems(out, lineItems);
+            BinaryFields.writeUuid(out, orderId);
+        });
+
+        assertThat(message).usingRecursiveComparison().isEqualTo(new ReserveProductCommand(lineItems, orderId));
+    }
+
+    @Test
+    void refusesLegacyPricedRecordsWithoutPrice() {
+        for (int id : new int[]{3, 5}) {
+            assertThatThrownBy(() -> legacy(id, out -> {
+                BinaryFields.writeUuid(out, orderId);
+                BinaryFields.writeUuid(out, productId);
+                BinaryFields.writeDecimal(out, null);
+                BinaryFields.writeInteger(out, 4);
+            })).isInstanceOf(SerializationException.class);
+        }
+    }
+
+    @Test
+    void refusesToWriteLegacyTypes() {
+        assertThatThrownBy(() -> SagaMessageSchemas.codecOf((byte) 1).write(null, new DataOutputStream(
+                new ByteArrayOutputStream()))).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void refusesDecimalsAndLineItemListsTheFormatCannotHold() {
+        var unscaled = new OrderCreatedEvent(orderId, customerId, List.of(
+                new OrderLineItem(productId, 1, new BigDecimal("1").scaleByPowerOfTen(-200))));
+        var wide = new OrderCreatedEvent(orderId, customerId, List.of(
+                new OrderLineItem(productId, 1, new BigDecimal("9".repeat(700)))));
+        var many = new OrderCreatedEvent(orderId, customerId,
+                Collections.nCopies(0x10000, new OrderLineItem(productId, 1, null)));
+
+        assertThatThrownBy(() -> serializer.serialize(TOPIC, unscaled)).isInstanceOf(SerializationException.class);
+        assertThatThrownBy(() -> serializer.serialize(TOPIC, wide)).isInstanceOf(SerializationException.class);
+        assertThatThrownBy(() -> serializer.serialize(TOPIC, many)).isInstanceOf(SerializationException.class);
+    }
+
+    @Test
+    void refusesRecordsWithoutKnownTypeId() {
+        assertThatThrownBy(() -> deserializer.deserialize(TOPIC, new byte[]{SagaMessageSerializer.MAGIC}))
+                .isInstanceOf(SerializationException.class);
+        assertThatThrownBy(() -> deserializer.deserialize(TOPIC, new byte[]{SagaMessageSerializer.MAGIC, 99}))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    @Test
+    void readsTruncatedRecordsAsErrors() {
+        byte[] data = serializer.serialize(TOPIC, new OrderCreatedEvent(orderId, customerId, lineItems));
+        byte[] truncated = Arrays.copyOf(data, data.length - 3);
+
+        assertThatThrownBy(() -> deserializer.deserialize(TOPIC, truncated))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    private List<OrderLineItem> single(Integer quantity, BigDecimal price) {
+        return List.of(new OrderLineItem(productId, quantity, price));
+    }
+
+    private Object legacy(int id, Fields fields) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeByte(SagaMessageSerializer.MAGIC);
+        out.writeByte(id);
+        fields.write(out);
+        return deserializer.deserialize(TOPIC, bytes.toByteArray());
+    }
+
+    private interface Fields {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
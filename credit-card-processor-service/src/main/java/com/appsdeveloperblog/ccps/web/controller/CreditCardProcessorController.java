@@ -1,20 +1,138 @@
 package com.appsdeveloperblog.ccps.web.controller;
 
+import com.appsdeveloperblog.core.dto.CreditCardProcessBatchRequest;
+import com.appsdeveloperblog.core.dto.CreditCardProcessBatchResponse;
 import com.appsdeveloperblog.core.dto.CreditCardProcessRequest;
+import com.appsdeveloperblog.core.dto.CreditCardProcessResult;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Charges each order once: the amounts of the last {@code ccp.charged-orders.max-size} charged orders are kept by
+ * order id, and a request for one of them is accepted again without charging. A request for a charged order with
+ * another amount is refused with 409. The same holds for refunds, which are only accepted for a charged order.
+ */
 @RestController
 @RequestMapping("ccp")
 public class CreditCardProcessorController {
     private static final Logger LOGGER = LoggerFactory.getLogger(CreditCardProcessorController.class);
+    private final Validator validator;
+    private final Map<UUID, Charge> chargedOrders;
+
+    public CreditCardProcessorController(Validator validator,
+                                         @Value("${ccp.charged-orders.max-size}") int maxChargedOrders) {
+        this.validator = validator;
+        this.chargedOrders = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Charge> eldest) {
+                return size() > maxChargedOrders;
+            }
+        });
+    }
 
     @PostMapping("/process")
     @ResponseStatus(HttpStatus.ACCEPTED)
     public void processCreditCard(@RequestBody @Valid CreditCardProcessRequest request) {
-        LOGGER.info("Processing request: {}", request);
+        String conflict = charge(request);
+        if (conflict != null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, conflict);
+        }
+    }
+
+    @PostMapping("/refund")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public void refundCreditCard(@RequestBody @Valid CreditCardProcessRequest request) {
+        synchronized (chargedOrders) {
+            Charge charge = chargedOrders.get(request.getOrderId());
+            if (charge == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "order " + request.getOrderId()
+                        + " was not charged");
+            }
+            String conflict = conflict(request, charge);
+            if (conflict != null) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, conflict);
+            }
+            if (charge.refunded()) {
+                LOGGER.info("Order {} is already refunded", request.getOrderId());
+                return;
+            }
+            chargedOrders.put(request.getOrderId(), new Charge(charge.amount(), true));
+        }
+        LOGGER.info("Refunding request: {}", request);
+    }
+
+    @PostMapping("/process-batch")
+    public CreditCardProcessBatchResponse processCreditCards(@RequestBody @Valid CreditCardProcessBatchRequest batch) {
+        List<CreditCardProcessResult> results = new ArrayList<>(batch.getRequests().size());
+        for (CreditCardProcessRequest request : batch.getRequests()) {
+            String error = validationError(request);
+            if (error != null) {
+                results.add(new CreditCardProcessResult(HttpStatus.BAD_REQUEST.value(), error));
+                continue;
+            }
+            String conflict = charge(request);
+            if (conflict != null) {
+                results.add(new CreditCardProcessResult(HttpStatus.CONFLICT.value(), conflict));
+                continue;
+            }
+            results.add(new CreditCardProcessResult(HttpStatus.ACCEPTED.value(), null));
+        }
+        return new CreditCardProcessBatchResponse(results);
+    }
+
+    // the answer to a charged order depends only on its amount, so a repeated request needs no lock on the order
+    private String charge(CreditCardProcessRequest request) {
+        Charge charge = chargedOrders.putIfAbsent(request.getOrderId(), new Charge(request.getPaymentAmount(), false));
+        if (charge == null) {
+            LOGGER.info("Processing request: {}", request);
+            return null;
+        }
+        String conflict = conflict(request, charge);
+        if (conflict == null) {
+            LOGGER.info("Order {} is already charged", request.getOrderId());
+        }
+        return conflict;
+    }
+
+    private static String conflict(CreditCardProcessRequest request, Charge charge) {
+        if (charge.amount().compareTo(request.getPaymentAmount()) == 0) {
+            return null;
+        }
+        return "order " + request.getOrderId() + " was charged " + charge.amount() + ", not "
+                + request.getPaymentAmount();
+    }
+
+    private String validationError(CreditCardProcessRequest request) {
+        if (request == null) {
+            return "request must not be null";
+        }
+        Set<ConstraintViolation<CreditCardProcessRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    private record Charge(BigDecimal amount, boolean refunded) {
     }
 }
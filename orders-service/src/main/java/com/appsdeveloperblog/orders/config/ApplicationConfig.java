@@ -0,0 +1,28 @@
+package com.appsdeveloperblog.orders.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+@Configuration
+public class ApplicationConfig {
+
+    // HTTP/2 multiplexes the reservations of all checkout threads over one connection to products-service
+    @Bean
+    public RestTemplate productsRestTemplate(RestTemplateBuilder restTemplateBuilder,
+                                             @Value("${orders.reservation.sync.timeout-ms}") long timeoutMs) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(timeoutMs))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(timeoutMs));
+        return restTemplateBuilder.requestFactory(() -> requestFactory).build();
+    }
+}
@@ -1,12 +1,20 @@
 package com.appsdeveloperblog.orders.config;
 
+import com.appsdeveloperblog.core.metrics.SagaTimingRecordInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.orm.jpa.JpaTransactionManager;
 
 @Configuration
 public class KafkaConfig {
@@ -33,6 +41,52 @@ public class KafkaConfig {
         return new KafkaTemplate<>(producerFactory);
     }
 
+    /**
+     * Setting spring.kafka.producer.transaction-id-prefix makes Boot register a KafkaTransactionManager,
+     * which would otherwise suppress the default JPA one. Listener containers then run every poll in a
+     * Kafka transaction that also commits the consumed offsets, and JPA transactions opened by the
+     * services commit right before it.
+     */
+    @Bean
+    @Primary
+    JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+
+    /**
+     * Picked up by Boot's container factory configurer, so every record listener reports the saga.step.*
+     * timers and makes the record's saga origin available to the sends it triggers.
+     */
+    @Bean
+    SagaTimingRecordInterceptor sagaTimingRecordInterceptor(MeterRegistry meterRegistry) {
+        return new SagaTimingRecordInterceptor(meterRegistry);
+    }
+
+    /**
+     * Records are keyed by order id, so running one consumer per partition keeps
+     * every order on a single thread while the topic's partitions are consumed in parallel.
+     */
+    @Bean
+    ConcurrentKafkaListenerContainerFactory<Object, Object> kafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> kafkaConsumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory);
+        factory.setConcurrency(TOPIC_PARTITION);
+        return factory;
+    }
+
+    @Bean
+    ConcurrentKafkaListenerContainerFactory<Object, Object> batchKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> kafkaConsumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory);
+        factory.setConcurrency(TOPIC_PARTITION);
+        factory.setBatchListener(true);
+        return factory;
+    }
+
     @Bean
     NewTopic createOrdersEventsTopic() {
         return TopicBuilder.name(ordersEventsTopicName)
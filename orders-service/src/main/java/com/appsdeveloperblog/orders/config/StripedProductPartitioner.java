@@ -0,0 +1,77 @@
+package com.appsdeveloperblog.orders.config;
+
+import com.appsdeveloperblog.core.dto.commands.CancelProductReservationCommand;
+import com.appsdeveloperblog.core.dto.commands.ConfirmProductReservationCommand;
+import com.appsdeveloperblog.core.dto.commands.ReserveProductCommand;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Partitions by key like the default partitioner, except for commands whose first line item is one of the
+ * products listed in {@value #STRIPED_PRODUCTS_CONFIG}: those are partitioned by order id, so a product
+ * everybody orders is reserved by all products-service consumers instead of one. All commands of one order
+ * still go to the same partition.
+ */
+public class StripedProductPartitioner implements Partitioner {
+    public static final String STRIPED_PRODUCTS_CONFIG = "striped.products";
+
+    private Set<UUID> stripedProducts = Set.of();
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object value = configs.get(STRIPED_PRODUCTS_CONFIG);
+        if (value != null) {
+            stripedProducts = Arrays.stream(value.toString().split(","))
+                    .map(String::trim)
+                    .filter(id -> !id.isEmpty())
+                    .map(UUID::fromString)
+                    .collect(Collectors.toUnmodifiableSet());
+        }
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int partitions = cluster.partitionsForTopic(topic).size();
+        UUID orderId = stripedOrderId(value);
+        if (orderId != null) {
+            return partitionOf(orderId.toString().getBytes(StandardCharsets.UTF_8), partitions);
+        }
+        if (keyBytes == null) {
+            return ThreadLocalRandom.current().nextInt(partitions);
+        }
+        return partitionOf(keyBytes, partitions);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private UUID stripedOrderId(Object value) {
+        if (value instanceof ReserveProductCommand command
+                && stripedProducts.contains(command.getLineItems().get(0).getProductId())) {
+            return command.getOrderId();
+        }
+        if (value instanceof CancelProductReservationCommand command
+                && stripedProducts.contains(command.getLineItems().get(0).getProductId())) {
+            return command.getOrderId();
+        }
+        if (value instanceof ConfirmProductReservationCommand command
+                && stripedProducts.contains(command.getLineItems().get(0).getProductId())) {
+            return command.getOrderId();
+        }
+        return null;
+    }
+
+    private static int partitionOf(byte[] bytes, int partitions) {
+        return Utils.toPositive(Utils.murmur2(bytes)) % partitions;
+    }
+}
@@ -5,20 +5,16 @@ import jakarta.persistence.*;
 
 import java.util.UUID;
 
+// the id is assigned before the order is stored, so its stock can be reserved under it first
 @Table(name = "orders")
 @Entity
 public class OrderEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
     @Column(name = "status")
     private OrderStatus status;
     @Column(name = "customer_id")
     private UUID customerId;
-    @Column(name = "product_id")
-    private UUID productId;
-    @Column(name = "product_quantity")
-    private Integer productQuantity;
 
     public UUID getCustomerId() {
         return customerId;
@@ -43,20 +39,4 @@ public class OrderEntity {
     public void setId(UUID id) {
         this.id = id;
     }
-
-    public UUID getProductId() {
-        return productId;
-    }
-
-    public void setProductId(UUID productId) {
-        this.productId = productId;
-    }
-
-    public Integer getProductQuantity() {
-        return productQuantity;
-    }
-
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
-    }
 }
@@ -0,0 +1,84 @@
+package com.appsdeveloperblog.orders.dao.jpa.entity;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.UUID;
+
+@Table(name = "order_line_items")
+@Entity
+@IdClass(OrderLineItemEntity.Key.class)
+public class OrderLineItemEntity {
+    @Id
+    @Column(name = "order_id")
+    private UUID orderId;
+    @Id
+    @Column(name = "line_number")
+    private Integer lineNumber;
+    @Column(name = "product_id")
+    private UUID productId;
+    @Column(name = "product_quantity")
+    private Integer productQuantity;
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(UUID orderId) {
+        this.orderId = orderId;
+    }
+
+    public Integer getLineNumber() {
+        return lineNumber;
+    }
+
+    public void setLineNumber(Integer lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public Integer getProductQuantity() {
+        return productQuantity;
+    }
+
+    public void setProductQuantity(Integer productQuantity) {
+        this.productQuantity = productQuantity;
+    }
+
+    public static class Key implements Serializable {
+        private UUID orderId;
+        private Integer lineNumber;
+
+        public Key() {
+        }
+
+        public Key(UUID orderId, Integer lineNumber) {
+            this.orderId = orderId;
+            this.lineNumber = lineNumber;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key key)) {
+                return false;
+            }
+            return Objects.equals(orderId, key.orderId) && Objects.equals(lineNumber, key.lineNumber);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(orderId, lineNumber);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.appsdeveloperblog.orders.dao.jpa.entity;
+
+import com.appsdeveloperblog.orders.saga.SagaStep;
+import jakarta.persistence.*;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+@Table(name = "order_sagas")
+@Entity
+public class OrderSagaEntity {
+    @Id
+    @Column(name = "order_id")
+    private UUID orderId;
+    @Column(name = "step")
+    private SagaStep step;
+    @Version
+    @Column(name = "version")
+    private Long version;
+    @Column(name = "updated_at")
+    private Timestamp updatedAt;
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(UUID orderId) {
+        this.orderId = orderId;
+    }
+
+    public SagaStep getStep() {
+        return step;
+    }
+
+    public void setStep(SagaStep step) {
+        this.step = step;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Timestamp getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Timestamp updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
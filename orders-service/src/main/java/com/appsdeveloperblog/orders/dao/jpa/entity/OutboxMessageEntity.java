@@ -0,0 +1,82 @@
+package com.appsdeveloperblog.orders.dao.jpa.entity;
+
+import jakarta.persistence.*;
+
+import java.sql.Timestamp;
+
+@Table(name = "outbox_messages")
+@Entity
+public class OutboxMessageEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+    @Column(name = "topic")
+    private String topic;
+    @Column(name = "message_key")
+    private String messageKey;
+    @Column(name = "payload_type")
+    private String payloadType;
+    @Lob
+    @Column(name = "payload")
+    private String payload;
+    @Column(name = "created_at")
+    private Timestamp createdAt;
+    @Column(name = "saga_origin_at")
+    private Timestamp sagaOriginAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    public void setMessageKey(String messageKey) {
+        this.messageKey = messageKey;
+    }
+
+    public String getPayloadType() {
+        return payloadType;
+    }
+
+    public void setPayloadType(String payloadType) {
+        this.payloadType = payloadType;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Timestamp createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Timestamp getSagaOriginAt() {
+        return sagaOriginAt;
+    }
+
+    public void setSagaOriginAt(Timestamp sagaOriginAt) {
+        this.sagaOriginAt = sagaOriginAt;
+    }
+}
@@ -0,0 +1,19 @@
+package com.appsdeveloperblog.orders.dao.jpa.entity;
+
+import jakarta.persistence.*;
+
+// the single row the outbox relays of all instances take turns locking
+@Table(name = "outbox_relay_locks")
+@Entity
+public class OutboxRelayLockEntity {
+    @Id
+    private Integer id;
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,13 @@
+package com.appsdeveloperblog.orders.dao.jpa.repository;
+
+import com.appsdeveloperblog.orders.dao.jpa.entity.OrderLineItemEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface OrderLineItemRepository extends JpaRepository<OrderLineItemEntity, OrderLineItemEntity.Key> {
+    List<OrderLineItemEntity> findByOrderIdOrderByLineNumber(UUID orderId);
+}
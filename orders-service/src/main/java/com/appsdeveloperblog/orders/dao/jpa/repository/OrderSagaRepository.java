@@ -0,0 +1,46 @@
+package com.appsdeveloperblog.orders.dao.jpa.repository;
+
+import com.appsdeveloperblog.orders.dao.jpa.entity.OrderSagaEntity;
+import com.appsdeveloperblog.orders.saga.SagaStep;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface OrderSagaRepository extends JpaRepository<OrderSagaEntity, UUID> {
+
+    Slice<OrderSagaEntity> findByStepIn(Collection<SagaStep> steps, Pageable pageable);
+
+    /**
+     * Reads the saga and locks its row until the surrounding transaction ends, so a concurrent
+     * {@link #advance} waits for it.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from OrderSagaEntity s where s.orderId = :orderId")
+    Optional<OrderSagaEntity> findForUpdate(@Param("orderId") UUID orderId);
+
+    /**
+     * Moves the saga to the next step only if nobody else advanced it since {@code version} was read.
+     * @return number of updated rows, 0 when the version no longer matches
+     */
+    @Modifying
+    @Transactional
+    @Query("update OrderSagaEntity s set s.step = :step, s.version = s.version + 1, s.updatedAt = :updatedAt " +
+            "where s.orderId = :orderId and s.version = :version")
+    int advance(@Param("orderId") UUID orderId,
+                @Param("step") SagaStep step,
+                @Param("version") long version,
+                @Param("updatedAt") Timestamp updatedAt);
+}
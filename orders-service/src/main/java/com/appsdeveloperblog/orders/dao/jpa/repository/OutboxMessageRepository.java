@@ -0,0 +1,13 @@
+package com.appsdeveloperblog.orders.dao.jpa.repository;
+
+import com.appsdeveloperblog.orders.dao.jpa.entity.OutboxMessageEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessageEntity, Long> {
+    List<OutboxMessageEntity> findByOrderByIdAsc(Pageable pageable);
+}
@@ -0,0 +1,19 @@
+package com.appsdeveloperblog.orders.dao.jpa.repository;
+
+import com.appsdeveloperblog.orders.dao.jpa.entity.OutboxRelayLockEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxRelayLockRepository extends JpaRepository<OutboxRelayLockEntity, Integer> {
+    /**
+     * Locks the row until the surrounding transaction ends, unless another transaction holds it.
+     * @return the id when the row was locked, empty when it is held elsewhere or does not exist
+     */
+    @Query(value = "select id from outbox_relay_locks where id = :id for update skip locked", nativeQuery = true)
+    List<Integer> tryLock(@Param("id") int id);
+}
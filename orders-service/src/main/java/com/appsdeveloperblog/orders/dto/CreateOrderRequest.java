@@ -1,30 +1,34 @@
 package com.appsdeveloperblog.orders.dto;
 
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
-import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
 
+import java.util.List;
 import java.util.UUID;
 
 public class CreateOrderRequest {
+    // every saga message of the order lists all of its line items
+    public static final int MAX_LINE_ITEMS = 100;
+
     @NotNull
     private UUID customerId;
-    @NotNull
-    private UUID productId;
-    @NotNull
-    @Positive
-    private Integer productQuantity;
+    @NotEmpty
+    @Size(max = MAX_LINE_ITEMS)
+    private List<@Valid @NotNull OrderLineItem> lineItems;
 
     public CreateOrderRequest() {
     }
 
-    public CreateOrderRequest(UUID customerId, UUID productId, Integer productQuantity) {
+    public CreateOrderRequest(UUID customerId, List<OrderLineItem> lineItems) {
         this.customerId = customerId;
-        this.productId = productId;
-        this.productQuantity = productQuantity;
+        this.lineItems = lineItems;
     }
 
-    public UUID getProductId() {
-        return productId;
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
     }
 
     public UUID getCustomerId() {
@@ -35,15 +39,7 @@ public class CreateOrderRequest {
         this.customerId = customerId;
     }
 
-    public void setProductId(UUID productId) {
-        this.productId = productId;
-    }
-
-    public Integer getProductQuantity() {
-        return productQuantity;
-    }
-
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
     }
 }
@@ -1,24 +1,24 @@
 package com.appsdeveloperblog.orders.dto;
 
+import com.appsdeveloperblog.core.dto.OrderLineItem;
 import com.appsdeveloperblog.core.types.OrderStatus;
 
+import java.util.List;
 import java.util.UUID;
 
 public class CreateOrderResponse {
     private UUID orderId;
     private UUID customerId;
-    private UUID productId;
-    private Integer productQuantity;
+    private List<OrderLineItem> lineItems;
     private OrderStatus status;
 
     public CreateOrderResponse() {
     }
 
-    public CreateOrderResponse(UUID orderId, UUID customerId, UUID productId, Integer productQuantity, OrderStatus status) {
+    public CreateOrderResponse(UUID orderId, UUID customerId, List<OrderLineItem> lineItems, OrderStatus status) {
         this.orderId = orderId;
         this.customerId = customerId;
-        this.productId = productId;
-        this.productQuantity = productQuantity;
+        this.lineItems = lineItems;
         this.status = status;
     }
 
@@ -38,16 +38,8 @@ public class CreateOrderResponse {
         this.customerId = customerId;
     }
 
-    public void setProductId(UUID productId) {
-        this.productId = productId;
-    }
-
-    public Integer getProductQuantity() {
-        return productQuantity;
-    }
-
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
+    public void setLineItems(List<OrderLineItem> lineItems) {
+        this.lineItems = lineItems;
     }
 
     public OrderStatus getStatus() {
@@ -58,7 +50,7 @@ public class CreateOrderResponse {
         this.status = status;
     }
 
-    public UUID getProductId() {
-        return productId;
+    public List<OrderLineItem> getLineItems() {
+        return lineItems;
     }
 }
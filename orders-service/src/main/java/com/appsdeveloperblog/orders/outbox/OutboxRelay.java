@@ -0,0 +1,136 @@
+package com.appsdeveloperblog.orders.outbox;
+
+import com.appsdeveloperblog.core.metrics.SagaTiming;
+import com.appsdeveloperblog.orders.dao.jpa.entity.OutboxMessageEntity;
+import com.appsdeveloperblog.orders.dao.jpa.entity.OutboxRelayLockEntity;
+import com.appsdeveloperblog.orders.dao.jpa.repository.OutboxMessageRepository;
+import com.appsdeveloperblog.orders.dao.jpa.repository.OutboxRelayLockRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publishes rows of the outbox table in id order. A whole batch is handed to the producer,
+ * the relay waits until the broker acknowledged all of it and only then deletes the rows,
+ * so a crash in between results in a redelivery rather than a lost message.
+ * <p>
+ * Every instance runs the relay, but each batch is relayed while holding the lock on the single row of
+ * outbox_relay_locks and a relay that finds it taken skips its turn. So only one instance publishes at a time,
+ * a row is not sent once by every instance, and the id order holds across instances.
+ */
+@Component
+public class OutboxRelay {
+    private final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+    private static final int LOCK_ID = 1;
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final OutboxRelayLockRepository outboxRelayLockRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private boolean lockCreated;
+
+    public OutboxRelay(OutboxMessageRepository outboxMessageRepository,
+                       OutboxRelayLockRepository outboxRelayLockRepository,
+                       TransactionTemplate transactionTemplate,
+                       KafkaTemplate<String, Object> kafkaTemplate,
+                       ObjectMapper objectMapper,
+                       @Value("${orders.outbox.relay.batch-size}") int batchSize) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.outboxRelayLockRepository = outboxRelayLockRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${orders.outbox.relay.interval-ms}")
+    public void relay() {
+        createLock();
+        while (Boolean.TRUE.equals(transactionTemplate.execute(status -> relayBatch()))) {
+            // a full batch, there may be more
+        }
+    }
+
+    /**
+     * @return whether a full batch was relayed
+     */
+    private boolean relayBatch() {
+        if (outboxRelayLockRepository.tryLock(LOCK_ID).isEmpty()) {
+            return false;
+        }
+        List<OutboxMessageEntity> messages = outboxMessageRepository.findByOrderByIdAsc(PageRequest.of(0, batchSize));
+        if (messages.isEmpty()) {
+            return false;
+        }
+        if (kafkaTemplate.isTransactional()) {
+            // with a transactional producer the whole batch becomes visible to consumers at once
+            kafkaTemplate.executeInTransaction(operations -> send(operations, messages));
+        } else {
+            send(kafkaTemplate, messages);
+        }
+        outboxMessageRepository.deleteAllInBatch(messages);
+        logger.info("Relayed {} outbox messages", messages.size());
+        return messages.size() == batchSize;
+    }
+
+    private void createLock() {
+        if (lockCreated) {
+            return;
+        }
+        if (!outboxRelayLockRepository.existsById(LOCK_ID)) {
+            OutboxRelayLockEntity lock = new OutboxRelayLockEntity();
+            lock.setId(LOCK_ID);
+            try {
+                outboxRelayLockRepository.save(lock);
+            } catch (DataIntegrityViolationException e) {
+                // another instance created it first
+            }
+        }
+        lockCreated = true;
+    }
+
+    private Void send(KafkaOperations<String, Object> operations, List<OutboxMessageEntity> messages) {
+        List<CompletableFuture<?>> sends = new ArrayList<>(messages.size());
+        for (OutboxMessageEntity message : messages) {
+            var record = new ProducerRecord<String, Object>(message.getTopic(), message.getMessageKey(),
+                    payloadOf(message));
+            SagaTiming.writeTimestamp(record.headers(), SagaTiming.ORIGIN_HEADER, sagaOriginOf(message));
+            sends.add(operations.send(record));
+        }
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).join();
+        return null;
+    }
+
+    /**
+     * Messages written while handling a saga record keep that saga's origin, a new order's saga starts
+     * when its row was written rather than when the relay got to it.
+     */
+    private static long sagaOriginOf(OutboxMessageEntity message) {
+        Timestamp origin = message.getSagaOriginAt() != null ? message.getSagaOriginAt() : message.getCreatedAt();
+        return origin.getTime();
+    }
+
+    private Object payloadOf(OutboxMessageEntity message) {
+        try {
+            return objectMapper.readValue(message.getPayload(), Class.forName(message.getPayloadType()));
+        } catch (JsonProcessingException | ClassNotFoundException e) {
+            throw new IllegalStateException("Cannot read outbox message " + message.getId(), e);
+        }
+    }
+}
@@ -1,19 +1,39 @@
 package com.appsdeveloperblog.orders.saga;
 
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.SagaMessage;
 import com.appsdeveloperblog.core.dto.commands.*;
 import com.appsdeveloperblog.core.dto.events.*;
 import com.appsdeveloperblog.core.types.OrderStatus;
 import com.appsdeveloperblog.orders.service.OrderHistoryService;
+import com.appsdeveloperblog.orders.service.OrderService;
+import com.appsdeveloperblog.orders.service.SagaInstanceService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaHandler;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Every handler checks that its step applies, sends the step's command and waits for the broker to accept it,
+ * and only then stores the step. A failed send fails the record, which is delivered again with the saga still in
+ * its previous step; a crash between the send and the stored step sends the command once more, which its
+ * consumers already treat as a duplicate.
+ * <p>
+ * A deadline of {@link SagaTimeoutHandler} can store its compensating step between the check and the store. The
+ * handler's step is then not stored and what its command started is undone: a payment asked for a timed out
+ * order is refunded once it comes in and the reservation is cancelled, an order approved after its payment was
+ * given up is refunded and rejected by the saga's next step.
+ */
 @Component
+@ConditionalOnProperty(name = "orders.saga.batch.enabled", havingValue = "false", matchIfMissing = true)
 @KafkaListener(topics={"${orders.event.topic.name}",
         "${products.events.topic.name}",
         "${payments.events.topic.name}"}
@@ -25,34 +45,72 @@ private final Logger logger = LoggerFactory.getLogger(OrderSaga.class);
     private final OrderHistoryService orderHistoryService;
     private final String paymentsCommandTopicName;
     private final String ordersCommandsTopicName;
+    private final SagaInstanceService sagaInstanceService;
+    private final OrderService orderService;
 
     public OrderSaga(KafkaTemplate<String, Object> kafkaTemplate,
                      @Value("${products.command.topic.name}") String productCommandTopicName,
                      OrderHistoryService orderHistoryService,
                      @Value("${payments.commands.topic.name}") String paymentsCommandTopicName,
-                     @Value("${orders.commands.topic.name}") String ordersCommandsTopicName) {
+                     @Value("${orders.commands.topic.name}") String ordersCommandsTopicName,
+                     SagaInstanceService sagaInstanceService,
+                     OrderService orderService) {
         this.kafkaTemplate = kafkaTemplate;
         this.productCommandTopicName = productCommandTopicName;
         this.orderHistoryService = orderHistoryService;
         this.paymentsCommandTopicName = paymentsCommandTopicName;
         this.ordersCommandsTopicName = ordersCommandsTopicName;
+        this.sagaInstanceService = sagaInstanceService;
+        this.orderService = orderService;
     }
 
     @KafkaHandler
     public void handleEvent(@Payload OrderCreatedEvent event) {
         // Handle create order command
         logger.info("**** Received OrderCreatedEvent for order id: " + event.getOrderId());
+        if (sagaInstanceService.currentStep(event.getOrderId()) != null) {
+            logger.info("Saga for order {} is already started", event.getOrderId());
+            return;
+        }
         ReserveProductCommand command = new ReserveProductCommand(
-            event.getProductId(),
-            event.getProductQuantity(),
+            event.getLineItems(),
             event.getOrderId()
         );
 
-        kafkaTemplate.send(productCommandTopicName, command);
-        orderHistoryService.add(event.getOrderId(), OrderStatus.CREATED);
+        send(productCommandTopicName, command);
+        if (sagaInstanceService.start(event.getOrderId())) {
+            orderHistoryService.add(event.getOrderId(), OrderStatus.CREATED);
+        }
         logger.info("**** Sent ReserveProductCommand for order id: " + event.getOrderId());
     }
 
+    /**
+     * The order's stock was reserved while it was placed, the saga goes straight on to the payment. A saga
+     * that was started before a redelivery still gets its reservation step.
+     */
+    @KafkaHandler
+    public void handleEvent(@Payload OrderReservedEvent event) {
+        logger.info("**** Received OrderReservedEvent for order id: " + event.getOrderId());
+        SagaStep current = sagaInstanceService.currentStep(event.getOrderId());
+        if (current != null && !current.canTransitionTo(SagaStep.PRODUCT_RESERVED)) {
+            cancelLateReservation(event.getOrderId(), event.getLineItems());
+            return;
+        }
+        ProcessPaymentCommand command = new ProcessPaymentCommand(
+            event.getOrderId(),
+            event.getLineItems()
+        );
+        send(paymentsCommandTopicName, command);
+        if (current == null && sagaInstanceService.start(event.getOrderId())) {
+            orderHistoryService.add(event.getOrderId(), OrderStatus.CREATED);
+        }
+        if (!sagaInstanceService.advance(event.getOrderId(), SagaStep.PRODUCT_RESERVED)) {
+            cancelLateReservation(event.getOrderId(), event.getLineItems());
+            return;
+        }
+        logger.info("**** Sent ProcessPaymentCommand for order id: " + event.getOrderId());
+    }
+
     /**
      * Saga is requesting for payment to be processed and since this command has to do with payments,
      * let's make payments microservice handle it and to process it.
@@ -63,13 +121,19 @@ private final Logger logger = LoggerFactory.getLogger(OrderSaga.class);
     public void handleEvent(@Payload ProductReservedEvent event) {
         // Handle product reserved event
         logger.info("**** Received ProductReservedEvent for order id: " + event.getOrderId());
+        if (!sagaInstanceService.canAdvance(event.getOrderId(), SagaStep.PRODUCT_RESERVED)) {
+            cancelLateReservation(event.getOrderId(), event.getLineItems());
+            return;
+        }
         ProcessPaymentCommand command = new ProcessPaymentCommand(
             event.getOrderId(),
-            event.getProductId(),
-            event.getProductPrice(),
-            event.getProductQuantity()
+            event.getLineItems()
         );
-        kafkaTemplate.send(paymentsCommandTopicName, command);
+        send(paymentsCommandTopicName, command);
+        if (!sagaInstanceService.advance(event.getOrderId(), SagaStep.PRODUCT_RESERVED)) {
+            cancelLateReservation(event.getOrderId(), event.getLineItems());
+            return;
+        }
         logger.info("**** Sent ProcessPaymentCommand for order id: " + event.getOrderId());
 
     }
@@ -91,13 +155,21 @@ private final Logger logger = LoggerFactory.getLogger(OrderSaga.class);
     public void handleEvent(@Payload PaymentProcessedEvent event) {
         //default handler
         logger.info("**** Received PaymentProcessedEvent for order id: " + event.getOrderId());
+        if (!sagaInstanceService.canAdvance(event.getOrderId(), SagaStep.PAYMENT_PROCESSED)) {
+            refundLatePayment(event.getOrderId());
+            return;
+        }
         ApprovedOrderCommand  approvedOrderCommand = new ApprovedOrderCommand(event.getOrderId());
-        kafkaTemplate.send(ordersCommandsTopicName, approvedOrderCommand);
+        send(ordersCommandsTopicName, approvedOrderCommand);
+        if (!sagaInstanceService.advance(event.getOrderId(), SagaStep.PAYMENT_PROCESSED)) {
+            refundLatePayment(event.getOrderId());
+            return;
+        }
         logger.info("**** Sent ApprovedOrderCommand for order id: " + event.getOrderId());
     }
 
     /**
-     * end of saga happy path, order is approved
+     * end of saga happy path, order is approved and the stock held for it is confirmed
      * @param event
      */
 
@@ -105,27 +177,76 @@ private final Logger logger = LoggerFactory.getLogger(OrderSaga.class);
     public void handleEvent(@Payload OrderApprovedEvent event) {
         // simple save order status, since end of the flow
         logger.info("**** Received OrderApprovedEvent for order id: " + event.getOrderId());
-        orderHistoryService.add(event.getOrderId(), OrderStatus.APPROVED);
+        if (!sagaInstanceService.canAdvance(event.getOrderId(), SagaStep.APPROVED)) {
+            return;
+        }
+        ConfirmProductReservationCommand command = new ConfirmProductReservationCommand(
+                orderService.findById(event.getOrderId()).getLineItems(),
+                event.getOrderId());
+        send(productCommandTopicName, command);
+        if (sagaInstanceService.advance(event.getOrderId(), SagaStep.APPROVED)) {
+            orderHistoryService.add(event.getOrderId(), OrderStatus.APPROVED);
+        }
         logger.info("**** Order saga completed for order id: " + event.getOrderId());
     }
 
+    @KafkaHandler
+    public void handleEvent(@Payload ProductReservationFailedEvent event) {
+        logger.info("**** Received ProductReservationFailedEvent event: " + event);
+        reject(event.getOrderId());
+    }
+
     @KafkaHandler
     public void handleEvent(@Payload PaymentsFailedEvent event) {
         //default handler
         logger.info("**** Received PaymentsFailedEvent event: " + event);
+        if (!sagaInstanceService.canAdvance(event.getOrderId(), SagaStep.PAYMENT_FAILED)) {
+            return;
+        }
         CancelProductReservationCommand command = new CancelProductReservationCommand(
-                event.getProductId(),
-                event.getOrderId(),
-                event.getProductQuantity());
-        kafkaTemplate.send(productCommandTopicName, command);
+                event.getLineItems(),
+                event.getOrderId());
+        send(productCommandTopicName, command);
+        sagaInstanceService.advance(event.getOrderId(), SagaStep.PAYMENT_FAILED);
     }
 
     @KafkaHandler
     public void handleEvent(@Payload ProductReservationCancelledEvent event) {
         //default handler
         logger.info("**** Received ProductReservationCancelledEvent event: " + event);
-        RejectOrderCommand rejectOrderCommand = new RejectOrderCommand(event.getOrderId());
-        kafkaTemplate.send(ordersCommandsTopicName, rejectOrderCommand);
-        orderHistoryService.add(event.getOrderId(), OrderStatus.REJECTED);
+        reject(event.getOrderId());
+    }
+
+    private void reject(UUID orderId) {
+        if (!sagaInstanceService.canAdvance(orderId, SagaStep.REJECTED)) {
+            return;
+        }
+        RejectOrderCommand rejectOrderCommand = new RejectOrderCommand(orderId);
+        send(ordersCommandsTopicName, rejectOrderCommand);
+        if (sagaInstanceService.advance(orderId, SagaStep.REJECTED)) {
+            orderHistoryService.add(orderId, OrderStatus.REJECTED);
+        }
+    }
+
+    // the order was already rejected by its deadline, give the stock back
+    private void cancelLateReservation(UUID orderId, List<OrderLineItem> lineItems) {
+        if (!sagaInstanceService.canAdvance(orderId, SagaStep.EXPIRED)) {
+            return;
+        }
+        CancelProductReservationCommand command = new CancelProductReservationCommand(lineItems, orderId);
+        send(productCommandTopicName, command);
+        sagaInstanceService.advance(orderId, SagaStep.EXPIRED);
+        logger.info("**** Sent CancelProductReservationCommand for late reservation of order id: " + orderId);
+    }
+
+    private void refundLatePayment(UUID orderId) {
+        if (SagaStep.isPaymentAbandoned(sagaInstanceService.currentStep(orderId))) {
+            send(paymentsCommandTopicName, new RefundPaymentCommand(orderId));
+            logger.info("**** Sent RefundPaymentCommand for late payment of order id: " + orderId);
+        }
+    }
+
+    private void send(String topic, SagaMessage command) {
+        kafkaTemplate.send(topic, command.key(), command).join();
     }
 }
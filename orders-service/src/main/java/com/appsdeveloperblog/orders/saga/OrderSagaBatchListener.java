@@ -0,0 +1,221 @@
+package com.appsdeveloperblog.orders.saga;
+
+import com.appsdeveloperblog.core.dto.SagaMessage;
+import com.appsdeveloperblog.core.dto.commands.*;
+import com.appsdeveloperblog.core.dto.events.*;
+import com.appsdeveloperblog.core.types.OrderStatus;
+import com.appsdeveloperblog.orders.dto.OrderHistory;
+import com.appsdeveloperblog.orders.service.OrderHistoryService;
+import com.appsdeveloperblog.orders.service.OrderService;
+import com.appsdeveloperblog.orders.service.SagaInstanceService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Batch variant of {@link OrderSaga}, enabled with {@code orders.saga.batch.enabled=true}.
+ * All records returned by one poll are run through the saga, the resulting history rows are
+ * written with a single saveAll and the outgoing commands are sent together. The sagas' new steps
+ * are only stored, and the batch acknowledged, once every command has been accepted by the broker;
+ * a failed send fails the whole batch with its sagas still in their previous steps. A step that a deadline
+ * overtook while the commands were sent is compensated like in {@link OrderSaga}.
+ */
+@Component
+@ConditionalOnProperty(name = "orders.saga.batch.enabled", havingValue = "true")
+public class OrderSagaBatchListener {
+    private final Logger logger = LoggerFactory.getLogger(OrderSagaBatchListener.class);
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final OrderHistoryService orderHistoryService;
+    private final SagaInstanceService sagaInstanceService;
+    private final OrderService orderService;
+    private final String productCommandTopicName;
+    private final String paymentsCommandTopicName;
+    private final String ordersCommandsTopicName;
+
+    public OrderSagaBatchListener(KafkaTemplate<String, Object> kafkaTemplate,
+                                  OrderHistoryService orderHistoryService,
+                                  SagaInstanceService sagaInstanceService,
+                                  OrderService orderService,
+                                  @Value("${products.command.topic.name}") String productCommandTopicName,
+                                  @Value("${payments.commands.topic.name}") String paymentsCommandTopicName,
+                                  @Value("${orders.commands.topic.name}") String ordersCommandsTopicName) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.orderHistoryService = orderHistoryService;
+        this.sagaInstanceService = sagaInstanceService;
+        this.orderService = orderService;
+        this.productCommandTopicName = productCommandTopicName;
+        this.paymentsCommandTopicName = paymentsCommandTopicName;
+        this.ordersCommandsTopicName = ordersCommandsTopicName;
+    }
+
+    @KafkaListener(topics = {"${orders.event.topic.name}",
+            "${products.events.topic.name}",
+            "${payments.events.topic.name}"},
+            containerFactory = "batchKafkaListenerContainerFactory",
+            properties = "max.poll.records=${orders.saga.batch.max-poll-records}")
+    public void handleEvents(List<ConsumerRecord<String, Object>> records) {
+        SagaSteps steps = new SagaSteps();
+        List<CompletableFuture<?>> sends = new ArrayList<>();
+
+        for (ConsumerRecord<String, Object> record : records) {
+            Object event = record.value();
+            if (event instanceof OrderCreatedEvent created) {
+                if (steps.start(created.getOrderId())) {
+                    sends.add(send(productCommandTopicName, new ReserveProductCommand(
+                            created.getLineItems(),
+                            created.getOrderId())));
+                }
+            } else if (event instanceof OrderReservedEvent reservedOrder) {
+                steps.start(reservedOrder.getOrderId());
+                if (steps.advance(reservedOrder.getOrderId(), SagaStep.PRODUCT_RESERVED, null)) {
+                    sends.add(send(paymentsCommandTopicName, new ProcessPaymentCommand(
+                            reservedOrder.getOrderId(),
+                            reservedOrder.getLineItems())));
+                } else if (steps.advance(reservedOrder.getOrderId(), SagaStep.EXPIRED, null)) {
+                    sends.add(send(productCommandTopicName, new CancelProductReservationCommand(
+                            reservedOrder.getLineItems(),
+                            reservedOrder.getOrderId())));
+                }
+            } else if (event instanceof ProductReservedEvent reserved) {
+                if (steps.advance(reserved.getOrderId(), SagaStep.PRODUCT_RESERVED, null)) {
+                    sends.add(send(paymentsCommandTopicName, new ProcessPaymentCommand(
+                            reserved.getOrderId(),
+                            reserved.getLineItems())));
+                } else if (steps.advance(reserved.getOrderId(), SagaStep.EXPIRED, null)) {
+                    sends.add(send(productCommandTopicName, new CancelProductReservationCommand(
+                            reserved.getLineItems(),
+                            reserved.getOrderId())));
+                }
+            } else if (event instanceof ProductReservationFailedEvent reservationFailed) {
+                if (steps.advance(reservationFailed.getOrderId(), SagaStep.REJECTED, OrderStatus.REJECTED)) {
+                    sends.add(send(ordersCommandsTopicName, new RejectOrderCommand(reservationFailed.getOrderId())));
+                }
+            } else if (event instanceof PaymentProcessedEvent processed) {
+                if (steps.advance(processed.getOrderId(), SagaStep.PAYMENT_PROCESSED, null)) {
+                    sends.add(send(ordersCommandsTopicName, new ApprovedOrderCommand(processed.getOrderId())));
+                } else if (SagaStep.isPaymentAbandoned(steps.stepOf(processed.getOrderId()))) {
+                    sends.add(send(paymentsCommandTopicName, new RefundPaymentCommand(processed.getOrderId())));
+                }
+            } else if (event instanceof OrderApprovedEvent approved) {
+                if (steps.advance(approved.getOrderId(), SagaStep.APPROVED, OrderStatus.APPROVED)) {
+                    sends.add(send(productCommandTopicName, new ConfirmProductReservationCommand(
+                            orderService.findById(approved.getOrderId()).getLineItems(),
+                            approved.getOrderId())));
+                }
+            } else if (event instanceof PaymentsFailedEvent failed) {
+                if (steps.advance(failed.getOrderId(), SagaStep.PAYMENT_FAILED, null)) {
+                    sends.add(send(productCommandTopicName, new CancelProductReservationCommand(
+                            failed.getLineItems(),
+                            failed.getOrderId())));
+                }
+            } else if (event instanceof ProductReservationCancelledEvent cancelled) {
+                if (steps.advance(cancelled.getOrderId(), SagaStep.REJECTED, OrderStatus.REJECTED)) {
+                    sends.add(send(ordersCommandsTopicName, new RejectOrderCommand(cancelled.getOrderId())));
+                }
+            } else {
+                logger.warn("**** Ignoring unsupported event {} from {}", event, record.topic());
+            }
+        }
+
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).join();
+        List<CompletableFuture<?>> compensations = new ArrayList<>();
+        List<OrderHistory> history = steps.apply(compensations);
+        CompletableFuture.allOf(compensations.toArray(new CompletableFuture[0])).join();
+        if (!history.isEmpty()) {
+            orderHistoryService.addAll(history);
+        }
+        logger.info("**** Processed batch of {} events, sent {} commands", records.size(), sends.size());
+    }
+
+    private CompletableFuture<?> send(String topic, SagaMessage command) {
+        return kafkaTemplate.send(topic, command.key(), command);
+    }
+
+    private static OrderHistory historyOf(UUID orderId, OrderStatus status) {
+        OrderHistory orderHistory = new OrderHistory();
+        orderHistory.setOrderId(orderId);
+        orderHistory.setStatus(status);
+        orderHistory.setCreatedAt(new Timestamp(System.currentTimeMillis()));
+        return orderHistory;
+    }
+
+    /**
+     * The steps a batch moves its sagas to. Each step is checked against the step the saga reaches with the
+     * batch's earlier events, but only stored by {@link #apply()} once the batch's commands were sent.
+     */
+    private final class SagaSteps {
+        private final Map<UUID, SagaStep> reached = new HashMap<>();
+        private final List<Transition> transitions = new ArrayList<>();
+
+        boolean start(UUID orderId) {
+            if (stepOf(orderId) != null) {
+                return false;
+            }
+            reached.put(orderId, SagaStep.ORDER_CREATED);
+            transitions.add(new Transition(orderId, SagaStep.ORDER_CREATED, OrderStatus.CREATED));
+            return true;
+        }
+
+        boolean advance(UUID orderId, SagaStep next, OrderStatus status) {
+            SagaStep current = stepOf(orderId);
+            if (current == null || !current.canTransitionTo(next)) {
+                return false;
+            }
+            reached.put(orderId, next);
+            transitions.add(new Transition(orderId, next, status));
+            return true;
+        }
+
+        List<OrderHistory> apply(List<CompletableFuture<?>> compensations) {
+            List<OrderHistory> history = new ArrayList<>();
+            for (Transition transition : transitions) {
+                boolean applied = transition.step() == SagaStep.ORDER_CREATED
+                        ? sagaInstanceService.start(transition.orderId())
+                        : sagaInstanceService.advance(transition.orderId(), transition.step());
+                if (applied && transition.status() != null) {
+                    history.add(historyOf(transition.orderId(), transition.status()));
+                }
+                if (!applied) {
+                    compensate(transition, compensations);
+                }
+            }
+            return history;
+        }
+
+        // the payment command went out but a deadline gave the order up first
+        private void compensate(Transition transition, List<CompletableFuture<?>> compensations) {
+            UUID orderId = transition.orderId();
+            if (transition.step() == SagaStep.PRODUCT_RESERVED
+                    && sagaInstanceService.canAdvance(orderId, SagaStep.EXPIRED)) {
+                send(productCommandTopicName, new CancelProductReservationCommand(
+                        orderService.findById(orderId).getLineItems(),
+                        orderId)).join();
+                sagaInstanceService.advance(orderId, SagaStep.EXPIRED);
+            } else if (transition.step() == SagaStep.PAYMENT_PROCESSED
+                    && SagaStep.isPaymentAbandoned(sagaInstanceService.currentStep(orderId))) {
+                compensations.add(send(paymentsCommandTopicName, new RefundPaymentCommand(orderId)));
+            }
+        }
+
+        private SagaStep stepOf(UUID orderId) {
+            SagaStep step = reached.get(orderId);
+            return step != null ? step : sagaInstanceService.currentStep(orderId);
+        }
+    }
+
+    private record Transition(UUID orderId, SagaStep step, OrderStatus status) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.appsdeveloperblog.orders.saga;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * One deadline per in-flight saga: the time by which it has to leave its current step. Moving a saga to
+ * another step replaces its deadline, reaching a terminal step removes it. Expired deadlines are collected
+ * by {@link SagaTimeoutHandler}.
+ */
+@Component
+public class SagaDeadlines {
+    private final long timeoutMs;
+    private final TimingWheel<SagaDeadline> timingWheel;
+    private final Map<UUID, TimingWheel.Timer<SagaDeadline>> timers = new HashMap<>();
+
+    public SagaDeadlines(@Value("${orders.saga.deadline.timeout-ms}") long timeoutMs,
+                         @Value("${orders.saga.deadline.tick-ms}") long tickMs,
+                         @Value("${orders.saga.deadline.wheel-size}") int wheelSize) {
+        this.timeoutMs = timeoutMs;
+        this.timingWheel = new TimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+    }
+
+    public void schedule(UUID orderId, SagaStep step) {
+        schedule(orderId, step, System.currentTimeMillis());
+    }
+
+    /**
+     * @param enteredAt when the saga entered {@code step}, the deadline is {@code orders.saga.deadline.timeout-ms} later
+     */
+    public synchronized void schedule(UUID orderId, SagaStep step, long enteredAt) {
+        if (step.isTerminal()) {
+            cancel(orderId);
+            return;
+        }
+        TimingWheel.Timer<SagaDeadline> previous = timers.put(orderId,
+                timingWheel.schedule(enteredAt + timeoutMs, new SagaDeadline(orderId, step)));
+        if (previous != null) {
+            timingWheel.cancel(previous);
+        }
+    }
+
+    public synchronized void cancel(UUID orderId) {
+        TimingWheel.Timer<SagaDeadline> timer = timers.remove(orderId);
+        if (timer != null) {
+            timingWheel.cancel(timer);
+        }
+    }
+
+    synchronized List<SagaDeadline> expire(long nowMs) {
+        List<SagaDeadline> expired = timingWheel.advance(nowMs);
+        for (SagaDeadline deadline : expired) {
+            timers.remove(deadline.orderId());
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return timingWheel.size();
+    }
+
+    record SagaDeadline(UUID orderId, SagaStep step) {
+    }
+}
@@ -0,0 +1,40 @@
+package com.appsdeveloperblog.orders.saga;
+
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of a saga as it is kept in the active-saga cache.
+ * The version mirrors the persisted row and is used for the conditional update.
+ */
+public final class SagaInstance {
+    private final UUID orderId;
+    private final SagaStep step;
+    private final long version;
+
+    public SagaInstance(UUID orderId, SagaStep step, long version) {
+        this.orderId = orderId;
+        this.step = step;
+        this.version = version;
+    }
+
+    public SagaInstance advance(SagaStep next) {
+        return new SagaInstance(orderId, next, version + 1);
+    }
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public SagaStep getStep() {
+        return step;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "SagaInstance{orderId=" + orderId + ", step=" + step + ", version=" + version + "}";
+    }
+}
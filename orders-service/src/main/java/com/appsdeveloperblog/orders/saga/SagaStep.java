@@ -0,0 +1,56 @@
+package com.appsdeveloperblog.orders.saga;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Steps an order saga goes through. The transition table lists, for every step,
+ * the steps the saga is allowed to move to next; anything else is either a
+ * duplicate delivery or an event that arrived after the saga already moved on.
+ */
+public enum SagaStep {
+    ORDER_CREATED,
+    PRODUCT_RESERVED,
+    PAYMENT_PROCESSED,
+    PAYMENT_FAILED,
+    APPROVED,
+    REJECTED,
+    // no reservation came back in time and the order was rejected, a late one still has to be released;
+    // new steps go last since order_sagas.step stores the ordinal
+    TIMED_OUT,
+    EXPIRED;
+
+    private static final Map<SagaStep, Set<SagaStep>> TRANSITIONS = new EnumMap<>(SagaStep.class);
+
+    static {
+        TRANSITIONS.put(ORDER_CREATED, EnumSet.of(PRODUCT_RESERVED, REJECTED, TIMED_OUT));
+        TRANSITIONS.put(PRODUCT_RESERVED, EnumSet.of(PAYMENT_PROCESSED, PAYMENT_FAILED));
+        TRANSITIONS.put(PAYMENT_PROCESSED, EnumSet.of(APPROVED));
+        TRANSITIONS.put(PAYMENT_FAILED, EnumSet.of(REJECTED));
+        TRANSITIONS.put(APPROVED, EnumSet.noneOf(SagaStep.class));
+        TRANSITIONS.put(REJECTED, EnumSet.noneOf(SagaStep.class));
+        TRANSITIONS.put(TIMED_OUT, EnumSet.of(EXPIRED));
+        TRANSITIONS.put(EXPIRED, EnumSet.noneOf(SagaStep.class));
+    }
+
+    public boolean canTransitionTo(SagaStep next) {
+        return TRANSITIONS.get(this).contains(next);
+    }
+
+    public boolean isTerminal() {
+        return TRANSITIONS.get(this).isEmpty();
+    }
+
+    /**
+     * Whether a payment that arrives in this step was charged for an order that is already given up, see
+     * {@code SagaTimeoutHandler}. A saga gets to {@code PAYMENT_FAILED} or {@code REJECTED} with a payment
+     * command sent when its deadline passed while it waited for the payment, and to {@code TIMED_OUT} or
+     * {@code EXPIRED} when its deadline passed while the payment command was being sent; a failed reservation
+     * rejects the order before any payment is asked for.
+     */
+    public static boolean isPaymentAbandoned(SagaStep step) {
+        return step == PAYMENT_FAILED || step == REJECTED || step == TIMED_OUT || step == EXPIRED;
+    }
+}
@@ -0,0 +1,127 @@
+package com.appsdeveloperblog.orders.saga;
+
+import com.appsdeveloperblog.core.dto.Order;
+import com.appsdeveloperblog.core.dto.SagaMessage;
+import com.appsdeveloperblog.core.dto.commands.ApprovedOrderCommand;
+import com.appsdeveloperblog.core.dto.commands.CancelProductReservationCommand;
+import com.appsdeveloperblog.core.dto.commands.RejectOrderCommand;
+import com.appsdeveloperblog.core.types.OrderStatus;
+import com.appsdeveloperblog.orders.service.OrderHistoryService;
+import com.appsdeveloperblog.orders.service.OrderService;
+import com.appsdeveloperblog.orders.service.SagaInstanceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compensates sagas that stayed in one step past their deadline. Like the saga's handlers it sends the
+ * compensating command and waits for the broker to accept it before the step is stored, so a failed send leaves
+ * the saga in its step and the deadline fires again. Both happen under the saga's row lock: an event that arrives
+ * at the same time either was stored first and the timeout is dropped, or finds the compensating step when it
+ * stores its own and compensates in turn, see {@link OrderSaga}.
+ * <ul>
+ *     <li>ORDER_CREATED: the order is rejected and the saga waits for a late reservation to release it</li>
+ *     <li>PRODUCT_RESERVED: treated as a failed payment, the reservation is cancelled and the order rejected;
+ *     the payment command may still go through later, its {@code PaymentProcessedEvent} is then answered with a
+ *     {@code RefundPaymentCommand}</li>
+ *     <li>PAYMENT_PROCESSED: the payment went through, so the approval is sent again</li>
+ *     <li>PAYMENT_FAILED: the order is rejected without waiting for the cancellation</li>
+ *     <li>TIMED_OUT: no late reservation arrived, the saga is closed</li>
+ * </ul>
+ */
+@Component
+public class SagaTimeoutHandler {
+    private final Logger logger = LoggerFactory.getLogger(SagaTimeoutHandler.class);
+    private final SagaDeadlines sagaDeadlines;
+    private final SagaInstanceService sagaInstanceService;
+    private final OrderService orderService;
+    private final OrderHistoryService orderHistoryService;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final String productCommandTopicName;
+    private final String ordersCommandsTopicName;
+
+    public SagaTimeoutHandler(SagaDeadlines sagaDeadlines,
+                              SagaInstanceService sagaInstanceService,
+                              OrderService orderService,
+                              OrderHistoryService orderHistoryService,
+                              KafkaTemplate<String, Object> kafkaTemplate,
+                              @Value("${products.command.topic.name}") String productCommandTopicName,
+                              @Value("${orders.commands.topic.name}") String ordersCommandsTopicName) {
+        this.sagaDeadlines = sagaDeadlines;
+        this.sagaInstanceService = sagaInstanceService;
+        this.orderService = orderService;
+        this.orderHistoryService = orderHistoryService;
+        this.kafkaTemplate = kafkaTemplate;
+        this.productCommandTopicName = productCommandTopicName;
+        this.ordersCommandsTopicName = ordersCommandsTopicName;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreDeadlines() {
+        logger.info("**** Restored deadlines of {} in-flight sagas", sagaInstanceService.restoreDeadlines());
+    }
+
+    @Scheduled(fixedDelayString = "${orders.saga.deadline.tick-ms}")
+    public void expireDeadlines() {
+        for (SagaDeadlines.SagaDeadline deadline : sagaDeadlines.expire(System.currentTimeMillis())) {
+            try {
+                compensate(deadline);
+            } catch (RuntimeException e) {
+                logger.error("Compensation of order {} in step {} failed", deadline.orderId(), deadline.step(), e);
+            }
+        }
+    }
+
+    private void compensate(SagaDeadlines.SagaDeadline deadline) {
+        var orderId = deadline.orderId();
+        switch (deadline.step()) {
+            case ORDER_CREATED -> {
+                if (sagaInstanceService.advanceExclusively(orderId, SagaStep.ORDER_CREATED, SagaStep.TIMED_OUT,
+                        () -> send(ordersCommandsTopicName, new RejectOrderCommand(orderId)))) {
+                    orderHistoryService.add(orderId, OrderStatus.REJECTED);
+                    logger.info("**** No reservation for order {} in time, rejected it", orderId);
+                }
+            }
+            case PRODUCT_RESERVED -> {
+                if (sagaInstanceService.advanceExclusively(orderId, SagaStep.PRODUCT_RESERVED, SagaStep.PAYMENT_FAILED,
+                        () -> {
+                            Order order = orderService.findById(orderId);
+                            send(productCommandTopicName, new CancelProductReservationCommand(
+                                    order.getLineItems(),
+                                    orderId));
+                        })) {
+                    logger.info("**** No payment for order {} in time, cancelling its reservation", orderId);
+                }
+            }
+            case PAYMENT_PROCESSED -> {
+                if (sagaInstanceService.currentStep(orderId) == SagaStep.PAYMENT_PROCESSED) {
+                    sagaDeadlines.schedule(orderId, SagaStep.PAYMENT_PROCESSED);
+                    send(ordersCommandsTopicName, new ApprovedOrderCommand(orderId));
+                    logger.info("**** Order {} not approved in time, sent ApprovedOrderCommand again", orderId);
+                }
+            }
+            case PAYMENT_FAILED -> {
+                if (sagaInstanceService.advanceExclusively(orderId, SagaStep.PAYMENT_FAILED, SagaStep.REJECTED,
+                        () -> send(ordersCommandsTopicName, new RejectOrderCommand(orderId)))) {
+                    orderHistoryService.add(orderId, OrderStatus.REJECTED);
+                    logger.info("**** Reservation of order {} not cancelled in time, rejected it", orderId);
+                }
+            }
+            case TIMED_OUT -> sagaInstanceService.advance(orderId, SagaStep.EXPIRED);
+            default -> logger.warn("Ignoring deadline of order {} in step {}", orderId, deadline.step());
+        }
+    }
+
+    private void send(String topic, SagaMessage command) {
+        if (kafkaTemplate.isTransactional()) {
+            kafkaTemplate.executeInTransaction(operations -> operations.send(topic, command.key(), command)).join();
+        } else {
+            kafkaTemplate.send(topic, command.key(), command).join();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.appsdeveloperblog.orders.saga;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel. Level 0 has {@code wheelSize} buckets of {@code tickMs} each, every further
+ * level has buckets as wide as the whole level below it and is only created once a timer needs it. Adding and
+ * cancelling a timer are O(1); a timer on an upper level is moved down one level at a time as the clock
+ * reaches its bucket, and fires from level 0 within one tick after its deadline.
+ * <p>
+ * Not thread safe, callers serialize access.
+ */
+final class TimingWheel<T> {
+    private final long tickMs;
+    private final int wheelSize;
+    private final List<Level<T>> levels = new ArrayList<>();
+    private final Bucket<T> overdue = new Bucket<>();
+    private long currentTime;
+    private int size;
+
+    TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.currentTime = startMs - startMs % tickMs;
+        this.levels.add(new Level<>(tickMs, wheelSize));
+    }
+
+    Timer<T> schedule(long deadlineMs, T payload) {
+        Timer<T> timer = new Timer<>(deadlineMs, payload);
+        place(timer);
+        size++;
+        return timer;
+    }
+
+    void cancel(Timer<T> timer) {
+        if (timer.bucket != null) {
+            timer.bucket.remove(timer);
+            size--;
+        }
+    }
+
+    /**
+     * Moves the clock to {@code nowMs} and returns the payloads of all timers that expired on the way.
+     */
+    List<T> advance(long nowMs) {
+        List<T> expired = new ArrayList<>();
+        drain(overdue, expired);
+        while (currentTime + tickMs <= nowMs) {
+            currentTime += tickMs;
+            // the bucket of the tick that just ended is reused for the last tick of the level's range,
+            // so it is emptied before any timer cascades into it
+            drain(levels.get(0).bucketFor(currentTime - tickMs), expired);
+            for (int i = levels.size() - 1; i > 0; i--) {
+                Level<T> level = levels.get(i);
+                if (currentTime % level.tickMs == 0) {
+                    Bucket<T> bucket = level.bucketFor(currentTime);
+                    for (Timer<T> timer = bucket.removeAll(); timer != null; ) {
+                        Timer<T> next = timer.next;
+                        timer.next = null;
+                        place(timer);
+                        timer = next;
+                    }
+                }
+            }
+        }
+        return expired;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void drain(Bucket<T> bucket, List<T> expired) {
+        for (Timer<T> timer = bucket.removeAll(); timer != null; timer = timer.next) {
+            expired.add(timer.payload);
+            size--;
+        }
+    }
+
+    private void place(Timer<T> timer) {
+        if (timer.deadlineMs < currentTime) {
+            overdue.add(timer);
+            return;
+        }
+        for (int i = 0; ; i++) {
+            if (i == levels.size()) {
+                levels.add(new Level<>(levels.get(i - 1).tickMs * wheelSize, wheelSize));
+            }
+            Level<T> level = levels.get(i);
+            long levelStart = currentTime - currentTime % level.tickMs;
+            if (timer.deadlineMs < levelStart + level.tickMs * wheelSize) {
+                level.bucketFor(timer.deadlineMs).add(timer);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Handle of a scheduled timer, used to cancel it.
+     */
+    static final class Timer<T> {
+        private final long deadlineMs;
+        private final T payload;
+        private Bucket<T> bucket;
+        private Timer<T> prev;
+        private Timer<T> next;
+
+        private Timer(long deadlineMs, T payload) {
+            this.deadlineMs = deadlineMs;
+            this.payload = payload;
+        }
+
+        long getDeadlineMs() {
+            return deadlineMs;
+        }
+
+        T getPayload() {
+            return payload;
+        }
+    }
+
+    private static final class Level<T> {
+        private final long tickMs;
+        private final List<Bucket<T>> buckets;
+
+        private Level(long tickMs, int wheelSize) {
+            this.tickMs = tickMs;
+            this.buckets = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(new Bucket<>());
+            }
+        }
+
+        private Bucket<T> bucketFor(long timeMs) {
+            return buckets.get((int) ((timeMs / tickMs) % buckets.size()));
+        }
+    }
+
+    /**
+     * Doubly linked list of timers so that a cancelled timer unlinks itself without a search.
+     */
+    private static final class Bucket<T> {
+        private Timer<T> head;
+
+        private void add(Timer<T> timer) {
+            timer.bucket = this;
+            timer.prev = null;
+            timer.next = head;
+            if (head != null) {
+                head.prev = timer;
+            }
+            head = timer;
+        }
+
+        private void remove(Timer<T> timer) {
+            if (timer.prev != null) {
+                timer.prev.next = timer.next;
+            } else {
+                head = timer.next;
+            }
+            if (timer.next != null) {
+                timer.next.prev = timer.prev;
+            }
+            timer.bucket = null;
+            timer.prev = null;
+            timer.next = null;
+        }
+
+        /**
+         * Detaches every timer and returns them as a singly linked list through {@code next}.
+         */
+        private Timer<T> removeAll() {
+            Timer<T> first = head;
+            head = null;
+            for (Timer<T> timer = first; timer != null; timer = timer.next) {
+                timer.bucket = null;
+                timer.prev = null;
+            }
+            return first;
+        }
+    }
+}
@@ -9,5 +9,7 @@ import java.util.UUID;
 public interface OrderHistoryService {
     void add(UUID orderId, OrderStatus orderStatus);
 
+    void addAll(List<OrderHistory> orderHistory);
+
     List<OrderHistory> findByOrderId(UUID orderId);
 }
@@ -29,6 +29,20 @@ public class OrderHistoryServiceImpl implements OrderHistoryService {
         orderHistoryRepository.save(entity);
     }
 
+    @Override
+    public void addAll(List<OrderHistory> orderHistory) {
+        Timestamp now = new Timestamp(new Date().getTime());
+        List<OrderHistoryEntity> entities = orderHistory.stream().map(history -> {
+            OrderHistoryEntity entity = new OrderHistoryEntity();
+            BeanUtils.copyProperties(history, entity);
+            if (entity.getCreatedAt() == null) {
+                entity.setCreatedAt(now);
+            }
+            return entity;
+        }).toList();
+        orderHistoryRepository.saveAll(entities);
+    }
+
     @Override
     public List<OrderHistory> findByOrderId(UUID orderId) {
         var entities = orderHistoryRepository.findByOrderId(orderId);
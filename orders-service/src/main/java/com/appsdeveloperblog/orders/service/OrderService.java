@@ -10,4 +10,6 @@ public interface OrderService {
     void approveOrder(UUID orderId);
 
     void rejectOrder(UUID orderId);
+
+    Order findById(UUID orderId);
 }
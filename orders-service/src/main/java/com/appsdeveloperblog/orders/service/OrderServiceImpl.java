@@ -1,62 +1,156 @@
 package com.appsdeveloperblog.orders.service;
 
 import com.appsdeveloperblog.core.dto.Order;
+import com.appsdeveloperblog.core.dto.OrderLineItem;
 import com.appsdeveloperblog.core.dto.events.OrderApprovedEvent;
 import com.appsdeveloperblog.core.dto.events.OrderCreatedEvent;
+import com.appsdeveloperblog.core.dto.events.OrderReservedEvent;
+import com.appsdeveloperblog.core.exceptions.ProductInsufficientQuantityException;
+import com.appsdeveloperblog.core.exceptions.ProductReservationUnavailableException;
 import com.appsdeveloperblog.core.types.OrderStatus;
 import com.appsdeveloperblog.orders.dao.jpa.entity.OrderEntity;
+import com.appsdeveloperblog.orders.dao.jpa.entity.OrderLineItemEntity;
+import com.appsdeveloperblog.orders.dao.jpa.repository.OrderLineItemRepository;
 import com.appsdeveloperblog.orders.dao.jpa.repository.OrderRepository;
 import com.appsdeveloperblog.orders.saga.OrderSaga;
+import com.appsdeveloperblog.orders.stock.ProductStockReplica;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
 public class OrderServiceImpl implements OrderService {
     private final Logger logger = LoggerFactory.getLogger(OrderServiceImpl.class);
     private final OrderRepository orderRepository;
-    private final KafkaTemplate<String, Object> orderKafkaTemplate;
+    private final OrderLineItemRepository orderLineItemRepository;
+    private final OutboxService outboxService;
+    private final OrderHistoryService orderHistoryService;
+    private final ProductStockReplica productStockReplica;
+    private final ProductReservationRemoteService productReservationRemoteService;
     private final String ordersEventsTopicName;
+    private final boolean earlyRejectionEnabled;
+    private final boolean syncReservationEnabled;
+    private final TransactionTemplate transactionTemplate;
 
     public OrderServiceImpl(OrderRepository orderRepository,
-                             KafkaTemplate<String, Object> orderKafkaTemplate,
-                            @Value("${orders.event.topic.name}") String ordersEventsTopicName) {
+                            OrderLineItemRepository orderLineItemRepository,
+                            OutboxService outboxService,
+                            OrderHistoryService orderHistoryService,
+                            ProductStockReplica productStockReplica,
+                            ProductReservationRemoteService productReservationRemoteService,
+                            @Value("${orders.event.topic.name}") String ordersEventsTopicName,
+                            @Value("${orders.stock.early-rejection.enabled}") boolean earlyRejectionEnabled,
+                            @Value("${orders.reservation.sync.enabled}") boolean syncReservationEnabled,
+                            TransactionTemplate transactionTemplate) {
         this.orderRepository = orderRepository;
-        this.orderKafkaTemplate = orderKafkaTemplate;
+        this.orderLineItemRepository = orderLineItemRepository;
+        this.outboxService = outboxService;
+        this.orderHistoryService = orderHistoryService;
+        this.productStockReplica = productStockReplica;
+        this.productReservationRemoteService = productReservationRemoteService;
         this.ordersEventsTopicName = ordersEventsTopicName;
+        this.earlyRejectionEnabled = earlyRejectionEnabled;
+        this.syncReservationEnabled = syncReservationEnabled;
+        this.transactionTemplate = transactionTemplate;
     }
 
+    /**
+     * Line items naming the same product are merged into the first of them, so every product is reserved once
+     * per order. An order the stock replica already knows cannot be fulfilled is stored as rejected and never
+     * starts a saga. With {@code orders.reservation.sync.enabled} the stock is reserved on products-service
+     * before the order is stored, outside of its transaction, and its saga starts at the payment step; when
+     * products-service does not answer within {@code orders.reservation.sync.timeout-ms} the saga reserves it as
+     * usual. A reservation whose order then fails to be stored is cancelled again.
+     */
     @Override
     public Order placeOrder(Order order) {
+        Map<UUID, Integer> quantities = new LinkedHashMap<>();
+        for (OrderLineItem lineItem : order.getLineItems()) {
+            quantities.merge(lineItem.getProductId(), lineItem.getProductQuantity(), Integer::sum);
+        }
+        List<OrderLineItem> lineItems = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, productQuantity) -> lineItems.add(new OrderLineItem(productId, productQuantity)));
+        boolean rejected = earlyRejectionEnabled && productStockReplica.isUnfulfillable(lineItems);
+
+        UUID orderId = UUID.randomUUID();
+        List<OrderLineItem> reservedLineItems = null;
+        if (!rejected && syncReservationEnabled) {
+            try {
+                reservedLineItems = productReservationRemoteService.reserve(orderId, lineItems);
+            } catch (ProductInsufficientQuantityException e) {
+                rejected = true;
+            } catch (ProductReservationUnavailableException e) {
+                logger.warn("**** Reserving order {} through its saga, products-service did not answer: {}",
+                        orderId, e.getMessage());
+            }
+        }
+
+        Order placedOrder = new Order(orderId,
+                order.getCustomerId(),
+                reservedLineItems != null ? reservedLineItems : lineItems,
+                rejected ? OrderStatus.REJECTED : OrderStatus.CREATED);
+        boolean reserved = reservedLineItems != null;
+        try {
+            transactionTemplate.executeWithoutResult(status -> store(placedOrder, lineItems, reserved));
+        } catch (RuntimeException e) {
+            if (reserved) {
+                productReservationRemoteService.cancel(orderId, placedOrder.getLineItems());
+            }
+            throw e;
+        }
+        if (rejected) {
+            logger.info("**** Rejected order {}, the stock cannot fulfill it", orderId);
+        }
+        return placedOrder;
+    }
+
+    private void store(Order order, List<OrderLineItem> lineItems, boolean reserved) {
         OrderEntity entity = new OrderEntity();
+        entity.setId(order.getOrderId());
         entity.setCustomerId(order.getCustomerId());
-        entity.setProductId(order.getProductId());
-        entity.setProductQuantity(order.getProductQuantity());
-        entity.setStatus(OrderStatus.CREATED);
+        entity.setStatus(order.getStatus());
         orderRepository.save(entity);
 
-        OrderCreatedEvent placedOrder = new OrderCreatedEvent(entity.getId(),
-                entity.getCustomerId(),
-                entity.getProductId(),
-                entity.getProductQuantity()
-        );
-
-        orderKafkaTemplate.send(ordersEventsTopicName, placedOrder);
+        List<OrderLineItemEntity> lineItemEntities = new ArrayList<>(lineItems.size());
+        for (OrderLineItem lineItem : lineItems) {
+            OrderLineItemEntity lineItemEntity = new OrderLineItemEntity();
+            lineItemEntity.setOrderId(entity.getId());
+            lineItemEntity.setLineNumber(lineItemEntities.size());
+            lineItemEntity.setProductId(lineItem.getProductId());
+            lineItemEntity.setProductQuantity(lineItem.getProductQuantity());
+            lineItemEntities.add(lineItemEntity);
+        }
+        orderLineItemRepository.saveAll(lineItemEntities);
 
-        return new Order(
-                entity.getId(),
-                entity.getCustomerId(),
-                entity.getProductId(),
-                entity.getProductQuantity(),
-                entity.getStatus());
+        if (order.getStatus() == OrderStatus.REJECTED) {
+            orderHistoryService.add(entity.getId(), OrderStatus.REJECTED);
+        } else if (reserved) {
+            OrderReservedEvent reservedOrder = new OrderReservedEvent(entity.getId(),
+                    entity.getCustomerId(),
+                    order.getLineItems()
+            );
+            outboxService.add(ordersEventsTopicName, reservedOrder);
+        } else {
+            OrderCreatedEvent placedOrder = new OrderCreatedEvent(entity.getId(),
+                    entity.getCustomerId(),
+                    lineItems
+            );
+            outboxService.add(ordersEventsTopicName, placedOrder);
+        }
     }
 
     @Override
+    @Transactional
     public void approveOrder(UUID orderId) {
         logger.info("Approving order {}", orderId);
         OrderEntity orderEntity = orderRepository.findById(orderId).orElse(null);
@@ -66,12 +160,13 @@ public class OrderServiceImpl implements OrderService {
         orderRepository.save(orderEntity);
         logger.info("saved order {}", orderId);
         OrderApprovedEvent orderApprovedEvent = new OrderApprovedEvent(orderEntity.getId());
-        orderKafkaTemplate.send(ordersEventsTopicName, orderApprovedEvent);
+        outboxService.add(ordersEventsTopicName, orderApprovedEvent);
         logger.info("Approved order {}", orderId);
 
     }
 
     @Override
+    @Transactional
     public void rejectOrder(UUID orderId) {
         OrderEntity orderEntity = orderRepository.findById(orderId).orElse(null);
         Assert.notNull(orderEntity, "Order not found with id: " + orderId);
@@ -79,4 +174,17 @@ public class OrderServiceImpl implements OrderService {
         orderRepository.save(orderEntity);
     }
 
+    @Override
+    public Order findById(UUID orderId) {
+        OrderEntity orderEntity = orderRepository.findById(orderId).orElse(null);
+        Assert.notNull(orderEntity, "Order not found with id: " + orderId);
+        List<OrderLineItem> lineItems = orderLineItemRepository.findByOrderIdOrderByLineNumber(orderId).stream()
+                .map(entity -> new OrderLineItem(entity.getProductId(), entity.getProductQuantity()))
+                .toList();
+        return new Order(
+                orderEntity.getId(),
+                orderEntity.getCustomerId(),
+                lineItems,
+                orderEntity.getStatus());
+    }
 }
@@ -0,0 +1,7 @@
+package com.appsdeveloperblog.orders.service;
+
+import com.appsdeveloperblog.core.dto.SagaMessage;
+
+public interface OutboxService {
+    void add(String topic, SagaMessage message);
+}
@@ -0,0 +1,48 @@
+package com.appsdeveloperblog.orders.service;
+
+import com.appsdeveloperblog.core.dto.SagaMessage;
+import com.appsdeveloperblog.core.metrics.SagaTiming;
+import com.appsdeveloperblog.orders.dao.jpa.entity.OutboxMessageEntity;
+import com.appsdeveloperblog.orders.dao.jpa.repository.OutboxMessageRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+
+@Service
+public class OutboxServiceImpl implements OutboxService {
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final ObjectMapper objectMapper;
+
+    public OutboxServiceImpl(OutboxMessageRepository outboxMessageRepository, ObjectMapper objectMapper) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Must be called inside the transaction that changes the entity the message is about,
+     * the message is then published by {@link com.appsdeveloperblog.orders.outbox.OutboxRelay}.
+     */
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(String topic, SagaMessage message) {
+        OutboxMessageEntity entity = new OutboxMessageEntity();
+        entity.setTopic(topic);
+        entity.setMessageKey(message.key());
+        entity.setPayloadType(message.getClass().getName());
+        try {
+            entity.setPayload(objectMapper.writeValueAsString(message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize " + message.getClass().getSimpleName(), e);
+        }
+        entity.setCreatedAt(new Timestamp(System.currentTimeMillis()));
+        Long sagaOrigin = SagaTiming.currentOrigin();
+        if (sagaOrigin != null) {
+            entity.setSagaOriginAt(new Timestamp(sagaOrigin));
+        }
+        outboxMessageRepository.save(entity);
+    }
+}
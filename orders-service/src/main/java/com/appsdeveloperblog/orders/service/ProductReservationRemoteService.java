@@ -0,0 +1,25 @@
+package com.appsdeveloperblog.orders.service;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface ProductReservationRemoteService {
+    /**
+     * Reserves the order synchronously on products-service.
+     *
+     * @return the line items with the unit price they were reserved at
+     * @throws com.appsdeveloperblog.core.exceptions.ProductInsufficientQuantityException when a product is out
+     * of stock
+     * @throws com.appsdeveloperblog.core.exceptions.ProductReservationUnavailableException when there was no
+     * answer in time, the order then has to be reserved through its saga
+     */
+    List<OrderLineItem> reserve(UUID orderId, List<OrderLineItem> lineItems);
+
+    /**
+     * Gives back a reservation made by {@link #reserve} for an order that could not be stored. Does not wait for
+     * products-service; a cancellation that gets lost leaves the stock held until the hold expires.
+     */
+    void cancel(UUID orderId, List<OrderLineItem> lineItems);
+}
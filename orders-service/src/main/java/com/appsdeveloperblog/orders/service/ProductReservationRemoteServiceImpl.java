@@ -0,0 +1,93 @@
+package com.appsdeveloperblog.orders.service;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.commands.CancelProductReservationCommand;
+import com.appsdeveloperblog.core.dto.commands.ReserveProductCommand;
+import com.appsdeveloperblog.core.dto.events.ProductReservationFailedEvent;
+import com.appsdeveloperblog.core.dto.events.ProductReservedEvent;
+import com.appsdeveloperblog.core.exceptions.ProductInsufficientQuantityException;
+import com.appsdeveloperblog.core.exceptions.ProductReservationUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Only the products-service instance that owns the order's products-commands partition reserves it, the others
+ * answer 503. {@code remote.products.url} lists every instance; they are asked in turn, starting with the one
+ * that last reserved an order of the same first product, until one of them answers otherwise.
+ */
+@Service
+public class ProductReservationRemoteServiceImpl implements ProductReservationRemoteService {
+    private final Logger logger = LoggerFactory.getLogger(ProductReservationRemoteServiceImpl.class);
+    private final RestTemplate restTemplate;
+    private final List<String> productsRemoteServiceUrls;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final String productCommandTopicName;
+    private final Map<UUID, Integer> ownerByProduct = new ConcurrentHashMap<>();
+
+    public ProductReservationRemoteServiceImpl(
+            RestTemplate restTemplate,
+            @Value("${remote.products.url}") List<String> productsRemoteServiceUrls,
+            KafkaTemplate<String, Object> kafkaTemplate,
+            @Value("${products.command.topic.name}") String productCommandTopicName
+    ) {
+        this.restTemplate = restTemplate;
+        this.productsRemoteServiceUrls = productsRemoteServiceUrls;
+        this.kafkaTemplate = kafkaTemplate;
+        this.productCommandTopicName = productCommandTopicName;
+    }
+
+    @Override
+    public List<OrderLineItem> reserve(UUID orderId, List<OrderLineItem> lineItems) {
+        var request = new ReserveProductCommand(lineItems, orderId);
+        UUID firstProductId = lineItems.get(0).getProductId();
+        int firstInstance = ownerByProduct.getOrDefault(firstProductId, 0);
+        RestClientException notOwned = null;
+        for (int i = 0; i < productsRemoteServiceUrls.size(); i++) {
+            int instance = (firstInstance + i) % productsRemoteServiceUrls.size();
+            try {
+                ProductReservedEvent reserved = restTemplate.postForObject(
+                        productsRemoteServiceUrls.get(instance) + "/products/reservations", request,
+                        ProductReservedEvent.class);
+                ownerByProduct.put(firstProductId, instance);
+                return reserved.getLineItems();
+            } catch (HttpServerErrorException.ServiceUnavailable e) {
+                notOwned = e;
+            } catch (HttpClientErrorException.Conflict e) {
+                ownerByProduct.put(firstProductId, instance);
+                ProductReservationFailedEvent failed = e.getResponseBodyAs(ProductReservationFailedEvent.class);
+                throw new ProductInsufficientQuantityException(failed == null ? null : failed.getProductId(), orderId);
+            } catch (RestClientException e) {
+                throw new ProductReservationUnavailableException(e);
+            }
+        }
+        throw new ProductReservationUnavailableException(notOwned);
+    }
+
+    // through products-commands, which reaches the owning instance whichever it is
+    @Override
+    public void cancel(UUID orderId, List<OrderLineItem> lineItems) {
+        var command = new CancelProductReservationCommand(lineItems, orderId);
+        try {
+            if (kafkaTemplate.isTransactional()) {
+                kafkaTemplate.executeInTransaction(operations ->
+                        operations.send(productCommandTopicName, command.key(), command));
+            } else {
+                kafkaTemplate.send(productCommandTopicName, command.key(), command);
+            }
+        } catch (RuntimeException e) {
+            logger.error("**** Reservation of order {} not cancelled, it is held until it expires", orderId, e);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.appsdeveloperblog.orders.service;
+
+import com.appsdeveloperblog.orders.saga.SagaStep;
+
+import java.util.UUID;
+
+public interface SagaInstanceService {
+    boolean start(UUID orderId);
+
+    boolean advance(UUID orderId, SagaStep next);
+
+    boolean canAdvance(UUID orderId, SagaStep next);
+
+    boolean advanceExclusively(UUID orderId, SagaStep from, SagaStep next, Runnable commands);
+
+    SagaStep currentStep(UUID orderId);
+
+    int restoreDeadlines();
+}
@@ -0,0 +1,190 @@
+package com.appsdeveloperblog.orders.service;
+
+import com.appsdeveloperblog.orders.dao.jpa.entity.OrderSagaEntity;
+import com.appsdeveloperblog.orders.dao.jpa.repository.OrderSagaRepository;
+import com.appsdeveloperblog.orders.saga.SagaDeadlines;
+import com.appsdeveloperblog.orders.saga.SagaInstance;
+import com.appsdeveloperblog.orders.saga.SagaStep;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps in-flight sagas in a bounded LRU cache so that a step can be validated against
+ * the transition table without reading the database. The database row is only read when
+ * a saga is not cached (evicted or after a restart); writes are conditional on the version
+ * so a stale cache entry can never overwrite a newer step. Every step that is applied also
+ * moves the saga's deadline in {@link SagaDeadlines}.
+ */
+@Service
+public class SagaInstanceServiceImpl implements SagaInstanceService {
+    private static final int RESTORE_PAGE_SIZE = 1000;
+    private final Logger logger = LoggerFactory.getLogger(SagaInstanceServiceImpl.class);
+    private final OrderSagaRepository orderSagaRepository;
+    private final SagaDeadlines sagaDeadlines;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<UUID, SagaInstance> activeSagas;
+
+    public SagaInstanceServiceImpl(OrderSagaRepository orderSagaRepository,
+                                   SagaDeadlines sagaDeadlines,
+                                   TransactionTemplate transactionTemplate,
+                                   @Value("${orders.saga.cache.max-size}") int maxActiveSagas) {
+        this.orderSagaRepository = orderSagaRepository;
+        this.sagaDeadlines = sagaDeadlines;
+        this.transactionTemplate = transactionTemplate;
+        this.activeSagas = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, SagaInstance> eldest) {
+                return size() > maxActiveSagas;
+            }
+        });
+    }
+
+    @Override
+    public boolean start(UUID orderId) {
+        if (activeSagas.containsKey(orderId)) {
+            logger.info("Saga for order {} is already started", orderId);
+            return false;
+        }
+        OrderSagaEntity entity = new OrderSagaEntity();
+        entity.setOrderId(orderId);
+        entity.setStep(SagaStep.ORDER_CREATED);
+        entity.setUpdatedAt(new Timestamp(System.currentTimeMillis()));
+        try {
+            orderSagaRepository.saveAndFlush(entity);
+        } catch (DataIntegrityViolationException e) {
+            logger.info("Saga for order {} is already persisted", orderId);
+            return false;
+        }
+        activeSagas.put(orderId, new SagaInstance(orderId, entity.getStep(), entity.getVersion()));
+        sagaDeadlines.schedule(orderId, entity.getStep());
+        return true;
+    }
+
+    @Override
+    public boolean advance(UUID orderId, SagaStep next) {
+        SagaInstance current = find(orderId);
+        if (current == null) {
+            logger.warn("No saga found for order {}, ignoring step {}", orderId, next);
+            return false;
+        }
+
+        if (!current.getStep().canTransitionTo(next)) {
+            logger.info("Rejected transition {} -> {} for order {}", current.getStep(), next, orderId);
+            return false;
+        }
+
+        int updated = orderSagaRepository.advance(orderId, next, current.getVersion(),
+                new Timestamp(System.currentTimeMillis()));
+        if (updated == 0) {
+            // someone else moved the saga on, the next event for this order will reload it
+            activeSagas.remove(orderId);
+            logger.info("Stale saga state for order {}, step {} not applied", orderId, next);
+            return false;
+        }
+
+        if (next.isTerminal()) {
+            activeSagas.remove(orderId);
+        } else {
+            activeSagas.put(orderId, current.advance(next));
+        }
+        sagaDeadlines.schedule(orderId, next);
+        return true;
+    }
+
+    /**
+     * Whether {@link #advance(UUID, SagaStep)} would apply the step right now, without applying it. Lets a handler
+     * send the step's commands before the step is stored.
+     */
+    @Override
+    public boolean canAdvance(UUID orderId, SagaStep next) {
+        SagaInstance current = find(orderId);
+        return current != null && current.getStep().canTransitionTo(next);
+    }
+
+    /**
+     * Runs {@code commands} and moves the saga from {@code from} to {@code next} while holding the saga's row lock.
+     * An event handler that checked the step in the meantime cannot store its own step before this one, its
+     * conditional {@link #advance} waits for the lock and then finds a newer version. The step is read from the
+     * locked row, not the cache, and nothing is run when the saga is no longer in {@code from}.
+     */
+    @Override
+    public boolean advanceExclusively(UUID orderId, SagaStep from, SagaStep next, Runnable commands) {
+        if (!from.canTransitionTo(next)) {
+            throw new IllegalArgumentException("No transition " + from + " -> " + next);
+        }
+        Boolean advanced = transactionTemplate.execute(status -> {
+            OrderSagaEntity saga = orderSagaRepository.findForUpdate(orderId).orElse(null);
+            if (saga == null || saga.getStep() != from) {
+                return false;
+            }
+            commands.run();
+            return orderSagaRepository.advance(orderId, next, saga.getVersion(),
+                    new Timestamp(System.currentTimeMillis())) == 1;
+        });
+        // the cached entry may be older than the locked row, the next look reads the row again
+        activeSagas.remove(orderId);
+        if (Boolean.TRUE.equals(advanced)) {
+            sagaDeadlines.schedule(orderId, next);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public SagaStep currentStep(UUID orderId) {
+        SagaInstance current = find(orderId);
+        return current == null ? null : current.getStep();
+    }
+
+    /**
+     * Deadlines only live in memory, so after a restart every saga that is not finished gets one again,
+     * counted from the time it entered its current step.
+     */
+    @Override
+    public int restoreDeadlines() {
+        List<SagaStep> inFlightSteps = Arrays.stream(SagaStep.values()).filter(step -> !step.isTerminal()).toList();
+        Pageable page = PageRequest.of(0, RESTORE_PAGE_SIZE, Sort.by("orderId"));
+        int restored = 0;
+        Slice<OrderSagaEntity> sagas;
+        do {
+            sagas = orderSagaRepository.findByStepIn(inFlightSteps, page);
+            for (OrderSagaEntity saga : sagas) {
+                sagaDeadlines.schedule(saga.getOrderId(), saga.getStep(), saga.getUpdatedAt().getTime());
+            }
+            restored += sagas.getNumberOfElements();
+            page = sagas.nextPageable();
+        } while (sagas.hasNext());
+        return restored;
+    }
+
+    private SagaInstance find(UUID orderId) {
+        SagaInstance current = activeSagas.get(orderId);
+        if (current != null) {
+            return current;
+        }
+        current = orderSagaRepository.findById(orderId)
+                .map(entity -> new SagaInstance(entity.getOrderId(), entity.getStep(), entity.getVersion()))
+                .orElse(null);
+        if (current != null && !current.getStep().isTerminal()) {
+            // handlers check a step before they apply it, the second look should not read the row again
+            activeSagas.put(orderId, current);
+        }
+        return current;
+    }
+}
@@ -0,0 +1,56 @@
+package com.appsdeveloperblog.orders.stock;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.events.ProductStockChangedEvent;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last published stock of every product, read from the start of the compacted product-stock topic by every
+ * instance. The partitions are assigned rather than subscribed, so no consumer group splits them up between
+ * instances.
+ * <p>
+ * The replica lags products-service by up to a checkpoint interval and does not see stock held for sagas in
+ * flight, so it only answers whether an order can obviously not be fulfilled; the reservation stays the
+ * decision.
+ */
+@Component
+public class ProductStockReplica {
+    private final Map<UUID, Integer> stock = new ConcurrentHashMap<>();
+
+    @KafkaListener(id = "orders-ms-product-stock",
+            groupId = "orders-ms-product-stock",
+            concurrency = "1",
+            topicPartitions = @TopicPartition(topic = "${products.stock.topic.name}",
+                    partitions = "0-#{${products.stock.topic.partitions} - 1}",
+                    partitionOffsets = @PartitionOffset(partition = "*", initialOffset = "0")))
+    public void handle(@Payload ProductStockChangedEvent event) {
+        if (event.getQuantity() == null) {
+            stock.remove(event.getProductId());
+        } else {
+            stock.put(event.getProductId(), event.getQuantity());
+        }
+    }
+
+    /**
+     * Whether any line asks for more than the last known stock of its product. Products that were never
+     * published, striped products among them, are assumed to be available.
+     */
+    public boolean isUnfulfillable(List<OrderLineItem> lineItems) {
+        for (OrderLineItem lineItem : lineItems) {
+            Integer quantity = stock.get(lineItem.getProductId());
+            if (quantity != null && quantity < lineItem.getProductQuantity()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,106 @@
+package com.appsdeveloperblog.orders.config;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.commands.CancelProductReservationCommand;
+import com.appsdeveloperblog.core.dto.commands.ConfirmProductReservationCommand;
+import com.appsdeveloperblog.core.dto.commands.ReserveProductCommand;
+import com.appsdeveloperblog.core.dto.events.OrderCreatedEvent;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedProductPartitionerTest {
+    private static final String TOPIC = "products-commands";
+    private static final int PARTITIONS = 6;
+    private final UUID stripedProductId = UUID.randomUUID();
+    private final StripedProductPartitioner partitioner = new StripedProductPartitioner();
+    private Cluster cluster;
+
+    @BeforeEach
+    void setUp() {
+        partitioner.configure(Map.of(StripedProductPartitioner.STRIPED_PRODUCTS_CONFIG,
+                " " + stripedProductId + ", ," + UUID.randomUUID()));
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitions.add(new PartitionInfo(TOPIC, i, node, new Node[]{node}, new Node[]{node}));
+        }
+        cluster = new Cluster("cluster", List.of(node), partitions, Set.of(), Set.of());
+    }
+
+    @Test
+    void otherProductsArePartitionedByKeyLikeTheDefaultPartitioner() {
+        UUID productId = UUID.randomUUID();
+        ReserveProductCommand command = new ReserveProductCommand(List.of(new OrderLineItem(productId, 1)),
+                UUID.randomUUID());
+
+        assertThat(partition(command.key(), command)).isEqualTo(partitionOf(productId));
+    }
+
+    @Test
+    void stripedProductIsPartitionedByOrderForEveryCommandOfTheOrder() {
+        UUID orderId = UUID.randomUUID();
+        List<OrderLineItem> lineItems = List.of(new OrderLineItem(stripedProductId, 1),
+                new OrderLineItem(UUID.randomUUID(), 2));
+
+        int reserved = partition(stripedProductId.toString(), new ReserveProductCommand(lineItems, orderId));
+        int cancelled = partition(stripedProductId.toString(), new CancelProductReservationCommand(lineItems, orderId));
+        int confirmed = partition(stripedProductId.toString(), new ConfirmProductReservationCommand(lineItems, orderId));
+
+        assertThat(reserved).isEqualTo(partitionOf(orderId));
+        assertThat(cancelled).isEqualTo(reserved);
+        assertThat(confirmed).isEqualTo(reserved);
+    }
+
+    @Test
+    void ordersOfAStripedProductSpreadOverAllPartitions() {
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            ReserveProductCommand command = new ReserveProductCommand(
+                    List.of(new OrderLineItem(stripedProductId, 1)), UUID.randomUUID());
+            used.add(partition(command.key(), command));
+        }
+
+        assertThat(used).hasSize(PARTITIONS);
+    }
+
+    // only the first line item decides, like the key
+    @Test
+    void stripedProductAfterTheFirstLineItemDoesNotChangeThePartition() {
+        UUID productId = UUID.randomUUID();
+        ReserveProductCommand command = new ReserveProductCommand(List.of(new OrderLineItem(productId, 1),
+                new OrderLineItem(stripedProductId, 1)), UUID.randomUUID());
+
+        assertThat(partition(command.key(), command)).isEqualTo(partitionOf(productId));
+    }
+
+    @Test
+    void otherMessagesArePartitionedByKey() {
+        UUID orderId = UUID.randomUUID();
+        OrderCreatedEvent event = new OrderCreatedEvent(orderId, UUID.randomUUID(),
+                List.of(new OrderLineItem(stripedProductId, 1)));
+
+        assertThat(partition(orderId.toString(), event)).isEqualTo(partitionOf(orderId));
+    }
+
+    private int partition(String key, Object value) {
+        return partitioner.partition(TOPIC, key, key.getBytes(StandardCharsets.UTF_8), value, null, cluster);
+    }
+
+    private static int partitionOf(UUID id) {
+        return Utils.toPositive(Utils.murmur2(id.toString().getBytes(StandardCharsets.UTF_8))) % PARTITIONS;
+    }
+}
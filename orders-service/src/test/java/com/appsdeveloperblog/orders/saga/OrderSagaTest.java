@@ -0,0 +1,152 @@
+package com.appsdeveloperblog.orders.saga;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.commands.ApprovedOrderCommand;
+import com.appsdeveloperblog.core.dto.commands.CancelProductReservationCommand;
+import com.appsdeveloperblog.core.dto.commands.ProcessPaymentCommand;
+import com.appsdeveloperblog.core.dto.commands.RefundPaymentCommand;
+import com.appsdeveloperblog.core.dto.events.PaymentProcessedEvent;
+import com.appsdeveloperblog.core.dto.events.ProductReservedEvent;
+import com.appsdeveloperblog.orders.service.OrderHistoryService;
+import com.appsdeveloperblog.orders.service.OrderService;
+import com.appsdeveloperblog.orders.service.SagaInstanceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs the saga's handlers against a deadline that stores its compensating step while the handler's command
+ * is being sent.
+ */
+class OrderSagaTest {
+    private final UUID orderId = UUID.randomUUID();
+    private final List<OrderLineItem> lineItems = List.of(new OrderLineItem(UUID.randomUUID(), 2, new BigDecimal("3.50")));
+    private final InMemorySagaInstanceService sagas = new InMemorySagaInstanceService();
+    private final List<Object> sent = new ArrayList<>();
+    private Consumer<Object> duringSend = command -> {
+    };
+    private OrderSaga orderSaga;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        KafkaTemplate<String, Object> kafkaTemplate = mock(KafkaTemplate.class);
+        doAnswer(invocation -> {
+            Object command = invocation.getArgument(2);
+            sent.add(command);
+            duringSend.accept(command);
+            return CompletableFuture.completedFuture(null);
+        }).when(kafkaTemplate).send(anyString(), anyString(), any());
+        orderSaga = new OrderSaga(kafkaTemplate, "products-commands", mock(OrderHistoryService.class),
+                "payments-commands", "orders-commands", sagas, mock(OrderService.class));
+    }
+
+    @Test
+    void reservationOvertakenByItsDeadlineIsCancelledAndItsPaymentRefunded() {
+        sagas.steps.put(orderId, SagaStep.ORDER_CREATED);
+        duringSend = command -> {
+            if (command instanceof ProcessPaymentCommand) {
+                sagas.steps.put(orderId, SagaStep.TIMED_OUT);
+            }
+        };
+
+        orderSaga.handleEvent(new ProductReservedEvent(orderId, lineItems));
+
+        assertThat(sent).hasSize(2);
+        assertThat(sent.get(0)).isInstanceOf(ProcessPaymentCommand.class);
+        assertThat(sent.get(1)).isInstanceOfSatisfying(CancelProductReservationCommand.class,
+                cancel -> assertThat(cancel.getLineItems()).isEqualTo(lineItems));
+        assertThat(sagas.steps.get(orderId)).isEqualTo(SagaStep.EXPIRED);
+
+        orderSaga.handleEvent(new PaymentProcessedEvent(orderId, UUID.randomUUID()));
+
+        assertThat(sent).hasSize(3);
+        assertThat(sent.get(2)).isInstanceOf(RefundPaymentCommand.class);
+    }
+
+    @Test
+    void paymentOvertakenByItsDeadlineIsRefunded() {
+        sagas.steps.put(orderId, SagaStep.PRODUCT_RESERVED);
+        duringSend = command -> {
+            if (command instanceof ApprovedOrderCommand) {
+                sagas.steps.put(orderId, SagaStep.PAYMENT_FAILED);
+            }
+        };
+
+        orderSaga.handleEvent(new PaymentProcessedEvent(orderId, UUID.randomUUID()));
+
+        assertThat(sent).hasSize(2);
+        assertThat(sent.get(0)).isInstanceOf(ApprovedOrderCommand.class);
+        assertThat(sent.get(1)).isInstanceOf(RefundPaymentCommand.class);
+        assertThat(sagas.steps.get(orderId)).isEqualTo(SagaStep.PAYMENT_FAILED);
+    }
+
+    @Test
+    void reservationWithoutDeadlineGoesOnToThePayment() {
+        sagas.steps.put(orderId, SagaStep.ORDER_CREATED);
+
+        orderSaga.handleEvent(new ProductReservedEvent(orderId, lineItems));
+
+        assertThat(sent).singleElement().isInstanceOf(ProcessPaymentCommand.class);
+        assertThat(sagas.steps.get(orderId)).isEqualTo(SagaStep.PRODUCT_RESERVED);
+    }
+
+    private static class InMemorySagaInstanceService implements SagaInstanceService {
+        private final Map<UUID, SagaStep> steps = new HashMap<>();
+
+        @Override
+        public boolean start(UUID orderId) {
+            return steps.putIfAbsent(orderId, SagaStep.ORDER_CREATED) == null;
+        }
+
+        @Override
+        public boolean advance(UUID orderId, SagaStep next) {
+            if (!canAdvance(orderId, next)) {
+                return false;
+            }
+            steps.put(orderId, next);
+            return true;
+        }
+
+        @Override
+        public boolean canAdvance(UUID orderId, SagaStep next) {
+            SagaStep current = steps.get(orderId);
+            return current != null && current.canTransitionTo(next);
+        }
+
+        @Override
+        public boolean advanceExclusively(UUID orderId, SagaStep from, SagaStep next, Runnable commands) {
+            if (steps.get(orderId) != from) {
+                return false;
+            }
+            commands.run();
+            steps.put(orderId, next);
+            return true;
+        }
+
+        @Override
+        public SagaStep currentStep(UUID orderId) {
+            return steps.get(orderId);
+        }
+
+        @Override
+        public int restoreDeadlines() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.appsdeveloperblog.orders.saga;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SagaStepTest {
+
+    @Test
+    void happyPathMovesForwardOneStepAtATime() {
+        assertThat(SagaStep.ORDER_CREATED.canTransitionTo(SagaStep.PRODUCT_RESERVED)).isTrue();
+        assertThat(SagaStep.PRODUCT_RESERVED.canTransitionTo(SagaStep.PAYMENT_PROCESSED)).isTrue();
+        assertThat(SagaStep.PAYMENT_PROCESSED.canTransitionTo(SagaStep.APPROVED)).isTrue();
+
+        assertThat(SagaStep.ORDER_CREATED.canTransitionTo(SagaStep.PAYMENT_PROCESSED)).isFalse();
+        assertThat(SagaStep.PRODUCT_RESERVED.canTransitionTo(SagaStep.APPROVED)).isFalse();
+    }
+
+    @Test
+    void compensatingStepsLeadToRejectionOrExpiry() {
+        assertThat(SagaStep.ORDER_CREATED.canTransitionTo(SagaStep.REJECTED)).isTrue();
+        assertThat(SagaStep.ORDER_CREATED.canTransitionTo(SagaStep.TIMED_OUT)).isTrue();
+        assertThat(SagaStep.PRODUCT_RESERVED.canTransitionTo(SagaStep.PAYMENT_FAILED)).isTrue();
+        assertThat(SagaStep.PAYMENT_FAILED.canTransitionTo(SagaStep.REJECTED)).isTrue();
+        assertThat(SagaStep.TIMED_OUT.canTransitionTo(SagaStep.EXPIRED)).isTrue();
+
+        // an approved payment is never rolled back by the saga itself
+        assertThat(SagaStep.PAYMENT_PROCESSED.canTransitionTo(SagaStep.REJECTED)).isFalse();
+        assertThat(SagaStep.TIMED_OUT.canTransitionTo(SagaStep.PRODUCT_RESERVED)).isFalse();
+    }
+
+    @Test
+    void noStepMovesToItselfSoRedeliveriesAreRecognized() {
+        for (SagaStep step : SagaStep.values()) {
+            assertThat(step.canTransitionTo(step)).as(step.name()).isFalse();
+        }
+    }
+
+    @Test
+    void onlyFinalStepsAreTerminal() {
+        EnumSet<SagaStep> terminal = EnumSet.noneOf(SagaStep.class);
+        for (SagaStep step : SagaStep.values()) {
+            if (step.isTerminal()) {
+                terminal.add(step);
+            }
+        }
+        assertThat(terminal).containsExactlyInAnyOrder(SagaStep.APPROVED, SagaStep.REJECTED, SagaStep.EXPIRED);
+    }
+
+    @Test
+    void paymentsArrivingAfterTheOrderWasGivenUpAreAbandoned() {
+        assertThat(SagaStep.isPaymentAbandoned(SagaStep.PAYMENT_FAILED)).isTrue();
+        assertThat(SagaStep.isPaymentAbandoned(SagaStep.REJECTED)).isTrue();
+        assertThat(SagaStep.isPaymentAbandoned(SagaStep.TIMED_OUT)).isTrue();
+        assertThat(SagaStep.isPaymentAbandoned(SagaStep.EXPIRED)).isTrue();
+
+        assertThat(SagaStep.isPaymentAbandoned(SagaStep.PRODUCT_RESERVED)).isFalse();
+        assertThat(SagaStep.isPaymentAbandoned(SagaStep.PAYMENT_PROCESSED)).isFalse();
+        assertThat(SagaStep.isPaymentAbandoned(SagaStep.APPROVED)).isFalse();
+    }
+
+    // order_sagas.step stores the ordinal
+    @Test
+    void ordinalsOfStoredStepsNeverChange() {
+        assertThat(SagaStep.values()).containsExactly(SagaStep.ORDER_CREATED, SagaStep.PRODUCT_RESERVED,
+                SagaStep.PAYMENT_PROCESSED, SagaStep.PAYMENT_FAILED, SagaStep.APPROVED, SagaStep.REJECTED,
+                SagaStep.TIMED_OUT, SagaStep.EXPIRED);
+    }
+}
@@ -0,0 +1,95 @@
+package com.appsdeveloperblog.orders.saga;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+    private static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 8;
+
+    @Test
+    void timerFiresWithinOneTickAfterItsDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, WHEEL_SIZE, 1_000);
+        wheel.schedule(1_035, "order");
+
+        assertThat(wheel.advance(1_035)).isEmpty();
+        assertThat(wheel.advance(1_039)).isEmpty();
+        assertThat(wheel.advance(1_040)).containsExactly("order");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void timersBeyondTheFirstLevelCascadeDownAndFireOnTime() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK_MS, WHEEL_SIZE, 0);
+        // the first level covers 80 ms, the second 640 ms and the third 5120 ms
+        long[] deadlines = {79, 80, 81, 639, 640, 5_119, 5_120, 40_000};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline);
+        }
+
+        Map<Long, Long> firedAt = new HashMap<>();
+        for (long now = 1; now <= 41_000; now++) {
+            for (Long deadline : wheel.advance(now)) {
+                firedAt.put(deadline, now);
+            }
+        }
+
+        assertThat(firedAt).hasSize(deadlines.length);
+        for (long deadline : deadlines) {
+            assertThat(firedAt.get(deadline)).as("deadline %d", deadline)
+                    .isEqualTo(deadline - deadline % TICK_MS + TICK_MS);
+        }
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void randomDeadlinesNeverFireEarlyOrMoreThanATickLate() {
+        Random random = new Random(42);
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK_MS, WHEEL_SIZE, 0);
+        int timers = 10_000;
+        for (int i = 0; i < timers; i++) {
+            long deadline = random.nextInt(100_000);
+            wheel.schedule(deadline, deadline);
+        }
+
+        int fired = 0;
+        for (long now = 0; now <= 100_100; now += 1 + random.nextInt(7)) {
+            List<Long> expired = wheel.advance(now);
+            for (Long deadline : expired) {
+                assertThat(deadline).isLessThan(now);
+                assertThat(now - deadline).isLessThanOrEqualTo(TICK_MS + 6);
+            }
+            fired += expired.size();
+        }
+        assertThat(fired).isEqualTo(timers);
+    }
+
+    @Test
+    void cancelledTimerDoesNotFire() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, WHEEL_SIZE, 0);
+        TimingWheel.Timer<String> cancelled = wheel.schedule(2_000, "cancelled");
+        wheel.schedule(2_000, "kept");
+
+        wheel.cancel(cancelled);
+        wheel.cancel(cancelled);
+
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(wheel.advance(3_000)).containsExactly("kept");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void timerScheduledInThePastFiresOnTheNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, WHEEL_SIZE, 5_000);
+
+        wheel.schedule(4_000, "late");
+
+        assertThat(wheel.advance(5_000)).containsExactly("late");
+    }
+}
@@ -1,15 +1,83 @@
 package com.appsdeveloperblog.payments.config;
 
-import org.springframework.boot.web.client.RestTemplateBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
 
 @Configuration
 public class ApplicationConfig {
+    private static final String CCP_CLIENT_NAME = "ccp";
 
+    // all payments go to one processor, so the whole pool is available to its route
     @Bean
-    public RestTemplate ccpRestTemplate(RestTemplateBuilder restTemplateBuilder) {
-        return restTemplateBuilder.build();
+    public PoolingAsyncClientConnectionManager ccpConnectionManager(
+            @Value("${payments.ccp.http.max-connections}") int maxConnections,
+            @Value("${payments.ccp.http.connect-timeout-ms}") long connectTimeoutMs,
+            @Value("${payments.ccp.http.version-policy}") HttpVersionPolicy versionPolicy) {
+        return PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .build())
+                .setDefaultTlsConfig(TlsConfig.custom()
+                        .setVersionPolicy(versionPolicy)
+                        .build())
+                .build();
+    }
+
+    // pool size, leased, available and pending connections as httpcomponents.httpclient.pool.*{httpclient=ccp}
+    @Bean
+    public MeterBinder ccpConnectionPoolMetrics(PoolingAsyncClientConnectionManager ccpConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(ccpConnectionManager, CCP_CLIENT_NAME);
+    }
+
+    // a payment is not retried by the client, a failed one is reported to the saga as PaymentsFailedEvent
+    @Bean
+    public CloseableHttpAsyncClient ccpHttpClient(
+            PoolingAsyncClientConnectionManager ccpConnectionManager,
+            MeterRegistry meterRegistry,
+            @Value("${payments.ccp.http.pool-timeout-ms}") long poolTimeoutMs,
+            @Value("${payments.ccp.http.response-timeout-ms}") long responseTimeoutMs,
+            @Value("${payments.ccp.http.idle-timeout-ms}") long idleTimeoutMs) {
+        CloseableHttpAsyncClient httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(new PoolWaitTimingConnectionManager(ccpConnectionManager,
+                        poolWaitTimer(meterRegistry, "leased"),
+                        poolWaitTimer(meterRegistry, "failed")))
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                        .setConnectionKeepAlive(TimeValue.ofMilliseconds(idleTimeoutMs))
+                        .build())
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleTimeoutMs))
+                .disableAutomaticRetries()
+                .disableCookieManagement()
+                .build();
+        httpClient.start();
+        return httpClient;
+    }
+
+    private static Timer poolWaitTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("ccp.client.pool.wait")
+                .description("Time a request to the credit card processor waited for a pooled connection")
+                .tag("result", result)
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 }
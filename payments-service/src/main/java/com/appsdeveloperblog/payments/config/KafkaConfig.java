@@ -1,12 +1,22 @@
 package com.appsdeveloperblog.payments.config;
 
+import com.appsdeveloperblog.core.metrics.SagaTimingRecordInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.appsdeveloperblog.payments.service.handler.InFlightPayments;
+import jakarta.persistence.EntityManagerFactory;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.orm.jpa.JpaTransactionManager;
 
 @Configuration
 public class KafkaConfig {
@@ -22,6 +32,42 @@ public class KafkaConfig {
         return new KafkaTemplate<>(producerFactory);
     }
 
+    // the KafkaTransactionManager registered for transaction-id-prefix would replace Boot's JPA one
+    @Bean
+    @Primary
+    JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+
+    // queueing and processing time per payment command, see /actuator/metrics/saga.step.queue
+    @Bean
+    SagaTimingRecordInterceptor sagaTimingRecordInterceptor(MeterRegistry meterRegistry) {
+        return new SagaTimingRecordInterceptor(meterRegistry);
+    }
+
+    // payment commands are keyed by order id; consume each partition on its own thread. Payments finish out of
+    // order, so they are acknowledged manually and the container commits each offset once all before it are acked.
+    // A Kafka transaction commits the offsets of a poll when the listener returns, before those acks arrive, so
+    // the two cannot be combined and a transactional producer is refused
+    @Bean
+    ConcurrentKafkaListenerContainerFactory<Object, Object> kafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> kafkaConsumerFactory,
+            ProducerFactory<String, Object> producerFactory,
+            InFlightPayments inFlightPayments) {
+        if (producerFactory.transactionCapable()) {
+            throw new IllegalStateException("spring.kafka.producer.transaction-id-prefix must not be set, "
+                    + "payment commands are acknowledged asynchronously");
+        }
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory);
+        factory.setConcurrency(TOPIC_PARTITION);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        factory.getContainerProperties().setConsumerRebalanceListener(inFlightPayments);
+        return factory;
+    }
+
     @Bean
     NewTopic createPaymentsEventsTopic() {
         return TopicBuilder.name(paymentsEventsTopicName)
@@ -0,0 +1,101 @@
+package com.appsdeveloperblog.payments.config;
+
+import io.micrometer.core.instrument.Timer;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.nio.AsyncClientConnectionManager;
+import org.apache.hc.client5.http.nio.AsyncConnectionEndpoint;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.ConnectionInitiator;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each request waited for a pooled connection, from the lease until the pool handed out a
+ * connection or gave up. Everything else is left to the wrapped manager.
+ */
+class PoolWaitTimingConnectionManager implements AsyncClientConnectionManager {
+    private final AsyncClientConnectionManager connectionManager;
+    private final Timer leasedTimer;
+    private final Timer failedTimer;
+
+    PoolWaitTimingConnectionManager(AsyncClientConnectionManager connectionManager,
+                                    Timer leasedTimer,
+                                    Timer failedTimer) {
+        this.connectionManager = connectionManager;
+        this.leasedTimer = leasedTimer;
+        this.failedTimer = failedTimer;
+    }
+
+    @Override
+    public Future<AsyncConnectionEndpoint> lease(String id, HttpRoute route, Object state, Timeout requestTimeout,
+                                                 FutureCallback<AsyncConnectionEndpoint> callback) {
+        long start = System.nanoTime();
+        return connectionManager.lease(id, route, state, requestTimeout, new FutureCallback<>() {
+            @Override
+            public void completed(AsyncConnectionEndpoint endpoint) {
+                leasedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (callback != null) {
+                    callback.completed(endpoint);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                failedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (callback != null) {
+                    callback.failed(e);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                failedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (callback != null) {
+                    callback.cancelled();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void release(AsyncConnectionEndpoint endpoint, Object newState, TimeValue validDuration) {
+        connectionManager.release(endpoint, newState, validDuration);
+    }
+
+    @Override
+    public Future<AsyncConnectionEndpoint> connect(AsyncConnectionEndpoint endpoint,
+                                                   ConnectionInitiator connectionInitiator,
+                                                   Timeout connectTimeout,
+                                                   Object attachment,
+                                                   HttpContext context,
+                                                   FutureCallback<AsyncConnectionEndpoint> callback) {
+        return connectionManager.connect(endpoint, connectionInitiator, connectTimeout, attachment, context, callback);
+    }
+
+    @Override
+    public void upgrade(AsyncConnectionEndpoint endpoint, Object attachment, HttpContext context) {
+        connectionManager.upgrade(endpoint, attachment, context);
+    }
+
+    @Override
+    public void upgrade(AsyncConnectionEndpoint endpoint, Object attachment, HttpContext context,
+                        FutureCallback<AsyncConnectionEndpoint> callback) {
+        connectionManager.upgrade(endpoint, attachment, context, callback);
+    }
+
+    @Override
+    public void close(CloseMode closeMode) {
+        connectionManager.close(closeMode);
+    }
+
+    @Override
+    public void close() throws IOException {
+        connectionManager.close();
+    }
+}
@@ -11,14 +11,13 @@ public class PaymentEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
-    @Column(name = "order_id")
+    @Column(name = "order_id", unique = true)
     private UUID orderId;
-    @Column(name = "product_id")
-    private UUID productId;
-    @Column(name = "product_price")
-    private BigDecimal productPrice;
-    @Column(name = "product_quantity")
-    private Integer productQuantity;
+    @Column(name = "amount")
+    private BigDecimal amount;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status")
+    private PaymentStatus status;
 
     public UUID getId() {
         return id;
@@ -36,27 +35,19 @@ public class PaymentEntity {
         this.orderId = orderId;
     }
 
-    public UUID getProductId() {
-        return productId;
+    public BigDecimal getAmount() {
+        return amount;
     }
 
-    public void setProductId(UUID productId) {
-        this.productId = productId;
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
     }
 
-    public BigDecimal getProductPrice() {
-        return productPrice;
+    public PaymentStatus getStatus() {
+        return status;
     }
 
-    public void setProductPrice(BigDecimal productPrice) {
-        this.productPrice = productPrice;
-    }
-
-    public Integer getProductQuantity() {
-        return productQuantity;
-    }
-
-    public void setProductQuantity(Integer productQuantity) {
-        this.productQuantity = productQuantity;
+    public void setStatus(PaymentStatus status) {
+        this.status = status;
     }
 }
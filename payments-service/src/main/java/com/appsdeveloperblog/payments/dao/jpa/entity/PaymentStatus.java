@@ -0,0 +1,16 @@
+package com.appsdeveloperblog.payments.dao.jpa.entity;
+
+public enum PaymentStatus {
+    /**
+     * The order is claimed for charging; the card may or may not have been charged yet.
+     */
+    PENDING,
+    /**
+     * The credit card processor accepted the payment.
+     */
+    PAID,
+    /**
+     * The payment was given back because the order was rejected while it was being charged.
+     */
+    REFUNDED
+}
@@ -1,11 +1,17 @@
 package com.appsdeveloperblog.payments.dao.jpa.repository;
 
 import com.appsdeveloperblog.payments.dao.jpa.entity.PaymentEntity;
+import com.appsdeveloperblog.payments.dao.jpa.entity.PaymentStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface PaymentRepository extends JpaRepository<PaymentEntity, UUID> {
+    Optional<PaymentEntity> findByOrderId(UUID orderId);
+
+    List<PaymentEntity> findByStatus(PaymentStatus status);
 }
@@ -0,0 +1,108 @@
+package com.appsdeveloperblog.payments.service;
+
+import com.appsdeveloperblog.core.dto.CreditCardProcessRequest;
+import com.appsdeveloperblog.core.dto.CreditCardProcessResult;
+import com.appsdeveloperblog.core.exceptions.CreditCardProcessorUnavailableException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects requests into batches for {@code /ccp/process-batch}. A batch is sent once it holds {@code maxSize}
+ * requests or {@code maxDelayMs} after its first request was added, whichever comes first. Each caller gets the
+ * result at its own position of the batch; when the batch call fails, all of its callers fail with that error.
+ */
+class CreditCardProcessBatcher {
+    private final int maxSize;
+    private final long maxDelayMs;
+    private final ScheduledExecutorService scheduler;
+    private final Function<List<CreditCardProcessRequest>, CompletableFuture<List<CreditCardProcessResult>>> sender;
+    private List<PendingRequest> pending;
+    private ScheduledFuture<?> delayedSend;
+
+    CreditCardProcessBatcher(int maxSize,
+                             long maxDelayMs,
+                             ScheduledExecutorService scheduler,
+                             Function<List<CreditCardProcessRequest>, CompletableFuture<List<CreditCardProcessResult>>> sender) {
+        this.maxSize = maxSize;
+        this.maxDelayMs = maxDelayMs;
+        this.scheduler = scheduler;
+        this.sender = sender;
+        this.pending = new ArrayList<>(maxSize);
+    }
+
+    CompletableFuture<CreditCardProcessResult> add(CreditCardProcessRequest request) {
+        PendingRequest pendingRequest = new PendingRequest(request, new CompletableFuture<>());
+        List<PendingRequest> full = null;
+        synchronized (this) {
+            pending.add(pendingRequest);
+            if (pending.size() >= maxSize) {
+                full = takePending();
+            } else if (pending.size() == 1) {
+                delayedSend = scheduler.schedule(this::sendPending, maxDelayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return pendingRequest.result();
+    }
+
+    /**
+     * Sends the requests collected so far without waiting for the batch to fill up.
+     */
+    void sendPending() {
+        List<PendingRequest> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    // a delayed send that is already running when the batch filled up sends the next batch a bit early
+    private List<PendingRequest> takePending() {
+        List<PendingRequest> batch = pending;
+        pending = new ArrayList<>(maxSize);
+        if (delayedSend != null) {
+            delayedSend.cancel(false);
+            delayedSend = null;
+        }
+        return batch;
+    }
+
+    private void send(List<PendingRequest> batch) {
+        CompletableFuture<List<CreditCardProcessResult>> sent;
+        try {
+            sent = sender.apply(batch.stream().map(PendingRequest::request).toList());
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((results, e) -> {
+            Throwable error = e instanceof CompletionException ? e.getCause() : e;
+            if (error == null && (results == null || results.size() != batch.size())) {
+                error = new CreditCardProcessorUnavailableException(new IllegalStateException(
+                        "Credit card processor answered " + (results == null ? 0 : results.size())
+                                + " results for " + batch.size() + " requests"));
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                if (error == null) {
+                    batch.get(i).result().complete(results.get(i));
+                } else {
+                    batch.get(i).result().completeExceptionally(error);
+                }
+            }
+        });
+    }
+
+    private record PendingRequest(CreditCardProcessRequest request, CompletableFuture<CreditCardProcessResult> result) {
+    }
+}
@@ -0,0 +1,136 @@
+package com.appsdeveloperblog.payments.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stops calling the credit card processor once {@code payments.ccp.breaker.failure-rate-threshold} percent of the
+ * last {@code payments.ccp.breaker.window-size} calls failed, at least {@code payments.ccp.breaker.minimum-calls}
+ * of them. While open every call is refused at once. After {@code payments.ccp.breaker.open-ms} the next
+ * {@code payments.ccp.breaker.half-open-calls} calls are let through: if they all succeed the breaker closes,
+ * the first failure opens it again.
+ */
+@Component
+public class CreditCardProcessorCircuitBreaker {
+    private final Logger logger = LoggerFactory.getLogger(CreditCardProcessorCircuitBreaker.class);
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openMs;
+    private final int halfOpenCalls;
+    private final Counter rejectedCalls;
+    private State state = State.CLOSED;
+    private int calls;
+    private int failures;
+    private int next;
+    private long openUntil;
+    private int trialCallsStarted;
+    private int trialCallsSucceeded;
+
+    public CreditCardProcessorCircuitBreaker(@Value("${payments.ccp.breaker.window-size}") int windowSize,
+                                             @Value("${payments.ccp.breaker.minimum-calls}") int minimumCalls,
+                                             @Value("${payments.ccp.breaker.failure-rate-threshold}") int failureRateThreshold,
+                                             @Value("${payments.ccp.breaker.open-ms}") long openMs,
+                                             @Value("${payments.ccp.breaker.half-open-calls}") int halfOpenCalls,
+                                             MeterRegistry meterRegistry) {
+        this.window = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMs = openMs;
+        this.halfOpenCalls = halfOpenCalls;
+        this.rejectedCalls = Counter.builder("ccp.client.circuit.rejected")
+                .description("Calls to the credit card processor refused while the circuit was open")
+                .register(meterRegistry);
+        Gauge.builder("ccp.client.circuit.open", this, breaker -> breaker.getState() == State.CLOSED ? 0 : 1)
+                .description("1 while calls to the credit card processor are refused or on trial")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether a call may be made now. Every permitted call must be followed by exactly one {@link #onSuccess()}
+     * or {@link #onFailure()}.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() < openUntil) {
+                rejectedCalls.increment();
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialCallsStarted = 0;
+            trialCallsSucceeded = 0;
+            logger.info("**** Circuit to the credit card processor half open, trying {} calls", halfOpenCalls);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialCallsStarted == halfOpenCalls) {
+                rejectedCalls.increment();
+                return false;
+            }
+            trialCallsStarted++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++trialCallsSucceeded == halfOpenCalls) {
+                close();
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (calls >= minimumCalls && failures * 100 >= failureRateThreshold * calls) {
+                open();
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (calls == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + openMs;
+        logger.warn("**** Circuit to the credit card processor open for {} ms", openMs);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        calls = 0;
+        failures = 0;
+        next = 0;
+        logger.info("**** Circuit to the credit card processor closed");
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+}
@@ -2,7 +2,24 @@ package com.appsdeveloperblog.payments.service;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public interface CreditCardProcessorRemoteService {
-    void process(BigInteger cardNumber, BigDecimal paymentAmount);
+    /**
+     * The order id is sent as the idempotency key, so charging the same order again does not charge the card twice.
+     *
+     * @return completes once the processor accepted the payment, or exceptionally with
+     * {@link com.appsdeveloperblog.core.exceptions.CreditCardDeclinedException} when the processor refused it and
+     * {@link com.appsdeveloperblog.core.exceptions.CreditCardProcessorUnavailableException} when it could not be
+     * reached
+     */
+    CompletableFuture<Void> process(UUID orderId, BigInteger cardNumber, BigDecimal paymentAmount);
+
+    /**
+     * Gives back what the order was charged; refunding it again does not refund twice.
+     *
+     * @return completes once the processor refunded the payment, or exceptionally like {@link #process}
+     */
+    CompletableFuture<Void> refund(UUID orderId, BigInteger cardNumber, BigDecimal paymentAmount);
 }
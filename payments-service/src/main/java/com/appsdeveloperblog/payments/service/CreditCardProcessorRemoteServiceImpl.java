@@ -1,37 +1,220 @@
 package com.appsdeveloperblog.payments.service;
 
+import com.appsdeveloperblog.core.dto.CreditCardProcessBatchRequest;
+import com.appsdeveloperblog.core.dto.CreditCardProcessBatchResponse;
 import com.appsdeveloperblog.core.dto.CreditCardProcessRequest;
+import com.appsdeveloperblog.core.dto.CreditCardProcessResult;
+import com.appsdeveloperblog.core.exceptions.CreditCardDeclinedException;
 import com.appsdeveloperblog.core.exceptions.CreditCardProcessorUnavailableException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.http.Outcome;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.net.URI;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 @Service
 public class CreditCardProcessorRemoteServiceImpl implements CreditCardProcessorRemoteService {
-    private final RestTemplate restTemplate;
+    private static final String PROCESS_ENDPOINT = "/ccp/process";
+    private static final String PROCESS_BATCH_ENDPOINT = "/ccp/process-batch";
+    private static final String REFUND_ENDPOINT = "/ccp/refund";
+    private static final String NO_RESPONSE = "NONE";
+    private static final String NO_EXCEPTION = "none";
+    private final CloseableHttpAsyncClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Executor completionExecutor;
+    private final CreditCardProcessorCircuitBreaker circuitBreaker;
     private final String ccpRemoteServiceUrl;
+    private final ScheduledExecutorService batchScheduler;
+    private final CreditCardProcessBatcher batcher;
+    private final DistributionSummary batchSizes;
 
 
     public CreditCardProcessorRemoteServiceImpl(
-            RestTemplate restTemplate,
-            @Value("${remote.ccp.url}") String ccpRemoteServiceUrl
+            CloseableHttpAsyncClient httpClient,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Qualifier("applicationTaskExecutor") Executor completionExecutor,
+            CreditCardProcessorCircuitBreaker circuitBreaker,
+            @Value("${remote.ccp.url}") String ccpRemoteServiceUrl,
+            @Value("${payments.ccp.batch.enabled}") boolean batchEnabled,
+            @Value("${payments.ccp.batch.max-size}") int batchMaxSize,
+            @Value("${payments.ccp.batch.max-delay-ms}") long batchMaxDelayMs
     ) {
-        this.restTemplate = restTemplate;
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.completionExecutor = completionExecutor;
+        this.circuitBreaker = circuitBreaker;
         this.ccpRemoteServiceUrl = ccpRemoteServiceUrl;
+        if (batchEnabled) {
+            this.batchScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ccp-batcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.batcher = new CreditCardProcessBatcher(Math.min(batchMaxSize, CreditCardProcessBatchRequest.MAX_SIZE),
+                    batchMaxDelayMs, batchScheduler, this::processBatch);
+        } else {
+            this.batchScheduler = null;
+            this.batcher = null;
+        }
+        this.batchSizes = DistributionSummary.builder("ccp.client.batch.size")
+                .description("Payments authorized per call to " + PROCESS_BATCH_ENDPOINT)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
     }
 
 
+    /**
+     * Does not block the calling thread. The returned future completes on the application task executor rather
+     * than on one of the HTTP client's few I/O threads, so callers may continue with blocking work like saving the
+     * payment.
+     * With {@code payments.ccp.batch.enabled} the payment is authorized together with the others started within
+     * {@code payments.ccp.batch.max-delay-ms}, in one call to {@code /ccp/process-batch}.
+     * A 4xx answer, for the call or for the payment within a batch, fails the future with
+     * {@link CreditCardDeclinedException}: the processor is up and refused this payment. Any other answer than 2xx
+     * counts as the processor being unavailable, like a failed connection or a timeout.
+     * Each call is recorded in the {@code ccp.client.requests} timer, tagged with the endpoint, outcome, status
+     * and exception. While {@link CreditCardProcessorCircuitBreaker} is open the processor is not called and the
+     * future fails at once; only failed connections, timeouts and 5xx answers count against the breaker.
+     */
+    @Override
+    public CompletableFuture<Void> process(UUID orderId, BigInteger cardNumber, BigDecimal paymentAmount) {
+        CreditCardProcessRequest request = new CreditCardProcessRequest(orderId, cardNumber, paymentAmount);
+        if (batcher == null) {
+            return post(PROCESS_ENDPOINT, request).thenApply(response -> null);
+        }
+        return batcher.add(request).thenAccept(result -> {
+            if (Outcome.forStatus(result.getStatus()) == Outcome.CLIENT_ERROR) {
+                throw new CreditCardDeclinedException(result.getStatus(), result.getError());
+            }
+            if (result.getStatus() / 100 != 2) {
+                throw new CreditCardProcessorUnavailableException(new IllegalStateException(
+                        "Credit card processor answered " + result.getStatus() + ": " + result.getError()));
+            }
+        });
+    }
+
+    /**
+     * Refunds are rare and never batched; they go through the circuit breaker and are recorded like payments.
+     */
     @Override
-    public void process(BigInteger cardNumber, BigDecimal paymentAmount) {
+    public CompletableFuture<Void> refund(UUID orderId, BigInteger cardNumber, BigDecimal paymentAmount) {
+        return post(REFUND_ENDPOINT, new CreditCardProcessRequest(orderId, cardNumber, paymentAmount))
+                .thenApply(response -> null);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (batcher != null) {
+            batcher.sendPending();
+            batchScheduler.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<List<CreditCardProcessResult>> processBatch(List<CreditCardProcessRequest> requests) {
+        batchSizes.record(requests.size());
+        return post(PROCESS_BATCH_ENDPOINT, new CreditCardProcessBatchRequest(requests)).thenApply(response -> {
+            try {
+                return objectMapper.readValue(response.getBodyBytes(), CreditCardProcessBatchResponse.class)
+                        .getResults();
+            } catch (IOException e) {
+                throw new CreditCardProcessorUnavailableException(e);
+            }
+        });
+    }
+
+    private CompletableFuture<SimpleHttpResponse> post(String endpoint, Object body) {
+        byte[] content;
         try {
-            var request = new CreditCardProcessRequest(cardNumber, paymentAmount);
-            restTemplate.postForObject(ccpRemoteServiceUrl + "/ccp/process", request, CreditCardProcessRequest.class);
-        } catch (ResourceAccessException e) {
-            throw new CreditCardProcessorUnavailableException(e);
+            content = objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return CompletableFuture.failedFuture(new CreditCardProcessorUnavailableException(
+                    new IllegalStateException("Circuit to the credit card processor is open")));
         }
+        SimpleHttpRequest request = SimpleRequestBuilder.post(URI.create(ccpRemoteServiceUrl + endpoint))
+                .setBody(content, ContentType.APPLICATION_JSON)
+                .build();
+        CompletableFuture<SimpleHttpResponse> answered = new CompletableFuture<>();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        httpClient.execute(request, new FutureCallback<>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                Outcome outcome = Outcome.forStatus(response.getCode());
+                sample.stop(requestsTimer(endpoint, outcome.name(), String.valueOf(response.getCode()), NO_EXCEPTION));
+                if (outcome == Outcome.SERVER_ERROR) {
+                    circuitBreaker.onFailure();
+                } else {
+                    circuitBreaker.onSuccess();
+                }
+                if (outcome == Outcome.SUCCESS) {
+                    completionExecutor.execute(() -> answered.complete(response));
+                } else if (outcome == Outcome.CLIENT_ERROR) {
+                    CreditCardDeclinedException declined =
+                            new CreditCardDeclinedException(response.getCode(), response.getBodyText());
+                    completionExecutor.execute(() -> answered.completeExceptionally(declined));
+                } else {
+                    fail(answered, new IllegalStateException("Credit card processor answered " + response.getCode()));
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                sample.stop(requestsTimer(endpoint, Outcome.UNKNOWN.name(), NO_RESPONSE, e.getClass().getSimpleName()));
+                circuitBreaker.onFailure();
+                fail(answered, e);
+            }
+
+            @Override
+            public void cancelled() {
+                sample.stop(requestsTimer(endpoint, Outcome.UNKNOWN.name(), NO_RESPONSE, "CancellationException"));
+                circuitBreaker.onFailure();
+                fail(answered, new IllegalStateException("Request to the credit card processor was cancelled"));
+            }
+        });
+        return answered;
+    }
+
+    private void fail(CompletableFuture<SimpleHttpResponse> answered, Exception cause) {
+        completionExecutor.execute(() -> answered.completeExceptionally(
+                new CreditCardProcessorUnavailableException(cause)));
+    }
+
+    private Timer requestsTimer(String endpoint, String outcome, String status, String exception) {
+        return Timer.builder("ccp.client.requests")
+                .description("Requests to the credit card processor")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .tag("status", status)
+                .tag("exception", exception)
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 }
@@ -3,9 +3,27 @@ package com.appsdeveloperblog.payments.service;
 import com.appsdeveloperblog.core.dto.Payment;
 
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public interface PaymentService {
+    /**
+     * @return the orders that are paid, without those still being charged
+     */
     List<Payment> findAll();
 
-    Payment process(Payment payment);
+    /**
+     * Charges the card at most once per order: when the order was already paid, its stored payment is returned
+     * without calling the credit card processor.
+     *
+     * @return completes with the stored payment once the card was charged
+     */
+    CompletableFuture<Payment> process(Payment payment);
+
+    /**
+     * Gives back the payment of the order. An order that is not paid, or already refunded, is left as it is.
+     *
+     * @return completes once the credit card processor refunded the payment
+     */
+    CompletableFuture<Void> refund(UUID orderId);
 }
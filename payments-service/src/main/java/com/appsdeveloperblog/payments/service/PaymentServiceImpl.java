@@ -2,49 +2,120 @@ package com.appsdeveloperblog.payments.service;
 
 import com.appsdeveloperblog.core.dto.Payment;
 import com.appsdeveloperblog.payments.dao.jpa.entity.PaymentEntity;
+import com.appsdeveloperblog.payments.dao.jpa.entity.PaymentStatus;
 import com.appsdeveloperblog.payments.dao.jpa.repository.PaymentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
+/**
+ * The payments table holds at most one payment per order. Before the card is charged the order is looked up in a
+ * bounded LRU cache of recently processed payments, so a redelivered command is answered with the stored payment
+ * and does not reach the credit card processor again. Otherwise the order is claimed with a {@code PENDING} row
+ * under its unique order id, the card is charged and the row is marked {@code PAID}.
+ * <p>
+ * A row left pending, by an attempt that failed or crashed after the claim or by another consumer charging the same
+ * order right now, is charged again with its stored amount. The processor takes the order id as idempotency key and
+ * answers such a repeated charge without charging the card twice.
+ * <p>
+ * A refunded payment keeps its row, so a command delivered again after the refund does not charge the order anew.
+ */
 @Service
 public class PaymentServiceImpl implements PaymentService {
     public static final String SAMPLE_CREDIT_CARD_NUMBER = "374245455400126";
+    private final Logger logger = LoggerFactory.getLogger(PaymentServiceImpl.class);
     private final CreditCardProcessorRemoteService ccpRemoteService;
     private final PaymentRepository paymentRepository;
+    private final Map<UUID, Payment> processedPayments;
 
     @Override
-    public Payment process(Payment payment) {
-
-        BigDecimal totalPrice = payment.getProductPrice()
-                .multiply(new BigDecimal(payment.getProductQuantity()));
-        ccpRemoteService.process(new BigInteger(SAMPLE_CREDIT_CARD_NUMBER), totalPrice);
-        PaymentEntity paymentEntity = new PaymentEntity();
-        BeanUtils.copyProperties(payment, paymentEntity);
-        paymentRepository.save(paymentEntity);
+    public CompletableFuture<Payment> process(Payment payment) {
+        Payment processedPayment = processedPayments.get(payment.getOrderId());
+        if (processedPayment == null) {
+            PaymentEntity claim = claim(payment);
+            if (claim.getStatus() == PaymentStatus.PENDING) {
+                return ccpRemoteService.process(claim.getOrderId(), new BigInteger(SAMPLE_CREDIT_CARD_NUMBER),
+                                claim.getAmount())
+                        .thenApply(charged -> markPaid(claim));
+            }
+            processedPayment = remember(claim);
+        }
+        logger.info("**** Order {} is already paid by payment {}", payment.getOrderId(), processedPayment.getId());
+        return CompletableFuture.completedFuture(processedPayment);
+    }
 
-        var processedPayment = new Payment();
-        BeanUtils.copyProperties(payment, processedPayment);
-        processedPayment.setId(paymentEntity.getId());
-        return processedPayment;
+    @Override
+    public CompletableFuture<Void> refund(UUID orderId) {
+        PaymentEntity paymentEntity = paymentRepository.findByOrderId(orderId).orElse(null);
+        if (paymentEntity == null || paymentEntity.getStatus() != PaymentStatus.PAID) {
+            logger.info("**** Order {} has no payment to refund", orderId);
+            return CompletableFuture.completedFuture(null);
+        }
+        return ccpRemoteService.refund(orderId, new BigInteger(SAMPLE_CREDIT_CARD_NUMBER), paymentEntity.getAmount())
+                .thenAccept(refunded -> {
+                    paymentEntity.setStatus(PaymentStatus.REFUNDED);
+                    paymentRepository.save(paymentEntity);
+                    processedPayments.remove(orderId);
+                });
     }
 
     public PaymentServiceImpl(PaymentRepository paymentRepository,
-                              CreditCardProcessorRemoteService ccpRemoteService) {
+                              CreditCardProcessorRemoteService ccpRemoteService,
+                              @Value("${payments.processed.cache.max-size}") int maxProcessedPayments) {
         this.paymentRepository = paymentRepository;
         this.ccpRemoteService = ccpRemoteService;
+        this.processedPayments = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Payment> eldest) {
+                return size() > maxProcessedPayments;
+            }
+        });
     }
 
     @Override
     public List<Payment> findAll() {
-        return paymentRepository.findAll().stream().map(entity -> new Payment(entity.getId(), entity.getOrderId(), entity.getProductId(), entity.getProductPrice(), entity.getProductQuantity())
+        return paymentRepository.findByStatus(PaymentStatus.PAID).stream().map(entity -> new Payment(entity.getId(), entity.getOrderId(), entity.getAmount())
         ).collect(Collectors.toList());
     }
-}
 
+    private PaymentEntity claim(Payment payment) {
+        Optional<PaymentEntity> claimed = paymentRepository.findByOrderId(payment.getOrderId());
+        if (claimed.isPresent()) {
+            return claimed.get();
+        }
+        PaymentEntity paymentEntity = new PaymentEntity();
+        BeanUtils.copyProperties(payment, paymentEntity);
+        paymentEntity.setStatus(PaymentStatus.PENDING);
+        try {
+            return paymentRepository.save(paymentEntity);
+        } catch (DataIntegrityViolationException e) {
+            // another consumer claimed the same order in the meantime, e.g. before a rebalance
+            return paymentRepository.findByOrderId(payment.getOrderId()).orElseThrow(() -> e);
+        }
+    }
 
+    private Payment markPaid(PaymentEntity paymentEntity) {
+        paymentEntity.setStatus(PaymentStatus.PAID);
+        paymentRepository.save(paymentEntity);
+        return remember(paymentEntity);
+    }
 
+    private Payment remember(PaymentEntity paymentEntity) {
+        Payment processedPayment = new Payment(paymentEntity.getId(), paymentEntity.getOrderId(), paymentEntity.getAmount());
+        processedPayments.put(processedPayment.getOrderId(), processedPayment);
+        return processedPayment;
+    }
+}
@@ -0,0 +1,82 @@
+package com.appsdeveloperblog.payments.service.handler;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Payments started by {@link PaymentsCommandsHandler} that have not finished yet. Each payments-commands
+ * partition runs up to {@code payments.in-flight.max-per-partition} of them at a time, the listener thread waits
+ * for a free slot before it takes the next command. Payments of the same order run one after the other in the
+ * order their commands arrived.
+ * <p>
+ * Registered as the container's rebalance listener: before the offsets of revoked partitions are committed, the
+ * payments still running on them are waited for, so their acknowledgments are part of that commit.
+ */
+@Component
+public class InFlightPayments implements ConsumerAwareRebalanceListener {
+    private final Logger logger = LoggerFactory.getLogger(InFlightPayments.class);
+    private final Map<Integer, Semaphore> slots = new ConcurrentHashMap<>();
+    private final Map<UUID, CompletableFuture<?>> lastByOrder = new ConcurrentHashMap<>();
+    private final int maxPerPartition;
+    private final long drainTimeoutMs;
+
+    public InFlightPayments(@Value("${payments.in-flight.max-per-partition}") int maxPerPartition,
+                            @Value("${payments.in-flight.drain-timeout-ms}") long drainTimeoutMs) {
+        this.maxPerPartition = maxPerPartition;
+        this.drainTimeoutMs = drainTimeoutMs;
+    }
+
+    /**
+     * Starts {@code payment} once the partition has a free slot and the previous payment of the order has
+     * finished.
+     */
+    public void submit(int partition, UUID orderId, Supplier<CompletableFuture<?>> payment)
+            throws InterruptedException {
+        Semaphore partitionSlots = slotsOf(partition);
+        partitionSlots.acquire();
+        CompletableFuture<Void> finished = new CompletableFuture<>();
+        CompletableFuture<?> previous = lastByOrder.put(orderId, finished);
+        CompletableFuture<?> turn = previous == null ? CompletableFuture.completedFuture(null) : previous;
+        turn.thenCompose(ready -> payment.get()).whenComplete((result, e) -> {
+            lastByOrder.remove(orderId, finished);
+            partitionSlots.release();
+            finished.complete(null);
+        });
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            Semaphore partitionSlots = slotsOf(partition.partition());
+            try {
+                if (partitionSlots.tryAcquire(maxPerPartition, drainTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    partitionSlots.release(maxPerPartition);
+                } else {
+                    logger.warn("**** Payments of partition {} still running after {} ms, their commands will be "
+                            + "delivered again", partition.partition(), drainTimeoutMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private Semaphore slotsOf(int partition) {
+        return slots.computeIfAbsent(partition, p -> new Semaphore(maxPerPartition));
+    }
+}
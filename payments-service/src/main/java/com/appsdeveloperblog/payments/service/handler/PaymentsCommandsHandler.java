@@ -1,61 +1,240 @@
 package com.appsdeveloperblog.payments.service.handler;
 
+import com.appsdeveloperblog.core.dto.OrderLineItem;
 import com.appsdeveloperblog.core.dto.Payment;
+import com.appsdeveloperblog.core.dto.SagaMessage;
 import com.appsdeveloperblog.core.dto.commands.ProcessPaymentCommand;
+import com.appsdeveloperblog.core.dto.commands.RefundPaymentCommand;
 import com.appsdeveloperblog.core.dto.events.PaymentProcessedEvent;
 import com.appsdeveloperblog.core.dto.events.PaymentsFailedEvent;
+import com.appsdeveloperblog.core.exceptions.CreditCardDeclinedException;
 import com.appsdeveloperblog.core.exceptions.CreditCardProcessorUnavailableException;
+import com.appsdeveloperblog.core.metrics.SagaTiming;
 import com.appsdeveloperblog.payments.service.PaymentService;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaHandler;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
+import org.springframework.util.backoff.BackOff;
+import org.springframework.util.backoff.BackOffExecution;
+import org.springframework.util.backoff.FixedBackOff;
 
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Starts each payment and returns to the next command while the card is being charged, see
+ * {@link InFlightPayments}. A command is acknowledged once its event was accepted by the broker; the container
+ * commits offsets only up to the oldest command not acknowledged yet. No more payments are started than
+ * {@link ProcessorConcurrencyLimit} allows.
+ * <p>
+ * A payment that fails for any other reason than the processor, a payment that could not be saved or an event
+ * the broker did not take, is not acknowledged but tried again every {@code payments.retry.interval-ms}, as the
+ * container's error handler would retry a failed record. Payments are charged at most once per order, so a retry
+ * only sends the event of a payment that went through. After {@code payments.retry.max-attempts} the command is
+ * skipped and the order's saga deadline takes over.
+ */
 @Component
 @KafkaListener(topics="${payments.commands.topic.name}")
 public class PaymentsCommandsHandler {
     private static Logger logger = LoggerFactory.getLogger(PaymentsCommandsHandler.class);
     private final PaymentService paymentService;
+    private final InFlightPayments inFlightPayments;
+    private final ProcessorConcurrencyLimit concurrencyLimit;
     private final KafkaTemplate<String, Object> paymentKafkaTemplate;
     private final String paymentsEventsTopicName;
+    private final BackOff retryBackOff;
+    private final ScheduledExecutorService retryScheduler;
 
     public PaymentsCommandsHandler(PaymentService paymentService,
+                                   InFlightPayments inFlightPayments,
+                                   ProcessorConcurrencyLimit concurrencyLimit,
                                    KafkaTemplate<String, Object> paymentKafkaTemplate,
-                                   @Value("${payments.events.topic.name}") String paymentsEventsTopicName) {
+                                   @Value("${payments.events.topic.name}") String paymentsEventsTopicName,
+                                   @Value("${payments.retry.interval-ms}") long retryIntervalMs,
+                                   @Value("${payments.retry.max-attempts}") int retryMaxAttempts) {
         this.paymentService = paymentService;
+        this.inFlightPayments = inFlightPayments;
+        this.concurrencyLimit = concurrencyLimit;
         this.paymentKafkaTemplate = paymentKafkaTemplate;
         this.paymentsEventsTopicName = paymentsEventsTopicName;
+        this.retryBackOff = new FixedBackOff(retryIntervalMs, retryMaxAttempts - 1L);
+        // waits for the concurrency limit before each retry, which must not hold up the threads completing payments
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "payments-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @KafkaHandler
-    public void handleCommand(@Payload ProcessPaymentCommand command) {
+    public void handleCommand(@Payload ProcessPaymentCommand command,
+                              @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                              Acknowledgment acknowledgment) throws InterruptedException {
+        // the events are sent from another thread, which does not know the saga origin of this record
+        Long origin = SagaTiming.currentOrigin();
+        concurrencyLimit.acquire();
+        try {
+            submit(command.getOrderId(), partition, acknowledgment,
+                    () -> process(command).thenCompose(event -> send(event, origin)));
+        } catch (InterruptedException e) {
+            concurrencyLimit.release(false);
+            throw e;
+        }
+    }
 
+    /**
+     * Refunds run like payments, after the order's payment and with the same retries, so a refund that finds the
+     * processor unavailable is tried again. A refund the processor refuses is only logged.
+     */
+    @KafkaHandler
+    public void handleCommand(@Payload RefundPaymentCommand command,
+                              @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                              Acknowledgment acknowledgment) throws InterruptedException {
+        concurrencyLimit.acquire();
         try {
-            Payment payment = new Payment(command.getOrderId(),
-                    command.getProductId(),
-                    command.getProductPrice(),
-                    command.getProductQuantity());
-            Payment processedPayment = paymentService.process(payment);
-            PaymentProcessedEvent paymentProcessedEvent = new PaymentProcessedEvent(
-                    processedPayment.getOrderId(),
-                    processedPayment.getId()
-            );
-            logger.info("**** Payment processed event created for order id: " + command.getOrderId());
-            paymentKafkaTemplate.send(paymentsEventsTopicName, paymentProcessedEvent);
-            logger.info("**** Payment processed event sent to topic for order id: " + command.getOrderId());
-
-        } catch (CreditCardProcessorUnavailableException ex) {
-            logger.error(ex.getLocalizedMessage(), ex);
-            PaymentsFailedEvent paymentsFailedEvent = new PaymentsFailedEvent(command.getOrderId(),
-                    command.getProductId(),
-                    command.getProductQuantity());
-            paymentKafkaTemplate.send(paymentsEventsTopicName, paymentsFailedEvent);
+            submit(command.getOrderId(), partition, acknowledgment, () -> refund(command));
+        } catch (InterruptedException e) {
+            concurrencyLimit.release(false);
+            throw e;
         }
+    }
 
+    @PreDestroy
+    public void close() {
+        retryScheduler.shutdownNow();
+    }
 
+    private void submit(UUID orderId, int partition, Acknowledgment acknowledgment,
+                        Supplier<CompletableFuture<?>> payment) throws InterruptedException {
+        inFlightPayments.submit(partition, orderId, () -> attempt(orderId, payment, retryBackOff.start())
+                .whenComplete((result, ex) -> {
+                    if (ex instanceof CancellationException) {
+                        logger.info("**** Payment of order id: " + orderId + " left to be delivered again");
+                        return;
+                    }
+                    if (ex != null) {
+                        // an order without payment event is rejected by its saga deadline
+                        logger.error("**** Gave up on the command of order id: " + orderId, ex);
+                    }
+                    acknowledgment.acknowledge();
+                }));
+    }
+
+    // the first attempt holds the concurrency permit taken by the listener thread, every retry takes its own
+    private CompletableFuture<Void> attempt(UUID orderId, Supplier<CompletableFuture<?>> payment,
+                                            BackOffExecution retries) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        payment.get().whenComplete((result, ex) -> {
+            if (ex == null) {
+                done.complete(null);
+                return;
+            }
+            long intervalMs = retries.nextBackOff();
+            if (intervalMs == BackOffExecution.STOP) {
+                done.completeExceptionally(ex);
+                return;
+            }
+            logger.warn("**** Payment of order id: " + orderId + " failed, trying again in "
+                    + intervalMs + " ms", ex);
+            try {
+                retryScheduler.schedule(() -> {
+                    try {
+                        concurrencyLimit.acquire();
+                    } catch (InterruptedException e) {
+                        done.cancel(false);
+                        return;
+                    }
+                    attempt(orderId, payment, retries).whenComplete((retried, retryEx) -> {
+                        if (retryEx == null) {
+                            done.complete(null);
+                        } else {
+                            done.completeExceptionally(retryEx);
+                        }
+                    });
+                }, intervalMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shutting down, the command is delivered again after the restart
+                done.cancel(false);
+            }
+        });
+        return done;
+    }
+
+    private CompletableFuture<SagaMessage> process(ProcessPaymentCommand command) {
+        return CompletableFuture.completedFuture(command)
+                .thenApply(c -> new Payment(c.getOrderId(), amountOf(c.getLineItems())))
+                .thenCompose(paymentService::process)
+                .handle((processedPayment, ex) -> {
+                    Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                    concurrencyLimit.release(cause instanceof CreditCardProcessorUnavailableException);
+                    if (ex == null) {
+                        logger.info("**** Payment processed event created for order id: " + command.getOrderId());
+                        return new PaymentProcessedEvent(processedPayment.getOrderId(), processedPayment.getId());
+                    }
+                    if (cause instanceof CreditCardDeclinedException) {
+                        logger.warn("**** Payment of order id: " + command.getOrderId() + " declined: "
+                                + cause.getLocalizedMessage());
+                        return new PaymentsFailedEvent(command.getOrderId(), command.getLineItems());
+                    }
+                    if (!(cause instanceof CreditCardProcessorUnavailableException)) {
+                        throw new CompletionException(cause);
+                    }
+                    logger.error(cause.getLocalizedMessage(), cause);
+                    return new PaymentsFailedEvent(command.getOrderId(), command.getLineItems());
+                });
+    }
+
+    private CompletableFuture<Void> refund(RefundPaymentCommand command) {
+        return CompletableFuture.completedFuture(command.getOrderId())
+                .thenCompose(paymentService::refund)
+                .handle((refunded, ex) -> {
+                    Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                    concurrencyLimit.release(cause instanceof CreditCardProcessorUnavailableException);
+                    if (ex == null) {
+                        logger.info("**** Payment of order id: " + command.getOrderId() + " refunded");
+                        return null;
+                    }
+                    if (!(cause instanceof CreditCardDeclinedException)) {
+                        throw new CompletionException(cause);
+                    }
+                    logger.error("**** Refund of order id: " + command.getOrderId() + " declined: "
+                            + cause.getLocalizedMessage());
+                    return null;
+                });
+    }
+
+    private CompletableFuture<?> send(SagaMessage event, Long origin) {
+        ProducerRecord<String, Object> record = new ProducerRecord<>(paymentsEventsTopicName, event.key(), event);
+        if (origin != null) {
+            SagaTiming.writeTimestamp(record.headers(), SagaTiming.ORIGIN_HEADER, origin);
+        }
+        return paymentKafkaTemplate.send(record);
+    }
+
+    private static BigDecimal amountOf(List<OrderLineItem> lineItems) {
+        BigDecimal amount = BigDecimal.ZERO;
+        for (OrderLineItem lineItem : lineItems) {
+            amount = amount.add(lineItem.getProductPrice().multiply(new BigDecimal(lineItem.getProductQuantity())));
+        }
+        return amount;
     }
 }
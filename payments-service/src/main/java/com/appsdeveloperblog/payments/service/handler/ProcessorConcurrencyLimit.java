@@ -0,0 +1,99 @@
+package com.appsdeveloperblog.payments.service.handler;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * How many payments may be charged at once across all partitions, adapted to what the credit card processor
+ * keeps up with (additive increase, multiplicative decrease). Every payment that found the processor unavailable,
+ * a timeout, a failed connection, a 5xx answer or an open circuit, multiplies the limit by
+ * {@code payments.ccp.limit.backoff-ratio}; every other payment finished while the limit was in use raises it by
+ * {@code 1 / limit}, about one per round trip. A declined payment is such an other payment: the processor
+ * answered it in time. The limit stays between
+ * {@code payments.ccp.limit.min} and {@code payments.ccp.limit.max}.
+ * <p>
+ * The listener thread waits in {@link #acquire()} while the limit is reached, so commands wait in Kafka instead of
+ * in memory.
+ */
+@Component
+public class ProcessorConcurrencyLimit {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private double limit;
+    private int inFlight;
+
+    public ProcessorConcurrencyLimit(@Value("${payments.ccp.limit.initial}") int initialLimit,
+                                     @Value("${payments.ccp.limit.min}") int minLimit,
+                                     @Value("${payments.ccp.limit.max}") int maxLimit,
+                                     @Value("${payments.ccp.limit.backoff-ratio}") double backoffRatio,
+                                     MeterRegistry meterRegistry) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.limit = initialLimit;
+        Gauge.builder("ccp.client.concurrency.limit", this, ProcessorConcurrencyLimit::getLimit)
+                .description("Payments that may be charged at once")
+                .register(meterRegistry);
+        Gauge.builder("ccp.client.concurrency.in-flight", this, ProcessorConcurrencyLimit::getInFlight)
+                .description("Payments being charged")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Waits until one more payment may be charged; every call must be followed by exactly one
+     * {@link #release(boolean)}.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                released.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(boolean processorUnavailable) {
+        lock.lock();
+        try {
+            if (processorUnavailable) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (inFlight * 2 >= limit) {
+                // only a limit that is actually used says the processor keeps up with more
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            inFlight--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
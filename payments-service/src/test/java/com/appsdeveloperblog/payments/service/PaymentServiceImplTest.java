@@ -0,0 +1,142 @@
+package com.appsdeveloperblog.payments.service;
+
+import com.appsdeveloperblog.core.dto.Payment;
+import com.appsdeveloperblog.core.exceptions.CreditCardDeclinedException;
+import com.appsdeveloperblog.payments.dao.jpa.entity.PaymentEntity;
+import com.appsdeveloperblog.payments.dao.jpa.entity.PaymentStatus;
+import com.appsdeveloperblog.payments.dao.jpa.repository.PaymentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentServiceImplTest {
+    private final UUID orderId = UUID.randomUUID();
+    private final BigDecimal amount = new BigDecimal("42.00");
+    private final Map<UUID, PaymentEntity> rowsByOrder = new HashMap<>();
+    private final PaymentRepository paymentRepository = mock(PaymentRepository.class);
+    private final CreditCardProcessorRemoteService ccpRemoteService = mock(CreditCardProcessorRemoteService.class);
+    private PaymentServiceImpl paymentService;
+
+    @BeforeEach
+    void setUp() {
+        when(paymentRepository.findByOrderId(any()))
+                .thenAnswer(invocation -> Optional.ofNullable(rowsByOrder.get(invocation.<UUID>getArgument(0))));
+        doAnswer(invocation -> {
+            PaymentEntity row = invocation.getArgument(0);
+            if (row.getId() == null) {
+                row.setId(UUID.randomUUID());
+            }
+            rowsByOrder.put(row.getOrderId(), row);
+            return row;
+        }).when(paymentRepository).save(any());
+        when(ccpRemoteService.process(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(ccpRemoteService.refund(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        paymentService = new PaymentServiceImpl(paymentRepository, ccpRemoteService, 100);
+    }
+
+    @Test
+    void claimsTheOrderChargesItAndMarksItPaid() {
+        Payment payment = paymentService.process(new Payment(orderId, amount)).join();
+
+        verify(ccpRemoteService).process(eq(orderId), any(), eq(amount));
+        assertThat(rowsByOrder.get(orderId).getStatus()).isEqualTo(PaymentStatus.PAID);
+        assertThat(payment.getId()).isEqualTo(rowsByOrder.get(orderId).getId());
+    }
+
+    @Test
+    void answersARedeliveredCommandWithTheStoredPayment() {
+        Payment first = paymentService.process(new Payment(orderId, amount)).join();
+        Payment again = paymentService.process(new Payment(orderId, amount)).join();
+
+        verify(ccpRemoteService, times(1)).process(any(), any(), any());
+        assertThat(again.getId()).isEqualTo(first.getId());
+    }
+
+    @Test
+    void doesNotChargeAPaidOrderMissingFromTheCache() {
+        paymentService.process(new Payment(orderId, amount)).join();
+        PaymentServiceImpl restarted = new PaymentServiceImpl(paymentRepository, ccpRemoteService, 100);
+
+        Payment again = restarted.process(new Payment(orderId, amount)).join();
+
+        verify(ccpRemoteService, times(1)).process(any(), any(), any());
+        assertThat(again.getId()).isEqualTo(rowsByOrder.get(orderId).getId());
+    }
+
+    @Test
+    void chargesAPendingClaimAgainWithItsStoredAmount() {
+        store(PaymentStatus.PENDING, amount);
+
+        paymentService.process(new Payment(orderId, new BigDecimal("1.00"))).join();
+
+        verify(ccpRemoteService).process(eq(orderId), any(), eq(amount));
+        assertThat(rowsByOrder.get(orderId).getStatus()).isEqualTo(PaymentStatus.PAID);
+    }
+
+    @Test
+    void takesTheClaimOfAnotherConsumerThatWonTheInsert() {
+        doThrow(new DataIntegrityViolationException("payments.order_id")).when(paymentRepository).save(any());
+        when(paymentRepository.findByOrderId(orderId))
+                .thenReturn(Optional.empty())
+                .thenAnswer(invocation -> Optional.of(store(PaymentStatus.PAID, amount)));
+
+        Payment payment = paymentService.process(new Payment(orderId, amount)).join();
+
+        verify(ccpRemoteService, never()).process(any(), any(), any());
+        assertThat(payment.getId()).isEqualTo(rowsByOrder.get(orderId).getId());
+    }
+
+    @Test
+    void leavesADeclinedClaimPendingAndUncached() {
+        when(ccpRemoteService.process(any(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new CreditCardDeclinedException(402, "declined")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        assertThat(paymentService.process(new Payment(orderId, amount))).isCompletedExceptionally();
+        assertThat(rowsByOrder.get(orderId).getStatus()).isEqualTo(PaymentStatus.PENDING);
+
+        paymentService.process(new Payment(orderId, amount)).join();
+        verify(ccpRemoteService, times(2)).process(eq(orderId), any(), eq(amount));
+        assertThat(rowsByOrder.get(orderId).getStatus()).isEqualTo(PaymentStatus.PAID);
+    }
+
+    @Test
+    void doesNotChargeARefundedOrderAgain() {
+        paymentService.process(new Payment(orderId, amount)).join();
+        paymentService.refund(orderId).join();
+
+        paymentService.process(new Payment(orderId, amount)).join();
+
+        verify(ccpRemoteService, times(1)).process(any(), any(), any());
+        verify(ccpRemoteService).refund(eq(orderId), any(), eq(amount));
+        assertThat(rowsByOrder.get(orderId).getStatus()).isEqualTo(PaymentStatus.REFUNDED);
+    }
+
+    private PaymentEntity store(PaymentStatus status, BigDecimal storedAmount) {
+        PaymentEntity row = new PaymentEntity();
+        row.setId(UUID.randomUUID());
+        row.setOrderId(orderId);
+        row.setAmount(storedAmount);
+        row.setStatus(status);
+        rowsByOrder.put(orderId, row);
+        return row;
+    }
+}
@@ -0,0 +1,129 @@
+package com.appsdeveloperblog.payments.service.handler;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InFlightPaymentsTest {
+    private static final String TOPIC = "payments-commands";
+
+    private final InFlightPayments inFlightPayments = new InFlightPayments(2, 5000);
+
+    @Test
+    void runsPaymentsOfOneOrderInArrivalOrder() throws InterruptedException {
+        UUID orderId = UUID.randomUUID();
+        List<String> started = new ArrayList<>();
+        CompletableFuture<Void> first = new CompletableFuture<>();
+
+        inFlightPayments.submit(0, orderId, () -> {
+            started.add("first");
+            return first;
+        });
+        inFlightPayments.submit(0, orderId, () -> {
+            started.add("second");
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertThat(started).containsExactly("first");
+        first.complete(null);
+        assertThat(started).containsExactly("first", "second");
+    }
+
+    @Test
+    void runsPaymentsOfDifferentOrdersSideBySide() throws InterruptedException {
+        List<UUID> started = new ArrayList<>();
+        UUID firstOrder = UUID.randomUUID();
+        UUID secondOrder = UUID.randomUUID();
+
+        inFlightPayments.submit(0, firstOrder, () -> {
+            started.add(firstOrder);
+            return new CompletableFuture<>();
+        });
+        inFlightPayments.submit(0, secondOrder, () -> {
+            started.add(secondOrder);
+            return new CompletableFuture<>();
+        });
+
+        assertThat(started).containsExactly(firstOrder, secondOrder);
+    }
+
+    @Test
+    void runsTheNextPaymentOfAnOrderAfterAFailedOne() throws InterruptedException {
+        UUID orderId = UUID.randomUUID();
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+
+        inFlightPayments.submit(0, orderId, () -> first);
+        inFlightPayments.submit(0, orderId, () -> second);
+        first.completeExceptionally(new IllegalStateException("card declined"));
+
+        assertThat(second).isNotDone();
+        second.complete(null);
+        assertDrained(0);
+    }
+
+    @Test
+    void waitsForAFreeSlotOfThePartition() throws InterruptedException {
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        inFlightPayments.submit(0, UUID.randomUUID(), () -> first);
+        inFlightPayments.submit(0, UUID.randomUUID(), CompletableFuture::new);
+        inFlightPayments.submit(1, UUID.randomUUID(), CompletableFuture::new);
+
+        CountDownLatch third = new CountDownLatch(1);
+        Thread listener = new Thread(() -> {
+            try {
+                inFlightPayments.submit(0, UUID.randomUUID(), () -> {
+                    third.countDown();
+                    return CompletableFuture.completedFuture(null);
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        listener.start();
+
+        assertThat(third.await(200, TimeUnit.MILLISECONDS)).isFalse();
+        first.complete(null);
+        assertThat(third.await(5, TimeUnit.SECONDS)).isTrue();
+        listener.join();
+    }
+
+    @Test
+    void drainsRevokedPartitionsBeforeTheirOffsetsAreCommitted() throws InterruptedException {
+        CompletableFuture<Void> payment = new CompletableFuture<>();
+        inFlightPayments.submit(0, UUID.randomUUID(), () -> payment);
+        CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS).execute(() -> payment.complete(null));
+
+        inFlightPayments.onPartitionsRevokedBeforeCommit(null, List.of(new TopicPartition(TOPIC, 0)));
+
+        assertThat(payment).isDone();
+        assertDrained(0);
+    }
+
+    @Test
+    void givesUpDrainingAfterTheTimeout() throws InterruptedException {
+        InFlightPayments impatient = new InFlightPayments(2, 100);
+        CompletableFuture<Void> payment = new CompletableFuture<>();
+        impatient.submit(0, UUID.randomUUID(), () -> payment);
+
+        long start = System.nanoTime();
+        impatient.onPartitionsRevokedBeforeCommit(null, List.of(new TopicPartition(TOPIC, 0)));
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isBetween(100L, 5000L);
+        assertThat(payment).isNotDone();
+    }
+
+    private void assertDrained(int partition) {
+        long start = System.nanoTime();
+        inFlightPayments.onPartitionsRevokedBeforeCommit(null, List.of(new TopicPartition(TOPIC, partition)));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+    }
+}
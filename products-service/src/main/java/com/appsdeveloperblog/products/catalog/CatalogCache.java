@@ -0,0 +1,70 @@
+package com.appsdeveloperblog.products.catalog;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of the most recently read catalog pages. Anything that changes a product row or a stripe
+ * clears it once its transaction has committed, and a page read before the clear is not cached after it.
+ */
+@Component
+public class CatalogCache {
+    private final Map<PageKey, CatalogPage> pages;
+    private long generation;
+
+    public CatalogCache(@Value("${products.catalog.cache.max-pages}") int maxPages) {
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageKey, CatalogPage> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    public CatalogPage get(UUID after, int limit, Supplier<CatalogPage> loader) {
+        PageKey key = new PageKey(after, limit);
+        long readGeneration;
+        synchronized (this) {
+            CatalogPage page = pages.get(key);
+            if (page != null) {
+                return page;
+            }
+            readGeneration = generation;
+        }
+        CatalogPage page = loader.get();
+        synchronized (this) {
+            if (generation == readGeneration) {
+                pages.put(key, page);
+            }
+        }
+        return page;
+    }
+
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    clear();
+                }
+            });
+        } else {
+            clear();
+        }
+    }
+
+    private synchronized void clear() {
+        generation++;
+        pages.clear();
+    }
+
+    private record PageKey(UUID after, int limit) {
+    }
+}
@@ -0,0 +1,31 @@
+package com.appsdeveloperblog.products.catalog;
+
+import com.appsdeveloperblog.core.dto.Product;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Products ordered by id, starting after the last id of the previous page.
+ *
+ * @param etag derived from the content alone, so every instance gives the same page the same tag
+ */
+public record CatalogPage(List<Product> products, String etag) {
+
+    public static CatalogPage of(List<Product> products) {
+        long hash = 1;
+        for (Product product : products) {
+            hash = 31 * hash + Objects.hash(product.getId(), product.getName(), product.getPrice(),
+                    product.getQuantity());
+        }
+        return new CatalogPage(List.copyOf(products), "\"" + Long.toHexString(hash) + "-" + products.size() + "\"");
+    }
+
+    /**
+     * @return id to continue after, null when this was the last page
+     */
+    public UUID nextAfter(int limit) {
+        return products.size() < limit ? null : products.get(products.size() - 1).getId();
+    }
+}
@@ -1,18 +1,28 @@
 package com.appsdeveloperblog.products.config;
 
+import com.appsdeveloperblog.core.metrics.SagaTimingRecordInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.orm.jpa.JpaTransactionManager;
 
 @Configuration
 public class KafkaConfig {
 
     @Value("${products.events.topic.name}")
     private String productsCommandsTopicName;
+    @Value("${products.stock.topic.name}")
+    private String productStockTopicName;
     private final static Integer TOPIC_REPLICATION_FACTOR = 3;
     private final static Integer TOPIC_PARTITION = 3;
 
@@ -21,6 +31,30 @@ public class KafkaConfig {
         return new KafkaTemplate<>(producerFactory);
     }
 
+    // kept explicitly so JPA still has a transaction manager when the Kafka one is enabled
+    @Bean
+    @Primary
+    JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+
+    // applied to the listener containers by the configurer below
+    @Bean
+    SagaTimingRecordInterceptor sagaTimingRecordInterceptor(MeterRegistry meterRegistry) {
+        return new SagaTimingRecordInterceptor(meterRegistry);
+    }
+
+    // one consumer thread per products-commands partition
+    @Bean
+    ConcurrentKafkaListenerContainerFactory<Object, Object> kafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> kafkaConsumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory);
+        factory.setConcurrency(TOPIC_PARTITION);
+        return factory;
+    }
+
     @Bean
     NewTopic createOrdersEventsTopic() {
         return TopicBuilder.name(productsCommandsTopicName)
@@ -28,4 +62,14 @@ public class KafkaConfig {
                 .replicas(TOPIC_REPLICATION_FACTOR)
                 .build();
     }
+
+    // compacted so a new consumer reading from the start ends up with the last quantity of every product
+    @Bean
+    NewTopic createProductStockTopic() {
+        return TopicBuilder.name(productStockTopicName)
+                .partitions(TOPIC_PARTITION)
+                .replicas(TOPIC_REPLICATION_FACTOR)
+                .compact()
+                .build();
+    }
 }
@@ -0,0 +1,29 @@
+package com.appsdeveloperblog.products.dao.jpa.entity;
+
+import jakarta.persistence.*;
+
+@Table(name = "inventory_checkpoints")
+@Entity
+public class InventoryCheckpointEntity {
+    @Id
+    @Column(name = "partition_number")
+    private Integer partitionNumber;
+    @Column(name = "last_offset")
+    private Long lastOffset;
+
+    public Integer getPartitionNumber() {
+        return partitionNumber;
+    }
+
+    public void setPartitionNumber(Integer partitionNumber) {
+        this.partitionNumber = partitionNumber;
+    }
+
+    public Long getLastOffset() {
+        return lastOffset;
+    }
+
+    public void setLastOffset(Long lastOffset) {
+        this.lastOffset = lastOffset;
+    }
+}
@@ -0,0 +1,132 @@
+package com.appsdeveloperblog.products.dao.jpa.entity;
+
+import com.appsdeveloperblog.products.inventory.ReservationStatus;
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Objects;
+import java.util.UUID;
+
+// expired holds are found by range over (partition, status, expiry), not by scanning the partition, and the most
+// recently written reservations of a partition by range over (partition, written at)
+@Table(name = "product_reservations", indexes = {
+        @Index(columnList = "partition_number, status, expires_at"),
+        @Index(columnList = "partition_number, written_at")})
+@Entity
+@IdClass(ProductReservationEntity.Key.class)
+public class ProductReservationEntity {
+    @Id
+    @Column(name = "order_id")
+    private UUID orderId;
+    @Id
+    @Column(name = "product_id")
+    private UUID productId;
+    @Column(name = "partition_number")
+    private Integer partitionNumber;
+    @Column(name = "quantity")
+    private Integer quantity;
+    @Column(name = "price")
+    private BigDecimal price;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status")
+    private ReservationStatus status;
+    @Column(name = "expires_at")
+    private Timestamp expiresAt;
+    @Column(name = "written_at")
+    private Timestamp writtenAt;
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(UUID orderId) {
+        this.orderId = orderId;
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public Integer getPartitionNumber() {
+        return partitionNumber;
+    }
+
+    public void setPartitionNumber(Integer partitionNumber) {
+        this.partitionNumber = partitionNumber;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public ReservationStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ReservationStatus status) {
+        this.status = status;
+    }
+
+    public Timestamp getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Timestamp expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Timestamp getWrittenAt() {
+        return writtenAt;
+    }
+
+    public void setWrittenAt(Timestamp writtenAt) {
+        this.writtenAt = writtenAt;
+    }
+
+    public static class Key implements Serializable {
+        private UUID orderId;
+        private UUID productId;
+
+        public Key() {
+        }
+
+        public Key(UUID orderId, UUID productId) {
+            this.orderId = orderId;
+            this.productId = productId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key key)) {
+                return false;
+            }
+            return Objects.equals(orderId, key.orderId) && Objects.equals(productId, key.productId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(orderId, productId);
+        }
+    }
+}
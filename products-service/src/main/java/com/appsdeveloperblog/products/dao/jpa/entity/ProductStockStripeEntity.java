@@ -0,0 +1,78 @@
+package com.appsdeveloperblog.products.dao.jpa.entity;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Share of a striped product's stock owned by one products-commands partition. The rest of its stock
+ * stays in the product row until a stripe borrows it.
+ */
+@Table(name = "product_stock_stripes")
+@Entity
+@IdClass(ProductStockStripeEntity.Key.class)
+public class ProductStockStripeEntity {
+    @Id
+    @Column(name = "product_id")
+    private UUID productId;
+    @Id
+    @Column(name = "partition_number")
+    private Integer partitionNumber;
+    @Column(name = "quantity")
+    private Integer quantity;
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public Integer getPartitionNumber() {
+        return partitionNumber;
+    }
+
+    public void setPartitionNumber(Integer partitionNumber) {
+        this.partitionNumber = partitionNumber;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public static class Key implements Serializable {
+        private UUID productId;
+        private Integer partitionNumber;
+
+        public Key() {
+        }
+
+        public Key(UUID productId, Integer partitionNumber) {
+            this.productId = productId;
+            this.partitionNumber = partitionNumber;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key key)) {
+                return false;
+            }
+            return Objects.equals(productId, key.productId) && Objects.equals(partitionNumber, key.partitionNumber);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(productId, partitionNumber);
+        }
+    }
+}
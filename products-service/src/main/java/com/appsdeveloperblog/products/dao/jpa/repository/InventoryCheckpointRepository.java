@@ -0,0 +1,9 @@
+package com.appsdeveloperblog.products.dao.jpa.repository;
+
+import com.appsdeveloperblog.products.dao.jpa.entity.InventoryCheckpointEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface InventoryCheckpointRepository extends JpaRepository<InventoryCheckpointEntity, Integer> {
+}
@@ -1,11 +1,46 @@
 package com.appsdeveloperblog.products.dao.jpa.repository;
 
+import com.appsdeveloperblog.core.dto.Product;
 import com.appsdeveloperblog.products.dao.jpa.entity.ProductEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface ProductRepository extends JpaRepository<ProductEntity, UUID> {
+
+    // read as DTOs, so paging through the catalog does not fill the persistence context
+    @Query("select new com.appsdeveloperblog.core.dto.Product(p.id, p.name, p.price, p.quantity) " +
+            "from ProductEntity p order by p.id")
+    List<Product> findFirstPage(Limit limit);
+
+    @Query("select new com.appsdeveloperblog.core.dto.Product(p.id, p.name, p.price, p.quantity) " +
+            "from ProductEntity p where p.id > :after order by p.id")
+    List<Product> findPageAfter(@Param("after") UUID after, Limit limit);
+
+    /**
+     * Takes {@code quantity} items out of stock in one statement, the database row lock makes concurrent
+     * reservations of the same product queue up instead of overwriting each other.
+     * @return number of updated rows, 0 when the product is unknown or has less than {@code quantity} left
+     */
+    @Modifying
+    @Transactional
+    @Query("update ProductEntity p set p.quantity = p.quantity - :quantity " +
+            "where p.id = :id and p.quantity >= :quantity")
+    int decrementQuantity(@Param("id") UUID id, @Param("quantity") int quantity);
+
+    /**
+     * @return number of updated rows, 0 when the product is unknown
+     */
+    @Modifying
+    @Transactional
+    @Query("update ProductEntity p set p.quantity = p.quantity + :quantity where p.id = :id")
+    int incrementQuantity(@Param("id") UUID id, @Param("quantity") int quantity);
 }
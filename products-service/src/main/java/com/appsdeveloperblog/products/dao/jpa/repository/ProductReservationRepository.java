@@ -0,0 +1,10 @@
+package com.appsdeveloperblog.products.dao.jpa.repository;
+
+import com.appsdeveloperblog.products.dao.jpa.entity.ProductReservationEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ProductReservationRepository
+        extends JpaRepository<ProductReservationEntity, ProductReservationEntity.Key> {
+}
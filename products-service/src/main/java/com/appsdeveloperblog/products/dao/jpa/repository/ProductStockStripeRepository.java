@@ -0,0 +1,26 @@
+package com.appsdeveloperblog.products.dao.jpa.repository;
+
+import com.appsdeveloperblog.products.dao.jpa.entity.ProductStockStripeEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ProductStockStripeRepository
+        extends JpaRepository<ProductStockStripeEntity, ProductStockStripeEntity.Key> {
+
+    @Query("select s.productId as productId, sum(s.quantity) as quantity " +
+            "from ProductStockStripeEntity s where s.productId in :productIds group by s.productId")
+    List<StripedQuantity> sumQuantities(@Param("productIds") Collection<UUID> productIds);
+
+    interface StripedQuantity {
+        UUID getProductId();
+
+        Long getQuantity();
+    }
+}
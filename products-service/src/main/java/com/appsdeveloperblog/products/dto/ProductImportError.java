@@ -0,0 +1,30 @@
+package com.appsdeveloperblog.products.dto;
+
+public class ProductImportError {
+    private long line;
+    private String message;
+
+    public ProductImportError() {
+    }
+
+    public ProductImportError(long line, String message) {
+        this.line = line;
+        this.message = message;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public void setLine(long line) {
+        this.line = line;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,45 @@
+package com.appsdeveloperblog.products.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. {@code errors} lists the first rejected rows only, {@code rejected} counts all of them.
+ */
+public class ProductImportResponse {
+    private long imported;
+    private long rejected;
+    private List<ProductImportError> errors;
+
+    public ProductImportResponse() {
+    }
+
+    public ProductImportResponse(long imported, long rejected, List<ProductImportError> errors) {
+        this.imported = imported;
+        this.rejected = rejected;
+        this.errors = errors;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public List<ProductImportError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<ProductImportError> errors) {
+        this.errors = errors;
+    }
+}
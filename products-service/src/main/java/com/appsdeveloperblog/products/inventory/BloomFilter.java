@@ -0,0 +1,66 @@
+package com.appsdeveloperblog.products.inventory;
+
+import java.util.UUID;
+
+/**
+ * Bloom filter over pairs of ids. {@link #mightContain} never answers false for a pair that was added, and
+ * answers true for a pair that was not with about the configured probability as long as no more than the
+ * expected number of pairs is added.
+ * <p>
+ * Not thread safe, callers serialize access.
+ */
+final class BloomFilter {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    BloomFilter(long expectedPairs, double falsePositiveRate) {
+        long expected = Math.max(1, expectedPairs);
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64))];
+        this.bitCount = bits.length * 64L;
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / expected * ln2));
+    }
+
+    void add(UUID first, UUID second) {
+        long h1 = h1(first, second);
+        long h2 = h2(first, second);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(UUID first, UUID second) {
+        long h1 = h1(first, second);
+        long h2 = h2(first, second);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // every half of both ids goes into both hashes, ids that share a half (sequential ones, or one order with
+    // many products) would otherwise agree on one of the hashes and set the same bit
+    private static long h1(UUID first, UUID second) {
+        return mix(first.getMostSignificantBits() ^ mix(first.getLeastSignificantBits()
+                ^ mix(second.getMostSignificantBits() ^ mix(second.getLeastSignificantBits()))));
+    }
+
+    private static long h2(UUID first, UUID second) {
+        return mix(second.getLeastSignificantBits() ^ mix(second.getMostSignificantBits()
+                ^ mix(first.getLeastSignificantBits() ^ mix(first.getMostSignificantBits() + GOLDEN_GAMMA)))) | 1;
+    }
+
+    // finalizer of SplitMix64, spreads the bits of random and sequential ids alike
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,14 @@
+package com.appsdeveloperblog.products.inventory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stock changes of the products of one partition made by the commands up to and including the one at
+ * {@code lastOffset}. {@code stripeStock} holds the changes of the partition's stripes of striped products,
+ * {@code reservations} the reservations recorded or changed by the same commands.
+ */
+public record InventoryCheckpoint(int partition, long lastOffset, Map<UUID, StockChange> stock,
+                                  Map<UUID, StockChange> stripeStock, List<Reservation> reservations) {
+}
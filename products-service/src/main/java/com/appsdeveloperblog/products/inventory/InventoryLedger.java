@@ -0,0 +1,410 @@
+package com.appsdeveloperblog.products.inventory;
+
+import com.appsdeveloperblog.products.dao.jpa.entity.ProductEntity;
+import com.appsdeveloperblog.products.dao.jpa.repository.ProductRepository;
+import com.appsdeveloperblog.products.service.InventoryCheckpointService;
+import com.appsdeveloperblog.products.service.StockStripeService;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stock of the products keyed to one products-commands partition. Product commands are keyed by the product of
+ * their first line item, so the partition's consumer thread decides the orders of its products in memory; the
+ * other line items of such an order are decided together with it by the ledgers of their own partitions, see
+ * {@link InventoryLedgers#reserve}. A product is read from the database the first time one of its commands
+ * arrives; changes go back in {@link #checkpoint} batches together with the offset of the last applied command.
+ * A checkpoint adds what moved to the stored stock rather than overwriting it, so stock put into the row by
+ * anyone else in the meantime is kept.
+ * <p>
+ * Every reservation is recorded per order and product and written with the same checkpoint as the stock,
+ * so a redelivered command is answered from its record without moving stock again, while commands replayed
+ * after a restart find neither their stock change nor their record and are applied once more. Records not
+ * yet written and the most recent written ones are kept in memory; Bloom filters over the partition's records
+ * tell a new order apart without a database lookup. The filters are rotated every
+ * {@code products.inventory.expected-reservations-per-partition} records, so only commands redelivered within
+ * the last one to two rotations are recognized; settled records older than that are pruned from the database.
+ * <p>
+ * A reservation holds its stock until the order is approved and confirms it, or until it is cancelled. Holds
+ * of sagas that never get that far expire: {@link #expireHolds} looks up the written holds past their expiry
+ * and gives their stock back in batches.
+ * <p>
+ * Commands for striped products are spread over all partitions by order, each partition then owns a stripe
+ * of the product's stock. A dry stripe borrows from the product row, and when that is empty as well, asks
+ * the other ledgers of this instance to give their stripes back first. Borrowing and giving back are written
+ * right away and never overlap with a checkpoint of the same ledger, so the stored stripe always matches
+ * the stored offset plus the moves made since.
+ * <p>
+ * The monitor serializes the consumer thread with the thread taking a checkpoint, with other partitions
+ * collecting stripes and with orders of other partitions that list one of this ledger's products.
+ */
+public class InventoryLedger {
+    private final int partition;
+    private final InventorySettings settings;
+    private final ProductRepository productRepository;
+    private final StockStripeService stockStripeService;
+    private final InventoryCheckpointService inventoryCheckpointService;
+    private final InventoryLedgers inventoryLedgers;
+    private final StockTable stockTable;
+    private final StockTable stripeTable;
+    private BloomFilter reservationFilter;
+    private BloomFilter previousReservationFilter;
+    private long filteredReservations;
+    private final Map<ReservationKey, Reservation> unwrittenReservations = new LinkedHashMap<>();
+    private final Map<ReservationKey, Reservation> recentReservations;
+    private final Object checkpointLock = new Object();
+    private final Deque<HeldOffset> heldOffsets = new ArrayDeque<>();
+    private long appliedOffset;
+    private long checkpointedOffset;
+    private long changes;
+    private volatile long writtenChanges;
+    private boolean closed;
+
+    InventoryLedger(int partition,
+                    long checkpointedOffset,
+                    InventorySettings settings,
+                    ProductRepository productRepository,
+                    StockStripeService stockStripeService,
+                    InventoryCheckpointService inventoryCheckpointService,
+                    InventoryLedgers inventoryLedgers) {
+        this.partition = partition;
+        this.settings = settings;
+        this.productRepository = productRepository;
+        this.stockStripeService = stockStripeService;
+        this.inventoryCheckpointService = inventoryCheckpointService;
+        this.inventoryLedgers = inventoryLedgers;
+        this.stockTable = new StockTable(settings.expectedProducts());
+        this.stripeTable = new StockTable(settings.stripedProducts().size());
+        this.reservationFilter = new BloomFilter(settings.expectedReservations(), 0.01);
+        this.recentReservations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ReservationKey, Reservation> eldest) {
+                return size() > settings.reservationCacheSize();
+            }
+        };
+        this.appliedOffset = checkpointedOffset;
+        this.checkpointedOffset = checkpointedOffset;
+        // as many as the two filters hold, older ones would not be recognized anyway and are pruned
+        inventoryCheckpointService.forEachReservation(partition, 2 * settings.expectedReservations(), this::filter);
+    }
+
+    /**
+     * @return stock held by this ledger, for a striped product only this partition's stripe
+     */
+    public synchronized int stock(UUID productId) {
+        return available(productId);
+    }
+
+    /**
+     * Writes the stock and reservations changed since the previous checkpoint. On failure the changes stay
+     * pending for the next one.
+     */
+    public void checkpoint() {
+        synchronized (checkpointLock) {
+            InventoryCheckpoint checkpoint;
+            long checkpointChanges;
+            synchronized (this) {
+                while (!heldOffsets.isEmpty() && heldOffsets.peekFirst().isWritten()) {
+                    heldOffsets.pollFirst();
+                }
+                long lastOffset = heldOffsets.isEmpty() ? appliedOffset : heldOffsets.peekFirst().offset() - 1;
+                if (lastOffset == checkpointedOffset && !hasUnwrittenChanges()) {
+                    return;
+                }
+                checkpoint = new InventoryCheckpoint(partition, lastOffset, stockTable.drainDirty(),
+                        stripeTable.drainDirty(), new ArrayList<>(unwrittenReservations.values()));
+                checkpointChanges = changes;
+            }
+            try {
+                inventoryCheckpointService.write(checkpoint);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    stockTable.markDirty(checkpoint.stock());
+                    stripeTable.markDirty(checkpoint.stripeStock());
+                }
+                throw e;
+            }
+            writtenChanges = checkpointChanges;
+            synchronized (this) {
+                checkpointedOffset = checkpoint.lastOffset();
+                for (Reservation reservation : checkpoint.reservations()) {
+                    ReservationKey key = new ReservationKey(reservation.orderId(), reservation.productId());
+                    // a reservation changed again while this checkpoint was written stays for the next one
+                    if (unwrittenReservations.get(key) == reservation) {
+                        unwrittenReservations.remove(key);
+                        recentReservations.put(key, reservation);
+                    }
+                }
+            }
+        }
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * Moves this partition's stripe of {@code productId} back to the product row, called by another partition
+     * whose stripe ran dry.
+     */
+    void giveBackStripe(UUID productId) {
+        synchronized (checkpointLock) {
+            synchronized (this) {
+                int slot = stripeTable.slotOf(productId);
+                if (slot < 0 || stripeTable.stock(slot) <= 0) {
+                    return;
+                }
+                int quantity = stripeTable.stock(slot);
+                stockStripeService.giveBack(productId, partition, quantity);
+                stripeTable.addWritten(slot, -quantity);
+            }
+        }
+    }
+
+    /**
+     * Fills this partition's stripe of {@code productId} up to at least {@code quantity} if the product row, or
+     * failing that the other ledgers' stripes, still hold enough. Called without holding the monitor.
+     */
+    void ensureStripe(UUID productId, int quantity) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            int missing;
+            synchronized (this) {
+                missing = quantity - stripeTable.stock(stripeSlotOf(productId));
+            }
+            if (missing <= 0) {
+                return;
+            }
+            if (attempt == 1) {
+                inventoryLedgers.collectStripes(productId, partition);
+            }
+            borrow(productId, Math.max(missing, settings.stripeRefill()));
+        }
+    }
+
+    /**
+     * Gives back the stock of at most {@code limit} holds that expired by {@code now}. Holds are found among
+     * the written reservations; one confirmed or cancelled since is left alone, and one not written yet is
+     * found by a later sweep.
+     *
+     * @return number of holds that expired
+     */
+    int expireHolds(Instant now, int limit) {
+        // no checkpoint can write a newer version of a hold between the lookup and the release
+        synchronized (checkpointLock) {
+            List<Reservation> stored = inventoryCheckpointService.findExpiredHolds(partition, now, limit);
+            synchronized (this) {
+                if (closed) {
+                    return 0;
+                }
+                int expired = 0;
+                for (Reservation hold : stored) {
+                    ReservationKey key = new ReservationKey(hold.orderId(), hold.productId());
+                    Reservation current = unwrittenReservations.get(key);
+                    if (current == null) {
+                        current = recentReservations.getOrDefault(key, hold);
+                    }
+                    if (current.status() == ReservationStatus.RESERVED && !current.expiresAt().isAfter(now)) {
+                        adjust(current.productId(), current.quantity());
+                        record(current.withStatus(ReservationStatus.EXPIRED));
+                        expired++;
+                    }
+                }
+                return expired;
+            }
+        }
+    }
+
+    // the methods below are called by InventoryLedgers while holding the monitor of this ledger
+
+    /**
+     * @return stock left of the product, for a striped product only this partition's stripe
+     */
+    int available(UUID productId) {
+        if (settings.stripedProducts().contains(productId)) {
+            return stripeTable.stock(stripeSlotOf(productId));
+        }
+        return stockTable.stock(slotOf(productId));
+    }
+
+    BigDecimal price(UUID productId) {
+        if (settings.stripedProducts().contains(productId)) {
+            return stripeTable.price(stripeSlotOf(productId));
+        }
+        return stockTable.price(slotOf(productId));
+    }
+
+    void adjust(UUID productId, int quantity) {
+        if (settings.stripedProducts().contains(productId)) {
+            int slot = stripeSlotOf(productId);
+            stripeTable.setStock(slot, stripeTable.stock(slot) + quantity);
+        } else {
+            int slot = slotOf(productId);
+            stockTable.setStock(slot, stockTable.stock(slot) + quantity);
+        }
+    }
+
+    /**
+     * Puts back what the order reserved of the product. Repeated cancellations and cancellations of rejected
+     * or expired reservations leave the stock alone.
+     */
+    void release(UUID productId, UUID orderId) {
+        Reservation previous = findReservation(orderId, productId);
+        if (previous == null) {
+            record(new Reservation(orderId, productId, 0, null, ReservationStatus.RELEASED, null));
+            return;
+        }
+        if (previous.status() == ReservationStatus.RESERVED || previous.status() == ReservationStatus.CONFIRMED) {
+            adjust(productId, previous.quantity());
+            record(previous.withStatus(ReservationStatus.RELEASED));
+        }
+    }
+
+    /**
+     * Keeps the order's hold on the product for good. A hold that expired before the confirmation arrived
+     * takes its stock again if there is still enough.
+     *
+     * @return false if the order holds no stock of the product
+     */
+    boolean confirm(UUID productId, UUID orderId) {
+        Reservation previous = findReservation(orderId, productId);
+        if (previous == null) {
+            return false;
+        }
+        return switch (previous.status()) {
+            case CONFIRMED -> true;
+            case RESERVED -> {
+                record(previous.withStatus(ReservationStatus.CONFIRMED));
+                yield true;
+            }
+            case EXPIRED -> {
+                if (previous.quantity() > available(productId)) {
+                    yield false;
+                }
+                adjust(productId, -previous.quantity());
+                record(previous.withStatus(ReservationStatus.CONFIRMED));
+                yield true;
+            }
+            case REJECTED, RELEASED -> false;
+        };
+    }
+
+    /**
+     * Marks the command at {@code offset} as applied. Until {@code otherLedgers} have written what the command
+     * changed in them, checkpoints of this ledger stop short of the offset, so a restart either applies the
+     * command again or finds every reservation it recorded. Called while holding the monitors of all ledgers.
+     */
+    void applied(long offset, List<InventoryLedger> otherLedgers) {
+        appliedOffset = offset;
+        if (!otherLedgers.isEmpty()) {
+            long[] otherChanges = new long[otherLedgers.size()];
+            for (int i = 0; i < otherChanges.length; i++) {
+                otherChanges[i] = otherLedgers.get(i).changes;
+            }
+            heldOffsets.addLast(new HeldOffset(offset, otherLedgers, otherChanges));
+        }
+    }
+
+    /**
+     * Stops the ledger from taking part in further reservations, called when its partition is revoked.
+     */
+    synchronized void close() {
+        closed = true;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private void borrow(UUID productId, int quantity) {
+        synchronized (checkpointLock) {
+            int borrowed = stockStripeService.borrow(productId, partition, quantity);
+            if (borrowed > 0) {
+                synchronized (this) {
+                    stripeTable.addWritten(stripeTable.slotOf(productId), borrowed);
+                }
+            }
+        }
+    }
+
+    synchronized Reservation findReservation(UUID orderId, UUID productId) {
+        ReservationKey key = new ReservationKey(orderId, productId);
+        Reservation reservation = unwrittenReservations.get(key);
+        if (reservation == null) {
+            reservation = recentReservations.get(key);
+        }
+        if (reservation == null && mightBeRecorded(orderId, productId)) {
+            reservation = inventoryCheckpointService.findReservation(orderId, productId).orElse(null);
+            if (reservation != null) {
+                recentReservations.put(key, reservation);
+            }
+        }
+        return reservation;
+    }
+
+    void record(Reservation reservation) {
+        changes++;
+        unwrittenReservations.put(new ReservationKey(reservation.orderId(), reservation.productId()), reservation);
+        filter(reservation.orderId(), reservation.productId());
+    }
+
+    private void filter(UUID orderId, UUID productId) {
+        if (filteredReservations == settings.expectedReservations()) {
+            previousReservationFilter = reservationFilter;
+            reservationFilter = new BloomFilter(settings.expectedReservations(), 0.01);
+            filteredReservations = 0;
+        }
+        reservationFilter.add(orderId, productId);
+        filteredReservations++;
+    }
+
+    private boolean mightBeRecorded(UUID orderId, UUID productId) {
+        return reservationFilter.mightContain(orderId, productId)
+                || previousReservationFilter != null && previousReservationFilter.mightContain(orderId, productId);
+    }
+
+    private boolean hasUnwrittenChanges() {
+        return stockTable.hasDirty() || stripeTable.hasDirty() || !unwrittenReservations.isEmpty();
+    }
+
+    private int slotOf(UUID productId) {
+        int slot = stockTable.slotOf(productId);
+        if (slot < 0) {
+            ProductEntity productEntity = productRepository.findById(productId).orElseThrow();
+            // products may be created without a quantity, they have nothing in stock yet
+            int quantity = productEntity.getQuantity() == null ? 0 : productEntity.getQuantity();
+            slot = stockTable.insert(productId, quantity, productEntity.getPrice());
+        }
+        return slot;
+    }
+
+    private int stripeSlotOf(UUID productId) {
+        int slot = stripeTable.slotOf(productId);
+        if (slot < 0) {
+            ProductEntity productEntity = productRepository.findById(productId).orElseThrow();
+            slot = stripeTable.insert(productId, stockStripeService.loadStripe(productId, partition),
+                    productEntity.getPrice());
+        }
+        return slot;
+    }
+
+    private record ReservationKey(UUID orderId, UUID productId) {
+    }
+
+    private record HeldOffset(long offset, List<InventoryLedger> otherLedgers, long[] otherChanges) {
+        boolean isWritten() {
+            for (int i = 0; i < otherChanges.length; i++) {
+                if (otherLedgers.get(i).writtenChanges < otherChanges[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
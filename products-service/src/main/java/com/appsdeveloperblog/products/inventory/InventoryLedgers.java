@@ -0,0 +1,401 @@
+package com.appsdeveloperblog.products.inventory;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.dto.commands.ReserveProductCommand;
+import com.appsdeveloperblog.core.exceptions.ProductInsufficientQuantityException;
+import com.appsdeveloperblog.products.dao.jpa.repository.ProductRepository;
+import com.appsdeveloperblog.products.service.InventoryCheckpointService;
+import com.appsdeveloperblog.products.service.StockStripeService;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The {@link InventoryLedger} of every products-commands partition assigned to this instance. A ledger is
+ * created when its partition is assigned, starting from the last checkpoint, and checkpointed and dropped
+ * when the partition is revoked, so the next owner starts from what this one wrote.
+ * <p>
+ * An order is reserved on the partition of its first line item, each of its products by the ledger of the
+ * partition the product is keyed to, or by the receiving partition's stripe for striped products. Line items
+ * of partitions assigned to other instances are left to their owners: the receiving instance handles its own
+ * and returns the rest in an {@link OrderPart}, for the caller to pass on.
+ */
+@Component
+public class InventoryLedgers {
+    private static final long NO_OFFSET = -1;
+    private final Logger logger = LoggerFactory.getLogger(InventoryLedgers.class);
+    private final Map<Integer, InventoryLedger> ledgers = new ConcurrentHashMap<>();
+    private final ProductRepository productRepository;
+    private final InventoryCheckpointService inventoryCheckpointService;
+    private final StockStripeService stockStripeService;
+    private final InventorySettings settings;
+    private final int commandPartitions;
+    private final int holdSweepBatchSize;
+
+    public InventoryLedgers(ProductRepository productRepository,
+                            InventoryCheckpointService inventoryCheckpointService,
+                            StockStripeService stockStripeService,
+                            @Value("${products.inventory.expected-products-per-partition}") int expectedProducts,
+                            @Value("${products.inventory.striped-products}") Set<UUID> stripedProducts,
+                            @Value("${products.inventory.stripe-refill}") int stripeRefill,
+                            @Value("${products.inventory.expected-reservations-per-partition}") long expectedReservations,
+                            @Value("${products.inventory.reservation-cache-size}") int reservationCacheSize,
+                            @Value("${products.command.topic.partitions}") int commandPartitions,
+                            @Value("${products.inventory.hold-ttl-ms}") long holdTtlMs,
+                            @Value("${products.inventory.hold-sweep-batch-size}") int holdSweepBatchSize) {
+        this.productRepository = productRepository;
+        this.inventoryCheckpointService = inventoryCheckpointService;
+        this.stockStripeService = stockStripeService;
+        this.settings = new InventorySettings(expectedProducts, Set.copyOf(stripedProducts), stripeRefill,
+                expectedReservations, reservationCacheSize, Duration.ofMillis(holdTtlMs));
+        this.commandPartitions = commandPartitions;
+        this.holdSweepBatchSize = holdSweepBatchSize;
+    }
+
+    /**
+     * @return offset of the first command not reflected in the stored stock, -1 when the partition has
+     * no checkpoint yet and the committed consumer offset applies
+     */
+    public long assign(int partition) {
+        long lastOffset = inventoryCheckpointService.lastOffset(partition);
+        ledgers.put(partition, new InventoryLedger(partition, lastOffset, settings, productRepository,
+                stockStripeService, inventoryCheckpointService, this));
+        return lastOffset < 0 ? -1 : lastOffset + 1;
+    }
+
+    public void revoke(int partition) {
+        InventoryLedger ledger = ledgers.remove(partition);
+        if (ledger != null) {
+            ledger.close();
+            ledger.checkpoint();
+        }
+    }
+
+    public InventoryLedger forPartition(int partition) {
+        InventoryLedger ledger = ledgers.get(partition);
+        if (ledger == null) {
+            throw new IllegalStateException("Partition " + partition + " is not assigned to this instance");
+        }
+        return ledger;
+    }
+
+    /**
+     * Reserves every line item of an order owned by this instance or none of them. The ledgers of those line
+     * items are locked in partition order, so orders sharing products never deadlock, and a redelivered command
+     * is answered from the recorded reservations. The stock is held until {@link #confirm} or until the hold
+     * expires.
+     *
+     * @param partition products-commands partition the command was received on
+     * @return the line items reserved here with the unit price they were reserved at, and those still to be
+     * reserved by other instances
+     * @throws ProductInsufficientQuantityException naming the first line item that is not in stock
+     */
+    public OrderPart<List<OrderLineItem>> reserve(List<OrderLineItem> lineItems, UUID orderId, int partition,
+                                                  long offset) {
+        InventoryLedger receivingLedger = forPartition(partition);
+        Owners owners = ownersOf(lineItems, receivingLedger);
+        return new OrderPart<>(reserve(owners.lineItems(), orderId, receivingLedger, owners.ledgers(), offset),
+                owners.remaining());
+    }
+
+    /**
+     * Reserves an order outside of products-commands, on the ledgers its commands would be sent to, and writes
+     * the outcome before returning. A {@link ReserveProductCommand} of the same order that arrives later is
+     * answered from the recorded reservations, so the caller may fall back to sending one whenever it gets no
+     * answer. Orders spanning the partitions of several instances are only reserved through products-commands.
+     *
+     * @return the line items with the unit price they were reserved at
+     * @throws ProductInsufficientQuantityException naming the first line item that is not in stock
+     * @throws IllegalStateException when a partition of the order is not assigned to this instance
+     */
+    public List<OrderLineItem> reserveNow(List<OrderLineItem> lineItems, UUID orderId) {
+        InventoryLedger receivingLedger = forPartition(receivingPartition(lineItems, orderId));
+        Owners owners = ownersOf(lineItems, receivingLedger);
+        if (!owners.remaining().isEmpty()) {
+            throw new IllegalStateException("Product " + owners.remaining().get(0).getProductId() + " of order "
+                    + orderId + " belongs to a partition of another instance");
+        }
+        try {
+            return reserve(lineItems, orderId, receivingLedger, owners.ledgers(), NO_OFFSET);
+        } finally {
+            for (InventoryLedger ledger : lockOrder(owners.ledgers())) {
+                ledger.checkpoint();
+            }
+        }
+    }
+
+    private List<OrderLineItem> reserve(List<OrderLineItem> lineItems, UUID orderId,
+                                        InventoryLedger receivingLedger, List<InventoryLedger> owners, long offset) {
+        for (OrderLineItem lineItem : lineItems) {
+            UUID productId = lineItem.getProductId();
+            if (settings.stripedProducts().contains(productId)
+                    && receivingLedger.findReservation(orderId, productId) == null) {
+                receivingLedger.ensureStripe(productId, lineItem.getProductQuantity());
+            }
+        }
+        Instant expiresAt = Instant.now().plus(settings.holdTtl());
+        return locked(lockOrder(owners), 0, receivingLedger, offset,
+                () -> decide(lineItems, owners, orderId, expiresAt));
+    }
+
+    /**
+     * Confirms the holds of an approved order on the ledgers of this instance.
+     *
+     * @param partition products-commands partition the command was received on
+     * @return products of which the order holds no stock here any more, and the line items to be confirmed by
+     * other instances
+     */
+    public OrderPart<List<UUID>> confirm(List<OrderLineItem> lineItems, UUID orderId, int partition, long offset) {
+        InventoryLedger receivingLedger = forPartition(partition);
+        Owners owners = ownersOf(lineItems, receivingLedger);
+        List<UUID> unconfirmed = locked(lockOrder(owners.ledgers()), 0, receivingLedger, offset, () -> {
+            List<UUID> products = new ArrayList<>();
+            for (int i = 0; i < owners.lineItems().size(); i++) {
+                UUID productId = owners.lineItems().get(i).getProductId();
+                if (!owners.ledgers().get(i).confirm(productId, orderId)) {
+                    products.add(productId);
+                }
+            }
+            return products;
+        });
+        return new OrderPart<>(unconfirmed, owners.remaining());
+    }
+
+    /**
+     * Puts back what the order reserved of every line item owned by this instance.
+     *
+     * @param partition products-commands partition the command was received on
+     * @return the line items released here, and those to be released by other instances
+     */
+    public OrderPart<List<OrderLineItem>> release(List<OrderLineItem> lineItems, UUID orderId, int partition,
+                                                  long offset) {
+        InventoryLedger receivingLedger = forPartition(partition);
+        Owners owners = ownersOf(lineItems, receivingLedger);
+        locked(lockOrder(owners.ledgers()), 0, receivingLedger, offset, () -> {
+            for (int i = 0; i < owners.lineItems().size(); i++) {
+                owners.ledgers().get(i).release(owners.lineItems().get(i).getProductId(), orderId);
+            }
+            return null;
+        });
+        return new OrderPart<>(owners.lineItems(), owners.remaining());
+    }
+
+    /**
+     * @return products-commands partition the commands of an order with these line items are sent to: that of
+     * the first line item's product, or that of the order when the product is striped
+     */
+    public int receivingPartition(List<OrderLineItem> lineItems, UUID orderId) {
+        UUID firstProductId = lineItems.get(0).getProductId();
+        return settings.stripedProducts().contains(firstProductId) ? partitionOf(orderId) : partitionOf(firstProductId);
+    }
+
+    /**
+     * @return products-commands partition that commands keyed by {@code id} are sent to, the order id being
+     * the key for striped products
+     */
+    public int partitionOf(UUID id) {
+        return Utils.toPositive(Utils.murmur2(id.toString().getBytes(StandardCharsets.UTF_8)))
+                % commandPartitions;
+    }
+
+    /**
+     * Returns the stripes of {@code productId} held by the other partitions of this instance to the product row.
+     * Stripes of partitions assigned to other instances are left alone.
+     */
+    void collectStripes(UUID productId, int requestingPartition) {
+        for (InventoryLedger ledger : ledgers.values()) {
+            if (ledger.getPartition() != requestingPartition) {
+                ledger.giveBackStripe(productId);
+            }
+        }
+    }
+
+    // the first line item always belongs to the receiving ledger, so every instance an order is passed on to
+    // handles at least one of its line items
+    private Owners ownersOf(List<OrderLineItem> lineItems, InventoryLedger receivingLedger) {
+        List<OrderLineItem> owned = new ArrayList<>(lineItems.size());
+        List<InventoryLedger> owners = new ArrayList<>(lineItems.size());
+        List<OrderLineItem> remaining = new ArrayList<>();
+        for (OrderLineItem lineItem : lineItems) {
+            UUID productId = lineItem.getProductId();
+            InventoryLedger owner = settings.stripedProducts().contains(productId)
+                    ? receivingLedger
+                    : ledgers.get(partitionOf(productId));
+            if (owner == null) {
+                remaining.add(lineItem);
+            } else {
+                owned.add(lineItem);
+                owners.add(owner);
+            }
+        }
+        if (owners.isEmpty() || owners.get(0) != receivingLedger || owned.get(0) != lineItems.get(0)) {
+            throw new IllegalStateException("Product " + lineItems.get(0).getProductId() + " is keyed to partition "
+                    + partitionOf(lineItems.get(0).getProductId()) + " but was received on partition "
+                    + receivingLedger.getPartition() + ", check products.command.topic.partitions");
+        }
+        return new Owners(owned, owners, remaining);
+    }
+
+    private static List<InventoryLedger> lockOrder(List<InventoryLedger> owners) {
+        return owners.stream()
+                .distinct()
+                .sorted(Comparator.comparingInt(InventoryLedger::getPartition))
+                .toList();
+    }
+
+    /**
+     * Runs {@code action} holding the monitors of all ledgers in {@code lockOrder} and marks the command as
+     * applied by the receiving ledger, also when the action fails. Without an offset nothing is marked.
+     */
+    private static <T> T locked(List<InventoryLedger> lockOrder, int index, InventoryLedger receivingLedger,
+                                long offset, Supplier<T> action) {
+        if (index == lockOrder.size()) {
+            try {
+                return action.get();
+            } finally {
+                if (offset != NO_OFFSET) {
+                    receivingLedger.applied(offset, lockOrder.stream()
+                            .filter(ledger -> ledger != receivingLedger)
+                            .toList());
+                }
+            }
+        }
+        InventoryLedger ledger = lockOrder.get(index);
+        synchronized (ledger) {
+            if (ledger.isClosed()) {
+                throw new IllegalStateException("Partition " + ledger.getPartition() + " was revoked");
+            }
+            return locked(lockOrder, index + 1, receivingLedger, offset, action);
+        }
+    }
+
+    // a line item recorded before a restart while the rest of its order was not, is rolled back when the
+    // rest cannot be reserved any more
+    private static List<OrderLineItem> decide(List<OrderLineItem> lineItems, List<InventoryLedger> owners,
+                                              UUID orderId, Instant expiresAt) {
+        Reservation[] previous = new Reservation[lineItems.size()];
+        UUID missingProductId = null;
+        for (int i = 0; i < lineItems.size(); i++) {
+            UUID productId = lineItems.get(i).getProductId();
+            previous[i] = owners.get(i).findReservation(orderId, productId);
+            // a recorded reservation only stands while it still holds or has sold the stock; one that was
+            // rejected, released or expired answers a redelivery with a rejection
+            boolean rejected = previous[i] == null
+                    ? lineItems.get(i).getProductQuantity() > owners.get(i).available(productId)
+                    : previous[i].status() != ReservationStatus.RESERVED
+                    && previous[i].status() != ReservationStatus.CONFIRMED;
+            if (rejected && missingProductId == null) {
+                missingProductId = productId;
+            }
+        }
+        if (missingProductId == null) {
+            List<OrderLineItem> reserved = new ArrayList<>(lineItems.size());
+            for (int i = 0; i < lineItems.size(); i++) {
+                InventoryLedger ledger = owners.get(i);
+                UUID productId = lineItems.get(i).getProductId();
+                int quantity = lineItems.get(i).getProductQuantity();
+                if (previous[i] == null) {
+                    ledger.adjust(productId, -quantity);
+                    previous[i] = new Reservation(orderId, productId, quantity, ledger.price(productId),
+                            ReservationStatus.RESERVED, expiresAt);
+                    ledger.record(previous[i]);
+                }
+                reserved.add(new OrderLineItem(productId, quantity, previous[i].price()));
+            }
+            return reserved;
+        }
+        for (int i = 0; i < lineItems.size(); i++) {
+            InventoryLedger ledger = owners.get(i);
+            UUID productId = lineItems.get(i).getProductId();
+            if (previous[i] == null) {
+                ledger.record(new Reservation(orderId, productId, lineItems.get(i).getProductQuantity(),
+                        ledger.price(productId), ReservationStatus.REJECTED, null));
+            } else if (previous[i].status() == ReservationStatus.RESERVED) {
+                ledger.adjust(productId, previous[i].quantity());
+                ledger.record(previous[i].withStatus(ReservationStatus.REJECTED));
+            }
+        }
+        throw new ProductInsufficientQuantityException(missingProductId, orderId);
+    }
+
+    @Scheduled(fixedDelayString = "${products.inventory.checkpoint-interval-ms}")
+    public void checkpoint() {
+        for (InventoryLedger ledger : ledgers.values()) {
+            try {
+                ledger.checkpoint();
+            } catch (RuntimeException e) {
+                logger.error("Checkpoint of partition {} failed, retrying with the next one", ledger.getPartition(), e);
+            }
+        }
+    }
+
+    /**
+     * Gives back the stock of expired holds, one batch per ledger and checkpoint until none are left.
+     */
+    @Scheduled(fixedDelayString = "${products.inventory.hold-sweep-interval-ms}")
+    public void expireHolds() {
+        Instant now = Instant.now();
+        for (InventoryLedger ledger : ledgers.values()) {
+            try {
+                int expired;
+                do {
+                    expired = ledger.expireHolds(now, holdSweepBatchSize);
+                    if (expired > 0) {
+                        ledger.checkpoint();
+                        logger.info("**** Released {} expired holds of partition {}", expired, ledger.getPartition());
+                    }
+                } while (expired == holdSweepBatchSize);
+            } catch (RuntimeException e) {
+                logger.error("Expiring holds of partition {} failed, retrying with the next sweep",
+                        ledger.getPartition(), e);
+            }
+        }
+    }
+
+    /**
+     * Deletes the settled reservations that have dropped out of both Bloom filters of their partition, the
+     * ledger would not recognize a redelivered command of them anyway.
+     */
+    @Scheduled(fixedDelayString = "${products.inventory.reservation-prune-interval-ms}")
+    public void pruneReservations() {
+        for (InventoryLedger ledger : ledgers.values()) {
+            try {
+                int pruned = inventoryCheckpointService.pruneReservations(ledger.getPartition(),
+                        2 * settings.expectedReservations());
+                if (pruned > 0) {
+                    logger.info("**** Pruned {} settled reservations of partition {}", pruned, ledger.getPartition());
+                }
+            } catch (RuntimeException e) {
+                logger.error("Pruning reservations of partition {} failed, retrying with the next run",
+                        ledger.getPartition(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        checkpoint();
+    }
+
+    /**
+     * Line items of an order owned by the ledgers of this instance, each with its ledger, and the others.
+     */
+    private record Owners(List<OrderLineItem> lineItems, List<InventoryLedger> ledgers, List<OrderLineItem> remaining) {
+    }
+}
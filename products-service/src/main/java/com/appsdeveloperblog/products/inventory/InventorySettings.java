@@ -0,0 +1,16 @@
+package com.appsdeveloperblog.products.inventory;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Sizing of the per-partition ledgers, from the {@code products.inventory.*} properties.
+ */
+record InventorySettings(int expectedProducts,
+                         Set<UUID> stripedProducts,
+                         int stripeRefill,
+                         long expectedReservations,
+                         int reservationCacheSize,
+                         Duration holdTtl) {
+}
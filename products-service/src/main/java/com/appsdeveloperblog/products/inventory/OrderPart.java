@@ -0,0 +1,18 @@
+package com.appsdeveloperblog.products.inventory;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+
+import java.util.List;
+
+/**
+ * What the ledgers of this instance did with an order.
+ *
+ * @param handled   outcome for the line items of partitions assigned to this instance
+ * @param remaining line items of partitions assigned to other instances, to be passed on to their owners
+ */
+public record OrderPart<T>(T handled, List<OrderLineItem> remaining) {
+
+    public boolean isComplete() {
+        return remaining.isEmpty();
+    }
+}
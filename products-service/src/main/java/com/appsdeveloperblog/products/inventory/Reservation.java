@@ -0,0 +1,21 @@
+package com.appsdeveloperblog.products.inventory;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Outcome of the reservation of one product for one order, kept so that redelivered commands get the same
+ * answer instead of moving stock again.
+ *
+ * @param expiresAt when a {@link ReservationStatus#RESERVED} hold gives its stock back unless confirmed,
+ *                  null for the other outcomes
+ */
+public record Reservation(UUID orderId, UUID productId, int quantity, BigDecimal price, ReservationStatus status,
+                          Instant expiresAt) {
+
+    Reservation withStatus(ReservationStatus newStatus) {
+        return new Reservation(orderId, productId, quantity, price, newStatus,
+                newStatus == ReservationStatus.RESERVED ? expiresAt : null);
+    }
+}
@@ -0,0 +1,22 @@
+package com.appsdeveloperblog.products.inventory;
+
+public enum ReservationStatus {
+    /**
+     * Stock is held for the order until the reservation is confirmed, cancelled or expires.
+     */
+    RESERVED,
+    REJECTED,
+    /**
+     * Stock went back after a cancellation. A cancellation that arrives before its reservation is recorded
+     * as released with quantity 0, so the late reservation is rejected.
+     */
+    RELEASED,
+    /**
+     * The order was approved, the stock is sold.
+     */
+    CONFIRMED,
+    /**
+     * Stock went back because the hold was neither confirmed nor cancelled in time.
+     */
+    EXPIRED
+}
@@ -0,0 +1,7 @@
+package com.appsdeveloperblog.products.inventory;
+
+/**
+ * How much the stock of a product moved since the previous checkpoint, and where the ledger has it now.
+ */
+public record StockChange(int change, int stock) {
+}
@@ -0,0 +1,173 @@
+package com.appsdeveloperblog.products.inventory;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Open addressing hash table from product id to stock and unit price. Ids are kept as their two halves in
+ * {@code long} arrays and stock in an {@code int} array, so a lookup neither allocates nor boxes. Slots
+ * whose stock changed since the last {@link #drainDirty()} are tracked in a separate list, together with the
+ * stock last handed out for writing, so a checkpoint writes what changed instead of overwriting the row.
+ * <p>
+ * Not thread safe, callers serialize access.
+ */
+final class StockTable {
+    private static final int MAX_LOAD_PERCENT = 50;
+
+    private long[] mostSignificant;
+    private long[] leastSignificant;
+    private boolean[] used;
+    private int[] stock;
+    private int[] written;
+    private BigDecimal[] price;
+    private boolean[] dirty;
+    private int[] dirtySlots;
+    private int dirtyCount;
+    private int size;
+    private int mask;
+
+    StockTable(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(16, expectedSize * 100 / MAX_LOAD_PERCENT - 1)) << 1);
+    }
+
+    /**
+     * @return slot of {@code productId}, or -1 when it is not in the table
+     */
+    int slotOf(UUID productId) {
+        long msb = productId.getMostSignificantBits();
+        long lsb = productId.getLeastSignificantBits();
+        for (int slot = hash(msb, lsb) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (mostSignificant[slot] == msb && leastSignificant[slot] == lsb) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a product that is not in the table yet. The returned slot is valid until the next insert.
+     */
+    int insert(UUID productId, int productStock, BigDecimal productPrice) {
+        if ((size + 1) * 100 > used.length * MAX_LOAD_PERCENT) {
+            resize();
+        }
+        long msb = productId.getMostSignificantBits();
+        long lsb = productId.getLeastSignificantBits();
+        int slot = hash(msb, lsb) & mask;
+        while (used[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        mostSignificant[slot] = msb;
+        leastSignificant[slot] = lsb;
+        stock[slot] = productStock;
+        written[slot] = productStock;
+        price[slot] = productPrice;
+        size++;
+        return slot;
+    }
+
+    int stock(int slot) {
+        return stock[slot];
+    }
+
+    BigDecimal price(int slot) {
+        return price[slot];
+    }
+
+    void setStock(int slot, int productStock) {
+        stock[slot] = productStock;
+        if (!dirty[slot]) {
+            dirty[slot] = true;
+            dirtySlots[dirtyCount++] = slot;
+        }
+    }
+
+    /**
+     * Changes the stock by {@code quantity} the caller has already written.
+     */
+    void addWritten(int slot, int quantity) {
+        stock[slot] += quantity;
+        written[slot] += quantity;
+    }
+
+    /**
+     * Marks products as changed again, used when writing their changes failed.
+     */
+    void markDirty(Map<UUID, StockChange> changes) {
+        for (Map.Entry<UUID, StockChange> entry : changes.entrySet()) {
+            int slot = slotOf(entry.getKey());
+            if (slot >= 0) {
+                written[slot] -= entry.getValue().change();
+                setStock(slot, stock[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return change and current stock of every product whose stock moved since the previous call
+     */
+    Map<UUID, StockChange> drainDirty() {
+        Map<UUID, StockChange> changed = new LinkedHashMap<>(dirtyCount * 2);
+        for (int i = 0; i < dirtyCount; i++) {
+            int slot = dirtySlots[i];
+            if (stock[slot] != written[slot]) {
+                changed.put(new UUID(mostSignificant[slot], leastSignificant[slot]),
+                        new StockChange(stock[slot] - written[slot], stock[slot]));
+                written[slot] = stock[slot];
+            }
+            dirty[slot] = false;
+        }
+        dirtyCount = 0;
+        return changed;
+    }
+
+    boolean hasDirty() {
+        return dirtyCount > 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] oldMostSignificant = mostSignificant;
+        long[] oldLeastSignificant = leastSignificant;
+        boolean[] oldUsed = used;
+        int[] oldStock = stock;
+        int[] oldWritten = written;
+        BigDecimal[] oldPrice = price;
+        boolean[] oldDirty = dirty;
+        allocate(oldUsed.length << 1);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = insert(new UUID(oldMostSignificant[i], oldLeastSignificant[i]), oldStock[i], oldPrice[i]);
+                written[slot] = oldWritten[i];
+                if (oldDirty[i]) {
+                    setStock(slot, oldStock[i]);
+                }
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mostSignificant = new long[capacity];
+        leastSignificant = new long[capacity];
+        used = new boolean[capacity];
+        stock = new int[capacity];
+        written = new int[capacity];
+        price = new BigDecimal[capacity];
+        dirty = new boolean[capacity];
+        dirtySlots = new int[capacity];
+        dirtyCount = 0;
+        size = 0;
+        mask = capacity - 1;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
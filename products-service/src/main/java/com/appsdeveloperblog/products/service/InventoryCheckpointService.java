@@ -0,0 +1,40 @@
+package com.appsdeveloperblog.products.service;
+
+import com.appsdeveloperblog.products.inventory.InventoryCheckpoint;
+import com.appsdeveloperblog.products.inventory.Reservation;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+public interface InventoryCheckpointService {
+    /**
+     * @return offset of the last products-commands record reflected in the stored stock, -1 when none is
+     */
+    long lastOffset(int partition);
+
+    void write(InventoryCheckpoint checkpoint);
+
+    Optional<Reservation> findReservation(UUID orderId, UUID productId);
+
+    /**
+     * @return at most {@code limit} stored holds of the partition that expired by {@code now}, earliest first
+     */
+    List<Reservation> findExpiredHolds(int partition, Instant now, int limit);
+
+    /**
+     * Streams the order and product id of the {@code limit} most recently written reservations of the partition,
+     * oldest first.
+     */
+    void forEachReservation(int partition, long limit, BiConsumer<UUID, UUID> consumer);
+
+    /**
+     * Deletes the settled reservations of the partition written before its {@code keep} most recent ones.
+     * Holds are kept until they are settled.
+     *
+     * @return number of deleted reservations
+     */
+    int pruneReservations(int partition, long keep);
+}
@@ -0,0 +1,158 @@
+package com.appsdeveloperblog.products.service;
+
+import com.appsdeveloperblog.products.catalog.CatalogCache;
+import com.appsdeveloperblog.products.dao.jpa.entity.InventoryCheckpointEntity;
+import com.appsdeveloperblog.products.dao.jpa.entity.ProductReservationEntity;
+import com.appsdeveloperblog.products.dao.jpa.repository.InventoryCheckpointRepository;
+import com.appsdeveloperblog.products.dao.jpa.repository.ProductReservationRepository;
+import com.appsdeveloperblog.products.inventory.InventoryCheckpoint;
+import com.appsdeveloperblog.products.inventory.Reservation;
+import com.appsdeveloperblog.products.inventory.ReservationStatus;
+import com.appsdeveloperblog.products.inventory.StockChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+@Service
+public class InventoryCheckpointServiceImpl implements InventoryCheckpointService {
+    private final Logger logger = LoggerFactory.getLogger(InventoryCheckpointServiceImpl.class);
+    private final InventoryCheckpointRepository inventoryCheckpointRepository;
+    private final ProductReservationRepository productReservationRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final CatalogCache catalogCache;
+    private final ProductStockPublisher productStockPublisher;
+
+    public InventoryCheckpointServiceImpl(InventoryCheckpointRepository inventoryCheckpointRepository,
+                                          ProductReservationRepository productReservationRepository,
+                                          JdbcTemplate jdbcTemplate,
+                                          CatalogCache catalogCache,
+                                          ProductStockPublisher productStockPublisher) {
+        this.inventoryCheckpointRepository = inventoryCheckpointRepository;
+        this.productReservationRepository = productReservationRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.catalogCache = catalogCache;
+        this.productStockPublisher = productStockPublisher;
+    }
+
+    @Override
+    public long lastOffset(int partition) {
+        return inventoryCheckpointRepository.findById(partition)
+                .map(InventoryCheckpointEntity::getLastOffset)
+                .orElse(-1L);
+    }
+
+    /**
+     * Stock and offset are written in one transaction, so after a restart the stored stock is exactly the
+     * result of the commands up to the stored offset. Stock is moved by relative updates, which keep what other
+     * writers put into a row; taking stock never drives a row below zero, a row already lowered below what the
+     * ledger handed out is emptied instead.
+     */
+    @Override
+    @Transactional
+    public void write(InventoryCheckpoint checkpoint) {
+        if (!checkpoint.stock().isEmpty()) {
+            List<Object[]> added = new ArrayList<>();
+            List<Object[]> taken = new ArrayList<>();
+            for (Map.Entry<UUID, StockChange> entry : checkpoint.stock().entrySet()) {
+                int change = entry.getValue().change();
+                if (change > 0) {
+                    added.add(new Object[]{change, entry.getKey()});
+                } else {
+                    taken.add(new Object[]{-change, entry.getKey(), -change});
+                }
+            }
+            jdbcTemplate.batchUpdate("update products set quantity = coalesce(quantity, 0) + ? where id = ?", added);
+            int[] updated = jdbcTemplate.batchUpdate("update products set quantity = quantity - ? " +
+                    "where id = ? and quantity >= ?", taken);
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    UUID productId = (UUID) taken.get(i)[1];
+                    logger.warn("**** Stock of product {} is below what partition {} reserved, emptying it",
+                            productId, checkpoint.partition());
+                    jdbcTemplate.update("update products set quantity = 0 where id = ?", productId);
+                }
+            }
+        }
+        if (!checkpoint.stripeStock().isEmpty()) {
+            List<Object[]> rows = new ArrayList<>(checkpoint.stripeStock().size());
+            for (Map.Entry<UUID, StockChange> entry : checkpoint.stripeStock().entrySet()) {
+                rows.add(new Object[]{entry.getValue().change(), entry.getKey(), checkpoint.partition()});
+            }
+            jdbcTemplate.batchUpdate("update product_stock_stripes set quantity = quantity + ? " +
+                    "where product_id = ? and partition_number = ?", rows);
+        }
+        if (!checkpoint.stock().isEmpty() || !checkpoint.stripeStock().isEmpty()) {
+            catalogCache.invalidate();
+        }
+        Map<UUID, Integer> stock = new LinkedHashMap<>(checkpoint.stock().size() * 2);
+        checkpoint.stock().forEach((productId, change) -> stock.put(productId, change.stock()));
+        productStockPublisher.publishAfterCommit(stock);
+        if (!checkpoint.reservations().isEmpty()) {
+            Timestamp writtenAt = Timestamp.from(Instant.now());
+            List<Object[]> rows = new ArrayList<>(checkpoint.reservations().size());
+            for (Reservation reservation : checkpoint.reservations()) {
+                rows.add(new Object[]{reservation.orderId(), reservation.productId(), checkpoint.partition(),
+                        reservation.quantity(), reservation.price(), reservation.status().name(),
+                        reservation.expiresAt() == null ? null : Timestamp.from(reservation.expiresAt()), writtenAt});
+            }
+            jdbcTemplate.batchUpdate("merge into product_reservations " +
+                    "(order_id, product_id, partition_number, quantity, price, status, expires_at, written_at) " +
+                    "key (order_id, product_id) values (?, ?, ?, ?, ?, ?, ?, ?)", rows);
+        }
+        InventoryCheckpointEntity entity = new InventoryCheckpointEntity();
+        entity.setPartitionNumber(checkpoint.partition());
+        entity.setLastOffset(checkpoint.lastOffset());
+        inventoryCheckpointRepository.save(entity);
+    }
+
+    @Override
+    public Optional<Reservation> findReservation(UUID orderId, UUID productId) {
+        return productReservationRepository.findById(new ProductReservationEntity.Key(orderId, productId))
+                .map(entity -> new Reservation(entity.getOrderId(), entity.getProductId(), entity.getQuantity(),
+                        entity.getPrice(), entity.getStatus(),
+                        entity.getExpiresAt() == null ? null : entity.getExpiresAt().toInstant()));
+    }
+
+    @Override
+    public List<Reservation> findExpiredHolds(int partition, Instant now, int limit) {
+        return jdbcTemplate.query("select order_id, product_id, quantity, price, expires_at " +
+                        "from product_reservations where partition_number = ? and status = ? and expires_at <= ? " +
+                        "order by expires_at limit ?",
+                (resultSet, rowNum) -> new Reservation(resultSet.getObject(1, UUID.class),
+                        resultSet.getObject(2, UUID.class), resultSet.getInt(3), resultSet.getBigDecimal(4),
+                        ReservationStatus.RESERVED, resultSet.getTimestamp(5).toInstant()),
+                partition, ReservationStatus.RESERVED.name(), Timestamp.from(now), limit);
+    }
+
+    @Override
+    public void forEachReservation(int partition, long limit, BiConsumer<UUID, UUID> consumer) {
+        jdbcTemplate.query("select order_id, product_id from (select order_id, product_id, written_at " +
+                        "from product_reservations where partition_number = ? order by written_at desc limit ?) " +
+                        "order by written_at",
+                (RowCallbackHandler) resultSet -> consumer.accept(resultSet.getObject(1, UUID.class),
+                        resultSet.getObject(2, UUID.class)),
+                partition, limit);
+    }
+
+    @Override
+    @Transactional
+    public int pruneReservations(int partition, long keep) {
+        return jdbcTemplate.update("delete from product_reservations where partition_number = ? and status <> ? " +
+                        "and written_at < (select min(written_at) from (select written_at from product_reservations " +
+                        "where partition_number = ? order by written_at desc limit ?))",
+                partition, ReservationStatus.RESERVED.name(), partition, keep);
+    }
+}
@@ -0,0 +1,18 @@
+package com.appsdeveloperblog.products.service;
+
+import com.appsdeveloperblog.products.dto.ProductImportResponse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+public interface ProductImportService {
+    /**
+     * One JSON product per line.
+     */
+    ProductImportResponse importNdjson(BufferedReader reader) throws IOException;
+
+    /**
+     * A header line naming the name, price and quantity columns in any order, then one product per line.
+     */
+    ProductImportResponse importCsv(BufferedReader reader) throws IOException;
+}
@@ -0,0 +1,197 @@
+package com.appsdeveloperblog.products.service;
+
+import com.appsdeveloperblog.core.dto.Product;
+import com.appsdeveloperblog.products.dto.ProductCreationRequest;
+import com.appsdeveloperblog.products.dto.ProductImportError;
+import com.appsdeveloperblog.products.dto.ProductImportResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the body line by line and writes the valid rows in chunks of {@code products.import.chunk-size}, each
+ * chunk in its own transaction, so only one chunk is held in memory. A row that is invalid, or whose chunk
+ * fails to be written, is reported and the import goes on with the next one.
+ */
+@Service
+public class ProductImportServiceImpl implements ProductImportService {
+    private final Logger logger = LoggerFactory.getLogger(ProductImportServiceImpl.class);
+    private final ProductService productService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int chunkSize;
+    private final int maxReportedErrors;
+
+    public ProductImportServiceImpl(ProductService productService,
+                                    ObjectMapper objectMapper,
+                                    Validator validator,
+                                    @Value("${products.import.chunk-size}") int chunkSize,
+                                    @Value("${products.import.max-reported-errors}") int maxReportedErrors) {
+        this.productService = productService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    @Override
+    public ProductImportResponse importNdjson(BufferedReader reader) throws IOException {
+        ImportProgress progress = new ImportProgress();
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                progress.add(lineNumber, objectMapper.readValue(line, ProductCreationRequest.class));
+            } catch (JsonProcessingException e) {
+                progress.reject(lineNumber, e.getOriginalMessage());
+            }
+        }
+        return progress.finish();
+    }
+
+    @Override
+    public ProductImportResponse importCsv(BufferedReader reader) throws IOException {
+        ImportProgress progress = new ImportProgress();
+        String header = reader.readLine();
+        if (header == null) {
+            return progress.finish();
+        }
+        List<String> columns = parseCsvLine(header).stream()
+                .map(column -> column.trim().toLowerCase(Locale.ROOT))
+                .toList();
+        int nameColumn = columns.indexOf("name");
+        int priceColumn = columns.indexOf("price");
+        int quantityColumn = columns.indexOf("quantity");
+        if (nameColumn < 0 || priceColumn < 0) {
+            progress.reject(1, "Header must name the name and price columns, quantity is optional");
+            return progress.finish();
+        }
+
+        long lineNumber = 1;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = parseCsvLine(line);
+            if (fields.size() != columns.size()) {
+                progress.reject(lineNumber, "Expected " + columns.size() + " fields but found " + fields.size());
+                continue;
+            }
+            try {
+                String quantity = quantityColumn < 0 ? "" : fields.get(quantityColumn).trim();
+                progress.add(lineNumber, new ProductCreationRequest(
+                        fields.get(nameColumn),
+                        new BigDecimal(fields.get(priceColumn).trim()),
+                        quantity.isEmpty() ? null : Integer.valueOf(quantity)));
+            } catch (NumberFormatException e) {
+                progress.reject(lineNumber, "Price and quantity must be numbers");
+            }
+        }
+        return progress.finish();
+    }
+
+    // fields may be quoted with double quotes, a quote inside a quoted field is written twice
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private class ImportProgress {
+        private final List<Product> chunk = new ArrayList<>(chunkSize);
+        private final List<Long> chunkLines = new ArrayList<>(chunkSize);
+        private final List<ProductImportError> errors = new ArrayList<>();
+        private long imported;
+        private long rejected;
+
+        void add(long lineNumber, ProductCreationRequest request) {
+            Set<ConstraintViolation<ProductCreationRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                reject(lineNumber, violations.stream()
+                        .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", ")));
+                return;
+            }
+            chunk.add(new Product(null, request.getName(), request.getPrice(), request.getQuantity()));
+            chunkLines.add(lineNumber);
+            if (chunk.size() == chunkSize) {
+                flush();
+            }
+        }
+
+        void reject(long lineNumber, String message) {
+            rejected++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new ProductImportError(lineNumber, message));
+            }
+        }
+
+        ProductImportResponse finish() {
+            flush();
+            logger.info("**** Imported {} products, rejected {}", imported, rejected);
+            return new ProductImportResponse(imported, rejected, errors);
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            try {
+                productService.saveAll(chunk);
+                imported += chunk.size();
+            } catch (DataAccessException e) {
+                logger.error("Writing products of lines {} to {} failed", chunkLines.get(0),
+                        chunkLines.get(chunkLines.size() - 1), e);
+                for (long lineNumber : chunkLines) {
+                    reject(lineNumber, "Not written: " + e.getMostSpecificCause().getMessage());
+                }
+            }
+            chunk.clear();
+            chunkLines.clear();
+        }
+    }
+}
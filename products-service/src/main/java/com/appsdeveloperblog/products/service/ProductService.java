@@ -1,13 +1,17 @@
 package com.appsdeveloperblog.products.service;
 
 import com.appsdeveloperblog.core.dto.Product;
+import com.appsdeveloperblog.products.catalog.CatalogPage;
 
 import java.util.List;
 import java.util.UUID;
 
 public interface ProductService {
-    List<Product> findAll();
-    Product reserve(Product desiredProduct, UUID orderId);
-    void cancelReservation(Product productToCancel, UUID orderId);
+    CatalogPage findPage(UUID after, int limit);
     Product save(Product product);
+
+    /**
+     * Inserts the products with one batch of statements.
+     */
+    void saveAll(List<Product> products);
 }
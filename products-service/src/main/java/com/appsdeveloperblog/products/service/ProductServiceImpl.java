@@ -1,45 +1,41 @@
 package com.appsdeveloperblog.products.service;
 
 import com.appsdeveloperblog.core.dto.Product;
-import com.appsdeveloperblog.core.exceptions.ProductInsufficientQuantityException;
+import com.appsdeveloperblog.products.catalog.CatalogCache;
+import com.appsdeveloperblog.products.catalog.CatalogPage;
 import com.appsdeveloperblog.products.dao.jpa.entity.ProductEntity;
 import com.appsdeveloperblog.products.dao.jpa.repository.ProductRepository;
-import org.springframework.beans.BeanUtils;
+import com.appsdeveloperblog.products.dao.jpa.repository.ProductStockStripeRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
 public class ProductServiceImpl implements ProductService {
     private final ProductRepository productRepository;
+    private final ProductStockStripeRepository productStockStripeRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final CatalogCache catalogCache;
+    private final ProductStockPublisher productStockPublisher;
 
-    public ProductServiceImpl(ProductRepository productRepository) {
+    public ProductServiceImpl(ProductRepository productRepository,
+                              ProductStockStripeRepository productStockStripeRepository,
+                              JdbcTemplate jdbcTemplate,
+                              CatalogCache catalogCache,
+                              ProductStockPublisher productStockPublisher) {
         this.productRepository = productRepository;
-    }
-
-    @Override
-    public Product reserve(Product desiredProduct, UUID orderId) {
-        ProductEntity productEntity = productRepository.findById(desiredProduct.getId()).orElseThrow();
-        if (desiredProduct.getQuantity() > productEntity.getQuantity()) {
-            throw new ProductInsufficientQuantityException(productEntity.getId(), orderId);
-        }
-
-        productEntity.setQuantity(productEntity.getQuantity() - desiredProduct.getQuantity());
-        productRepository.save(productEntity);
-
-        var reservedProduct = new Product();
-        BeanUtils.copyProperties(productEntity, reservedProduct);
-        reservedProduct.setQuantity(desiredProduct.getQuantity());
-        return reservedProduct;
-    }
-
-    @Override
-    public void cancelReservation(Product productToCancel, UUID orderId) {
-        ProductEntity productEntity = productRepository.findById(productToCancel.getId()).orElseThrow();
-        productEntity.setQuantity(productEntity.getQuantity() + productToCancel.getQuantity());
-        productRepository.save(productEntity);
+        this.productStockStripeRepository = productStockStripeRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.catalogCache = catalogCache;
+        this.productStockPublisher = productStockPublisher;
     }
 
     @Override
@@ -49,14 +45,52 @@ public class ProductServiceImpl implements ProductService {
         productEntity.setPrice(product.getPrice());
         productEntity.setQuantity(product.getQuantity());
         productRepository.save(productEntity);
+        catalogCache.invalidate();
+        if (productEntity.getQuantity() != null) {
+            productStockPublisher.publishAfterCommit(Map.of(productEntity.getId(), productEntity.getQuantity()));
+        }
 
         return new Product(productEntity.getId(), product.getName(), product.getPrice(), product.getQuantity());
     }
 
     @Override
-    public List<Product> findAll() {
-        return productRepository.findAll().stream()
-                .map(entity -> new Product(entity.getId(), entity.getName(), entity.getPrice(), entity.getQuantity()))
-                .collect(Collectors.toList());
+    @Transactional
+    public void saveAll(List<Product> products) {
+        List<Object[]> rows = new ArrayList<>(products.size());
+        Map<UUID, Integer> stock = new HashMap<>();
+        for (Product product : products) {
+            UUID id = UUID.randomUUID();
+            rows.add(new Object[]{id, product.getName(), product.getPrice(), product.getQuantity()});
+            if (product.getQuantity() != null) {
+                stock.put(id, product.getQuantity());
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into products (id, name, price, quantity) values (?, ?, ?, ?)", rows);
+        catalogCache.invalidate();
+        productStockPublisher.publishAfterCommit(stock);
+    }
+
+    // a striped product's stock is what is left in its row plus all of its stripes
+    @Override
+    public CatalogPage findPage(UUID after, int limit) {
+        return catalogCache.get(after, limit, () -> {
+            List<Product> products = after == null
+                    ? productRepository.findFirstPage(Limit.of(limit))
+                    : productRepository.findPageAfter(after, Limit.of(limit));
+            if (products.isEmpty()) {
+                return CatalogPage.of(products);
+            }
+            Map<UUID, Long> stripedQuantities = productStockStripeRepository.sumQuantities(
+                            products.stream().map(Product::getId).toList()).stream()
+                    .collect(Collectors.toMap(ProductStockStripeRepository.StripedQuantity::getProductId,
+                            ProductStockStripeRepository.StripedQuantity::getQuantity));
+            for (Product product : products) {
+                Long stripedQuantity = stripedQuantities.get(product.getId());
+                if (stripedQuantity != null) {
+                    product.setQuantity(product.getQuantity() + stripedQuantity.intValue());
+                }
+            }
+            return CatalogPage.of(products);
+        });
     }
 }
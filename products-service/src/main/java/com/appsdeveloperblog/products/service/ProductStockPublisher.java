@@ -0,0 +1,12 @@
+package com.appsdeveloperblog.products.service;
+
+import java.util.Map;
+import java.util.UUID;
+
+public interface ProductStockPublisher {
+    /**
+     * Publishes the quantity of each product once the surrounding transaction has committed, right away when
+     * there is none.
+     */
+    void publishAfterCommit(Map<UUID, Integer> stock);
+}
@@ -0,0 +1,67 @@
+package com.appsdeveloperblog.products.service;
+
+import com.appsdeveloperblog.core.dto.events.ProductStockChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stock of striped products is split over the partitions' stripes and is not published, consumers of the topic
+ * have to treat products they have not seen as available.
+ */
+@Service
+public class ProductStockPublisherImpl implements ProductStockPublisher {
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final String productStockTopicName;
+    private final boolean enabled;
+
+    public ProductStockPublisherImpl(KafkaTemplate<String, Object> kafkaTemplate,
+                                     @Value("${products.stock.topic.name}") String productStockTopicName,
+                                     @Value("${products.stock.publish.enabled}") boolean enabled) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.productStockTopicName = productStockTopicName;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void publishAfterCommit(Map<UUID, Integer> stock) {
+        if (!enabled || stock.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(stock);
+                }
+            });
+        } else {
+            publish(stock);
+        }
+    }
+
+    // a transactional template only sends within a transaction, all changes of one commit go in the same one
+    private void publish(Map<UUID, Integer> stock) {
+        if (kafkaTemplate.isTransactional()) {
+            kafkaTemplate.executeInTransaction(operations -> {
+                send(operations, stock);
+                return null;
+            });
+        } else {
+            send(kafkaTemplate, stock);
+        }
+    }
+
+    private void send(KafkaOperations<String, Object> operations, Map<UUID, Integer> stock) {
+        stock.forEach((productId, quantity) -> {
+            ProductStockChangedEvent event = new ProductStockChangedEvent(productId, quantity);
+            operations.send(productStockTopicName, event.key(), event);
+        });
+    }
+}
@@ -0,0 +1,22 @@
+package com.appsdeveloperblog.products.service;
+
+import java.util.UUID;
+
+/**
+ * Moves stock of a striped product between its product row, used as a shared pool, and the stripes of the
+ * partitions. Every move updates both rows in one transaction, so the total never changes.
+ */
+public interface StockStripeService {
+    /**
+     * @return stored quantity of the partition's stripe, created empty when missing
+     */
+    int loadStripe(UUID productId, int partition);
+
+    /**
+     * Moves up to {@code quantity} items from the pool to the stripe.
+     * @return number of items moved, less than {@code quantity} when the pool ran dry
+     */
+    int borrow(UUID productId, int partition, int quantity);
+
+    void giveBack(UUID productId, int partition, int quantity);
+}
@@ -0,0 +1,59 @@
+package com.appsdeveloperblog.products.service;
+
+import com.appsdeveloperblog.products.dao.jpa.entity.ProductStockStripeEntity;
+import com.appsdeveloperblog.products.dao.jpa.repository.ProductStockStripeRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.UUID;
+
+@Service
+public class StockStripeServiceImpl implements StockStripeService {
+    private final ProductStockStripeRepository productStockStripeRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public StockStripeServiceImpl(ProductStockStripeRepository productStockStripeRepository,
+                                  JdbcTemplate jdbcTemplate) {
+        this.productStockStripeRepository = productStockStripeRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public int loadStripe(UUID productId, int partition) {
+        return productStockStripeRepository.findById(new ProductStockStripeEntity.Key(productId, partition))
+                .orElseGet(() -> {
+                    ProductStockStripeEntity stripe = new ProductStockStripeEntity();
+                    stripe.setProductId(productId);
+                    stripe.setPartitionNumber(partition);
+                    stripe.setQuantity(0);
+                    return productStockStripeRepository.save(stripe);
+                })
+                .getQuantity();
+    }
+
+    @Override
+    @Transactional
+    public int borrow(UUID productId, int partition, int quantity) {
+        Integer pool = jdbcTemplate.queryForObject("select quantity from products where id = ? for update",
+                Integer.class, productId);
+        int borrowed = Math.min(pool == null ? 0 : pool, quantity);
+        if (borrowed > 0) {
+            move(productId, partition, borrowed);
+        }
+        return borrowed;
+    }
+
+    @Override
+    @Transactional
+    public void giveBack(UUID productId, int partition, int quantity) {
+        move(productId, partition, -quantity);
+    }
+
+    private void move(UUID productId, int partition, int toStripe) {
+        jdbcTemplate.update("update products set quantity = coalesce(quantity, 0) - ? where id = ?", toStripe, productId);
+        jdbcTemplate.update("update product_stock_stripes set quantity = quantity + ? " +
+                "where product_id = ? and partition_number = ?", toStripe, productId, partition);
+    }
+}
@@ -1,78 +1,177 @@
 package com.appsdeveloperblog.products.service.handler;
 
-import com.appsdeveloperblog.core.dto.Product;
+import com.appsdeveloperblog.core.dto.OrderLineItem;
 import com.appsdeveloperblog.core.dto.commands.CancelProductReservationCommand;
+import com.appsdeveloperblog.core.dto.commands.ConfirmProductReservationCommand;
 import com.appsdeveloperblog.core.dto.commands.ProcessPaymentCommand;
 import com.appsdeveloperblog.core.dto.commands.ReserveProductCommand;
 import com.appsdeveloperblog.core.dto.events.ProductReservationCancelledEvent;
 import com.appsdeveloperblog.core.dto.events.ProductReservationFailedEvent;
 import com.appsdeveloperblog.core.dto.events.ProductReservedEvent;
-import com.appsdeveloperblog.products.service.ProductService;
+import com.appsdeveloperblog.core.exceptions.ProductInsufficientQuantityException;
+import com.appsdeveloperblog.core.dto.SagaMessage;
+import com.appsdeveloperblog.products.inventory.InventoryLedgers;
+import com.appsdeveloperblog.products.inventory.OrderPart;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaHandler;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Handles the line items of an order owned by this instance and passes the others on to the partition of the
+ * next one, which does the same. The instance that handles the last line items answers for the whole order.
+ * When a later partition cannot reserve its line items, the earlier ones are released again before the order
+ * is rejected.
+ */
 @Component
 @KafkaListener(topics = "${products.command.topic.name}")
-public class ProductCommandHandler {
+public class ProductCommandHandler implements ConsumerSeekAware {
 
     private static Logger logger = LoggerFactory.getLogger(ProductCommandHandler.class);
     private final KafkaTemplate<String, Object> kafkaTemplate;
     private final String productEventsTopicName;
+    private final String productCommandsTopicName;
 
-    private final ProductService productService;
+    private final InventoryLedgers inventoryLedgers;
 
-    public ProductCommandHandler(ProductService productService,
+    public ProductCommandHandler(InventoryLedgers inventoryLedgers,
                                  KafkaTemplate<String, Object> kafkaTemplate,
-                                 @Value("${products.events.topic.name}") String productEventsTopicName) {
-        this.productService = productService;
+                                 @Value("${products.events.topic.name}") String productEventsTopicName,
+                                 @Value("${products.command.topic.name}") String productCommandsTopicName) {
+        this.inventoryLedgers = inventoryLedgers;
         this.kafkaTemplate = kafkaTemplate;
         this.productEventsTopicName = productEventsTopicName;
+        this.productCommandsTopicName = productCommandsTopicName;
+    }
+
+    // commands after the last checkpoint are applied again, so the ledger matches the one that was lost
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        for (TopicPartition topicPartition : assignments.keySet()) {
+            long nextOffset = inventoryLedgers.assign(topicPartition.partition());
+            if (nextOffset >= 0) {
+                callback.seek(topicPartition.topic(), topicPartition.partition(), nextOffset);
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        partitions.forEach(topicPartition -> inventoryLedgers.revoke(topicPartition.partition()));
     }
 
     @KafkaHandler
-    public void handleCommand(@Payload ReserveProductCommand command) {
+    public void handleCommand(@Payload ReserveProductCommand command,
+                              @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                              @Header(KafkaHeaders.OFFSET) long offset) {
 //if there is no enough stock then reserve method throws ProductInsufficientQuantityException
         try {
-            Product desiredProduct = new Product(command.getProductId(), command.getProductQuantity());
-            Product reservedProduct =productService.reserve(desiredProduct, command.getOrderId());
+            OrderPart<List<OrderLineItem>> part = inventoryLedgers.reserve(command.getLineItems(),
+                    command.getOrderId(), partition, offset);
+            List<OrderLineItem> reservedLineItems = new ArrayList<>(command.getReservedLineItems());
+            reservedLineItems.addAll(part.handled());
+            if (!part.isComplete()) {
+                logger.info("**** Passing on reservation of " + part.remaining().size()
+                        + " line items for order id: " + command.getOrderId());
+                sendCommand(new ReserveProductCommand(part.remaining(), command.getOrderId(), reservedLineItems),
+                        part.remaining(), command.getOrderId());
+                return;
+            }
             ProductReservedEvent productReservedEvent = new ProductReservedEvent(command.getOrderId(),
-                   command.getProductId(),
-                    reservedProduct.getPrice(),
-                    command.getProductQuantity());
+                    reservedLineItems);
             logger.info("**** Product reserved event created for order id: " + command.getOrderId());
-            kafkaTemplate.send(productEventsTopicName, productReservedEvent);
+            kafkaTemplate.send(productEventsTopicName, productReservedEvent.key(), productReservedEvent);
         }catch(Exception ex){
             logger.error("**** Exception occurred while reserving product for order id: " + command.getOrderId(), ex);
             logger.error(ex.getLocalizedMessage(), ex);
           // here product reservation cancellation event can be sent to notify order service about failure
             //such that the order cannot be reserved.
           //  throw ex;
+            OrderLineItem failedLineItem = failedLineItem(command, ex);
             ProductReservationFailedEvent productReservationFailedEvent = new ProductReservationFailedEvent(
-                    command.getProductId(),
+                    failedLineItem.getProductId(),
                     command.getOrderId(),
-                    command.getProductQuantity());
-            kafkaTemplate.send(productEventsTopicName, productReservationFailedEvent);
+                    failedLineItem.getProductQuantity());
+            if (!command.getReservedLineItems().isEmpty()) {
+                sendCommand(new CancelProductReservationCommand(command.getReservedLineItems(), command.getOrderId()),
+                        command.getReservedLineItems(), command.getOrderId());
+            }
+            kafkaTemplate.send(productEventsTopicName, productReservationFailedEvent.key(), productReservationFailedEvent);
         }
 
     }
 
     @KafkaHandler
-    public void handleCommand(CancelProductReservationCommand command) {
+    public void handleCommand(CancelProductReservationCommand command,
+                              @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                              @Header(KafkaHeaders.OFFSET) long offset) {
         logger.info("**** Received CancelProductReservationCommand for order id: " + command.getOrderId());
-        Product productToCancel = new Product(command.getProductId(), command.getProductQuantity());
-        productService.cancelReservation(productToCancel, command.getProductId());
+        OrderPart<List<OrderLineItem>> part = inventoryLedgers.release(command.getLineItems(), command.getOrderId(),
+                partition, offset);
+        if (!part.isComplete()) {
+            sendCommand(new CancelProductReservationCommand(part.remaining(), command.getOrderId()),
+                    part.remaining(), command.getOrderId());
+            return;
+        }
         logger.info("**** Completed CancelProductReservationCommand for order id: " + command.getOrderId());
 
+        // names the line items released last; the saga only goes by the order id
         ProductReservationCancelledEvent  productReservationCancelledEvent= new ProductReservationCancelledEvent(
-                command.getProductId(),
+                command.getLineItems(),
                 command.getOrderId());
 
-        kafkaTemplate.send(productEventsTopicName, productReservationCancelledEvent);
+        kafkaTemplate.send(productEventsTopicName, productReservationCancelledEvent.key(), productReservationCancelledEvent);
+    }
+
+    @KafkaHandler
+    public void handleCommand(ConfirmProductReservationCommand command,
+                              @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                              @Header(KafkaHeaders.OFFSET) long offset) {
+        OrderPart<List<UUID>> part = inventoryLedgers.confirm(command.getLineItems(), command.getOrderId(),
+                partition, offset);
+        if (!part.handled().isEmpty()) {
+            logger.error("**** Approved order id: " + command.getOrderId() + " holds no stock of products "
+                    + part.handled());
+        }
+        if (!part.isComplete()) {
+            sendCommand(new ConfirmProductReservationCommand(part.remaining(), command.getOrderId()),
+                    part.remaining(), command.getOrderId());
+            return;
+        }
+        logger.info("**** Confirmed reservation for order id: " + command.getOrderId());
+    }
+
+    // sent to the partition the order's commands with these line items are received on, which for a striped
+    // first product is not the one its key hashes to
+    private void sendCommand(SagaMessage command, List<OrderLineItem> lineItems, UUID orderId) {
+        int partition = inventoryLedgers.receivingPartition(lineItems, orderId);
+        kafkaTemplate.send(new ProducerRecord<>(productCommandsTopicName, partition, command.key(), command));
+    }
+
+    // the line item that was out of stock, or the first one when the order failed for another reason
+    private static OrderLineItem failedLineItem(ReserveProductCommand command, Exception ex) {
+        if (ex instanceof ProductInsufficientQuantityException insufficient) {
+            for (OrderLineItem lineItem : command.getLineItems()) {
+                if (lineItem.getProductId().equals(insufficient.getProductId())) {
+                    return lineItem;
+                }
+            }
+        }
+        return command.getLineItems().get(0);
     }
 }
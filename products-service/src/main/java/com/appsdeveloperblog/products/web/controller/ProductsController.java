@@ -1,29 +1,135 @@
 package com.appsdeveloperblog.products.web.controller;
 
+import com.appsdeveloperblog.core.dto.OrderLineItem;
 import com.appsdeveloperblog.core.dto.Product;
+import com.appsdeveloperblog.core.dto.commands.ReserveProductCommand;
+import com.appsdeveloperblog.core.dto.events.ProductReservationFailedEvent;
+import com.appsdeveloperblog.core.dto.events.ProductReservedEvent;
+import com.appsdeveloperblog.core.exceptions.ProductInsufficientQuantityException;
+import com.appsdeveloperblog.products.catalog.CatalogPage;
 import com.appsdeveloperblog.products.dto.ProductCreationRequest;
 import com.appsdeveloperblog.products.dto.ProductCreationResponse;
+import com.appsdeveloperblog.products.dto.ProductImportResponse;
+import com.appsdeveloperblog.products.inventory.InventoryLedgers;
+import com.appsdeveloperblog.products.service.ProductImportService;
 import com.appsdeveloperblog.products.service.ProductService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/products")
 public class ProductsController {
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String CSV = "text/csv";
+
+    private final Logger logger = LoggerFactory.getLogger(ProductsController.class);
     private final ProductService productService;
+    private final ProductImportService productImportService;
+    private final InventoryLedgers inventoryLedgers;
+    private final ObjectWriter productWriter;
+    private final int maxPageSize;
 
-    public ProductsController(ProductService productService) {
+    public ProductsController(ProductService productService,
+                              ProductImportService productImportService,
+                              InventoryLedgers inventoryLedgers,
+                              ObjectMapper objectMapper,
+                              @Value("${products.catalog.max-page-size}") int maxPageSize) {
         this.productService = productService;
+        this.productImportService = productImportService;
+        this.inventoryLedgers = inventoryLedgers;
+        this.productWriter = objectMapper.writerFor(Product.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * The whole catalog as one JSON array, as {@code GET /products} always answered. The array is written page by
+     * page like {@link #streamAll()}; clients of large catalogs should page with {@code after} and {@code limit}.
+     */
+    @GetMapping(params = {"!after", "!limit"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> findAll() {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(catalog(true));
     }
 
+    /**
+     * At most {@code limit} products ordered by id, starting after the id {@code after}; used once either parameter
+     * is given. The {@code Link} header names the next page, and a request repeating the page's ETag in
+     * {@code If-None-Match} is answered with 304.
+     */
     @GetMapping
-    @ResponseStatus(HttpStatus.OK)
-    public List<Product> findAll() {
-        return productService.findAll();
+    public ResponseEntity<List<Product>> findPage(@RequestParam(required = false) UUID after,
+                                                  @RequestParam(defaultValue = "${products.catalog.page-size}") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        CatalogPage page = productService.findPage(after, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(page.etag())
+                .cacheControl(CacheControl.noCache());
+        UUID nextAfter = page.nextAfter(pageSize);
+        if (nextAfter != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", nextAfter)
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(page.products());
+    }
+
+    /**
+     * The whole catalog as one product per line, read page by page, so memory use does not depend on the
+     * size of the catalog. Products changed while the stream runs may be seen before or after the change.
+     */
+    @GetMapping(produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return ResponseEntity.ok().header(HttpHeaders.CONTENT_TYPE, NDJSON).body(catalog(false));
+    }
+
+    private StreamingResponseBody catalog(boolean jsonArray) {
+        return outputStream -> {
+            if (jsonArray) {
+                outputStream.write('[');
+            }
+            boolean first = true;
+            UUID after = null;
+            do {
+                CatalogPage page = productService.findPage(after, maxPageSize);
+                for (Product product : page.products()) {
+                    if (jsonArray && !first) {
+                        outputStream.write(',');
+                    }
+                    productWriter.writeValue(outputStream, product);
+                    if (!jsonArray) {
+                        outputStream.write('\n');
+                    }
+                    first = false;
+                }
+                outputStream.flush();
+                after = page.nextAfter(maxPageSize);
+            } while (after != null);
+            if (jsonArray) {
+                outputStream.write(']');
+            }
+        };
     }
 
     @PostMapping
@@ -37,4 +143,48 @@ public class ProductsController {
         BeanUtils.copyProperties(result, productCreationResponse);
         return productCreationResponse;
     }
+
+    /**
+     * Creates one product per line of the body while it is still being received. Rows are validated like the
+     * body of {@link #save}; rows that fail are reported by line number and do not stop the import.
+     */
+    @PostMapping(path = "/bulk", consumes = NDJSON)
+    public ProductImportResponse importNdjson(InputStream body) throws IOException {
+        return productImportService.importNdjson(reader(body));
+    }
+
+    @PostMapping(path = "/bulk", consumes = CSV)
+    public ProductImportResponse importCsv(InputStream body) throws IOException {
+        return productImportService.importCsv(reader(body));
+    }
+
+    /**
+     * Reserves an order right away instead of through products-commands. Answers with the reserved line items,
+     * with 409 naming the product that is out of stock, or with 503 when a partition of the order is not assigned
+     * to this instance, in which case the caller asks the next instance or sends the {@link ReserveProductCommand}
+     * instead, which is passed on to every instance owning part of the order.
+     */
+    @PostMapping("/reservations")
+    public ResponseEntity<Object> reserve(@RequestBody ReserveProductCommand command) {
+        try {
+            List<OrderLineItem> reservedLineItems = inventoryLedgers.reserveNow(command.getLineItems(),
+                    command.getOrderId());
+            return ResponseEntity.ok(new ProductReservedEvent(command.getOrderId(), reservedLineItems));
+        } catch (ProductInsufficientQuantityException e) {
+            int quantity = command.getLineItems().stream()
+                    .filter(lineItem -> lineItem.getProductId().equals(e.getProductId()))
+                    .mapToInt(OrderLineItem::getProductQuantity)
+                    .findFirst()
+                    .orElse(0);
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ProductReservationFailedEvent(e.getProductId(), command.getOrderId(), quantity));
+        } catch (IllegalStateException e) {
+            logger.info("**** Not reserving order id: {} here, {}", command.getOrderId(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    private static BufferedReader reader(InputStream body) {
+        return new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
 }
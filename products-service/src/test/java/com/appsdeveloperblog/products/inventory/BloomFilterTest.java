@@ -0,0 +1,80 @@
+package com.appsdeveloperblog.products.inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+    private static final int EXPECTED_PAIRS = 100_000;
+
+    @Test
+    void neverMissesAnAddedPair() {
+        BloomFilter filter = new BloomFilter(EXPECTED_PAIRS, 0.01);
+        List<UUID[]> pairs = new ArrayList<>();
+        for (int i = 0; i < EXPECTED_PAIRS; i++) {
+            UUID[] pair = {UUID.randomUUID(), UUID.randomUUID()};
+            pairs.add(pair);
+            filter.add(pair[0], pair[1]);
+        }
+
+        for (UUID[] pair : pairs) {
+            assertThat(filter.mightContain(pair[0], pair[1])).isTrue();
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheConfiguredOne() {
+        BloomFilter filter = new BloomFilter(EXPECTED_PAIRS, 0.01);
+        for (int i = 0; i < EXPECTED_PAIRS; i++) {
+            filter.add(UUID.randomUUID(), UUID.randomUUID());
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(UUID.randomUUID(), UUID.randomUUID())) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / probes).isLessThan(0.02);
+    }
+
+    // orders reserving several products share the order id, and products are ordered by many orders
+    @Test
+    void pairsSharingOneIdAreToldApart() {
+        BloomFilter filter = new BloomFilter(EXPECTED_PAIRS, 0.01);
+        UUID orderId = UUID.randomUUID();
+        UUID productId = UUID.randomUUID();
+        filter.add(orderId, productId);
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain(orderId, UUID.randomUUID()) || filter.mightContain(UUID.randomUUID(), productId)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(10);
+        assertThat(filter.mightContain(productId, orderId)).isFalse();
+    }
+
+    @Test
+    void sequentialIdsSpreadLikeRandomOnes() {
+        BloomFilter filter = new BloomFilter(EXPECTED_PAIRS, 0.01);
+        UUID productId = UUID.randomUUID();
+        for (long i = 0; i < EXPECTED_PAIRS; i++) {
+            filter.add(new UUID(0, i), productId);
+        }
+
+        int falsePositives = 0;
+        for (long i = EXPECTED_PAIRS; i < 2L * EXPECTED_PAIRS; i++) {
+            if (filter.mightContain(new UUID(0, i), productId)) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / EXPECTED_PAIRS).isLessThan(0.02);
+    }
+}
@@ -0,0 +1,97 @@
+package com.appsdeveloperblog.products.inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StockTableTest {
+    private final StockTable stockTable = new StockTable(4);
+
+    @Test
+    void findsInsertedProductsAcrossResizes() {
+        List<UUID> productIds = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            UUID productId = UUID.randomUUID();
+            productIds.add(productId);
+            stockTable.insert(productId, i, BigDecimal.valueOf(i));
+        }
+
+        assertThat(stockTable.size()).isEqualTo(1_000);
+        for (int i = 0; i < productIds.size(); i++) {
+            int slot = stockTable.slotOf(productIds.get(i));
+            assertThat(stockTable.stock(slot)).isEqualTo(i);
+            assertThat(stockTable.price(slot)).isEqualTo(BigDecimal.valueOf(i));
+        }
+        assertThat(stockTable.slotOf(UUID.randomUUID())).isEqualTo(-1);
+    }
+
+    @Test
+    void drainsTheChangeSinceThePreviousDrain() {
+        UUID productId = UUID.randomUUID();
+        int slot = stockTable.insert(productId, 10, BigDecimal.ONE);
+
+        stockTable.setStock(slot, 7);
+        stockTable.setStock(slot, 6);
+
+        assertThat(stockTable.drainDirty()).containsExactly(Map.entry(productId, new StockChange(-4, 6)));
+        assertThat(stockTable.hasDirty()).isFalse();
+
+        stockTable.setStock(slot, 9);
+        assertThat(stockTable.drainDirty()).containsExactly(Map.entry(productId, new StockChange(3, 9)));
+    }
+
+    @Test
+    void productChangedBackAndForthIsNotWritten() {
+        UUID productId = UUID.randomUUID();
+        int slot = stockTable.insert(productId, 10, BigDecimal.ONE);
+
+        stockTable.setStock(slot, 8);
+        stockTable.setStock(slot, 10);
+
+        assertThat(stockTable.drainDirty()).isEmpty();
+    }
+
+    @Test
+    void stockWrittenByTheCallerIsNotWrittenAgain() {
+        UUID productId = UUID.randomUUID();
+        int slot = stockTable.insert(productId, 0, BigDecimal.ONE);
+
+        stockTable.addWritten(slot, 1_000);
+        stockTable.setStock(slot, stockTable.stock(slot) - 3);
+
+        assertThat(stockTable.stock(slot)).isEqualTo(997);
+        assertThat(stockTable.drainDirty()).containsExactly(Map.entry(productId, new StockChange(-3, 997)));
+    }
+
+    @Test
+    void failedWriteIsDrainedAgainTogetherWithLaterChanges() {
+        UUID productId = UUID.randomUUID();
+        int slot = stockTable.insert(productId, 10, BigDecimal.ONE);
+        stockTable.setStock(slot, 8);
+        Map<UUID, StockChange> failed = stockTable.drainDirty();
+
+        stockTable.setStock(slot, 5);
+        stockTable.markDirty(failed);
+
+        assertThat(stockTable.drainDirty()).containsExactly(Map.entry(productId, new StockChange(-5, 5)));
+    }
+
+    @Test
+    void pendingChangesSurviveAResize() {
+        UUID productId = UUID.randomUUID();
+        int slot = stockTable.insert(productId, 10, BigDecimal.ONE);
+        stockTable.setStock(slot, 4);
+
+        for (int i = 0; i < 100; i++) {
+            stockTable.insert(UUID.randomUUID(), 1, BigDecimal.ONE);
+        }
+
+        assertThat(stockTable.drainDirty()).containsExactly(Map.entry(productId, new StockChange(-6, 4)));
+    }
+}
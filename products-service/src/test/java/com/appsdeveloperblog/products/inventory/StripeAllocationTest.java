@@ -0,0 +1,164 @@
+package com.appsdeveloperblog.products.inventory;
+
+import com.appsdeveloperblog.core.dto.OrderLineItem;
+import com.appsdeveloperblog.core.exceptions.ProductInsufficientQuantityException;
+import com.appsdeveloperblog.products.dao.jpa.entity.ProductEntity;
+import com.appsdeveloperblog.products.dao.jpa.repository.ProductRepository;
+import com.appsdeveloperblog.products.service.InventoryCheckpointService;
+import com.appsdeveloperblog.products.service.StockStripeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reserves a striped product on the ledgers of three partitions, whose stripes borrow from a product row kept
+ * in memory.
+ */
+class StripeAllocationTest {
+    private static final int PARTITIONS = 3;
+    private static final int STRIPE_REFILL = 10;
+    private final UUID productId = UUID.randomUUID();
+    private final InMemoryStockStripeService stockStripeService = new InMemoryStockStripeService();
+    private InventoryLedgers inventoryLedgers;
+    private long offset;
+
+    @BeforeEach
+    void setUp() {
+        ProductEntity productEntity = new ProductEntity();
+        productEntity.setId(productId);
+        productEntity.setPrice(new BigDecimal("4.20"));
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.findById(productId)).thenReturn(Optional.of(productEntity));
+        InventoryCheckpointService inventoryCheckpointService = mock(InventoryCheckpointService.class);
+        when(inventoryCheckpointService.findReservation(any(), any())).thenReturn(Optional.empty());
+        doAnswer(invocation -> {
+            InventoryCheckpoint checkpoint = invocation.getArgument(0);
+            checkpoint.stripeStock().forEach((id, change) ->
+                    stockStripeService.stripes.merge(checkpoint.partition(), change.change(), Integer::sum));
+            return null;
+        }).when(inventoryCheckpointService).write(any());
+
+        inventoryLedgers = new InventoryLedgers(productRepository, inventoryCheckpointService, stockStripeService,
+                16, Set.of(productId), STRIPE_REFILL, 1_000, 100, PARTITIONS, 120_000, 500);
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            inventoryLedgers.assign(partition);
+        }
+    }
+
+    @Test
+    void dryStripeBorrowsARefillFromTheProductRow() {
+        stockStripeService.pool = 25;
+
+        List<OrderLineItem> reserved = reserve(orderOnPartition(0), 3);
+
+        assertThat(reserved).singleElement().satisfies(lineItem ->
+                assertThat(lineItem.getProductPrice()).isEqualByComparingTo("4.20"));
+        assertThat(stockStripeService.pool).isEqualTo(15);
+        assertThat(stockStripeService.stripes.get(0)).isEqualTo(10);
+        assertThat(stripe(0)).isEqualTo(7);
+        assertThat(stripe(1)).isZero();
+    }
+
+    @Test
+    void largeOrderBorrowsWhatItNeedsAtOnce() {
+        stockStripeService.pool = 100;
+
+        reserve(orderOnPartition(1), 40);
+
+        assertThat(stockStripeService.pool).isEqualTo(60);
+        assertThat(stripe(1)).isZero();
+    }
+
+    @Test
+    void emptyProductRowCollectsTheOtherStripesOfThisInstance() {
+        stockStripeService.pool = 12;
+        reserve(orderOnPartition(0), 1);
+        assertThat(stripe(0)).isEqualTo(9);
+        assertThat(stockStripeService.pool).isEqualTo(2);
+
+        reserve(orderOnPartition(2), 8);
+
+        assertThat(stripe(0)).isZero();
+        assertThat(stripe(2)).isEqualTo(3);
+        assertThat(stockStripeService.pool).isZero();
+        // the item reserved on partition 0 leaves its stored stripe with the next checkpoint
+        assertThat(stockStripeService.stripes.get(0)).isEqualTo(1);
+        inventoryLedgers.checkpoint();
+        assertThat(stockStripeService.stripes.get(0)).isZero();
+        assertThat(stockStripeService.stripes.get(2)).isEqualTo(3);
+    }
+
+    @Test
+    void orderLargerThanAllStockIsRejectedWithoutLosingAny() {
+        stockStripeService.pool = 12;
+        reserve(orderOnPartition(0), 1);
+
+        assertThatThrownBy(() -> reserve(orderOnPartition(1), 12))
+                .isInstanceOf(ProductInsufficientQuantityException.class);
+        inventoryLedgers.checkpoint();
+
+        int stored = stockStripeService.pool;
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            assertThat(stockStripeService.stripes.getOrDefault(partition, 0)).isEqualTo(stripe(partition));
+            stored += stockStripeService.stripes.getOrDefault(partition, 0);
+        }
+        assertThat(stored).isEqualTo(11);
+    }
+
+    private List<OrderLineItem> reserve(UUID orderId, int quantity) {
+        List<OrderLineItem> lineItems = List.of(new OrderLineItem(productId, quantity));
+        return inventoryLedgers.reserve(lineItems, orderId, inventoryLedgers.receivingPartition(lineItems, orderId),
+                offset++).handled();
+    }
+
+    private int stripe(int partition) {
+        return inventoryLedgers.forPartition(partition).stock(productId);
+    }
+
+    // orders of a striped product go to the partition of their order id
+    private UUID orderOnPartition(int partition) {
+        UUID orderId;
+        do {
+            orderId = UUID.randomUUID();
+        } while (inventoryLedgers.partitionOf(orderId) != partition);
+        return orderId;
+    }
+
+    private static class InMemoryStockStripeService implements StockStripeService {
+        private int pool;
+        private final Map<Integer, Integer> stripes = new HashMap<>();
+
+        @Override
+        public int loadStripe(UUID productId, int partition) {
+            return stripes.computeIfAbsent(partition, p -> 0);
+        }
+
+        @Override
+        public int borrow(UUID productId, int partition, int quantity) {
+            int borrowed = Math.min(pool, quantity);
+            pool -= borrowed;
+            stripes.merge(partition, borrowed, Integer::sum);
+            return borrowed;
+        }
+
+        @Override
+        public void giveBack(UUID productId, int partition, int quantity) {
+            pool += quantity;
+            stripes.merge(partition, -quantity, Integer::sum);
+        }
+    }
+}